@@ -0,0 +1,74 @@
+package university.bench;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import university.ConcurrentUniversity;
+import university.University;
+
+/**
+ * Throughput of {@link ConcurrentUniversity} under mixed registration traffic.
+ *
+ * Run it with an increasing number of threads (e.g. {@code -t 1}, {@code -t 4},
+ * {@code -t max}) to see how reads and writes scale with the number of cores.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConcurrentBenchmark {
+
+	@Param({"100000"})
+	int students;
+
+	@Param({"1000"})
+	int courses;
+
+	/** percentage of operations that are updates */
+	@Param({"1", "10", "50"})
+	int writePercent;
+
+	private ConcurrentUniversity university;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		university = Scenario.of(students, courses, 0.5)
+				.populate(new ConcurrentUniversity("Benchmark", University.StorageMode.COMPACT));
+	}
+
+	@State(Scope.Thread)
+	public static class Client {
+		private final SplittableRandom rnd = new SplittableRandom(Thread.currentThread().threadId());
+	}
+
+	@Benchmark
+	public Object mixed(Client client) {
+		int student = Scenario.FIRST_STUDENT + client.rnd.nextInt(students);
+		int course = Scenario.FIRST_COURSE + client.rnd.nextInt(courses);
+		if (client.rnd.nextInt(100) < writePercent) {
+			// drawn apart from the percentage, so that even 1% of writes mixes both updates
+			if (client.rnd.nextBoolean()) {
+				university.register(student, course);
+			} else {
+				university.exam(student, course, 18 + client.rnd.nextInt(13));
+			}
+			return null;
+		}
+		return client.rnd.nextBoolean() ? university.studentAvg(student) : university.courseAvg(course);
+	}
+}
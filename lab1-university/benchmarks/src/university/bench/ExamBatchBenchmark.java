@@ -0,0 +1,89 @@
+package university.bench;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import university.University;
+
+/**
+ * Time to post the grades of an exam session, with one {@code exam} call
+ * per grade and with a single {@code examBatch} call.
+ *
+ * Each measurement starts from a freshly built university, since every
+ * grade is also appended to the grade history.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExamBatchBenchmark {
+
+	@Param({"100000"})
+	int students;
+
+	@Param({"1000"})
+	int courses;
+
+	@Param({"50000"})
+	int grades;
+
+	@Param({"true", "false"})
+	boolean logging;
+
+	private Scenario scenario;
+	private University university;
+	private int[] studentIds;
+	private int[] courseIds;
+	private int[] values;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		scenario = Scenario.of(students, courses, 0.2);
+		// the messages are discarded, so only their creation is measured
+		University.logger.setUseParentHandlers(false);
+		SplittableRandom rnd = new SplittableRandom(7);
+		studentIds = new int[grades];
+		courseIds = new int[grades];
+		values = new int[grades];
+		for (int i = 0; i < grades; i++) {
+			studentIds[i] = Scenario.FIRST_STUDENT + rnd.nextInt(students);
+			courseIds[i] = Scenario.FIRST_COURSE + rnd.nextInt(courses);
+			values[i] = 18 + rnd.nextInt(13);
+		}
+	}
+
+	@Setup(Level.Iteration)
+	public void build() {
+		university = scenario.build(University.StorageMode.COMPACT);
+		University.logger.setLevel(logging ? java.util.logging.Level.INFO : java.util.logging.Level.OFF);
+	}
+
+	@Benchmark
+	public University examLoop() {
+		for (int i = 0; i < grades; i++) {
+			university.exam(studentIds[i], courseIds[i], values[i]);
+		}
+		return university;
+	}
+
+	@Benchmark
+	public University examBatch() {
+		university.examBatch(studentIds, courseIds, values);
+		return university;
+	}
+}
@@ -0,0 +1,74 @@
+package university.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import university.University;
+
+/**
+ * Time to load a university from a CSV export and from a binary snapshot.
+ * With the default parameters the export contains 10 million exams.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx8g"})
+@State(Scope.Benchmark)
+public class ImportBenchmark {
+
+	@Param({"2000000"})
+	int students;
+
+	@Param({"10000"})
+	int courses;
+
+	@Param({"COMPACT"})
+	University.StorageMode mode;
+
+	private Path csv;
+	private Path snapshot;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		University university = Scenario.of(students, courses, 1.0).build(mode);
+		csv = Files.createTempFile("university", ".csv");
+		snapshot = Files.createTempFile("university", ".snapshot");
+		university.exportTo(csv);
+		university.saveSnapshot(snapshot);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(csv);
+		Files.deleteIfExists(snapshot);
+	}
+
+	@Benchmark
+	public University importCsv() throws IOException {
+		University university = new University("Benchmark", mode);
+		university.importFrom(csv);
+		return university;
+	}
+
+	@Benchmark
+	public University loadSnapshot() throws IOException {
+		return University.loadSnapshot(snapshot, mode);
+	}
+}
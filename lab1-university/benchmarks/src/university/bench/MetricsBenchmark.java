@@ -0,0 +1,99 @@
+package university.bench;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import university.University;
+
+/**
+ * Overhead of the operation metrics of {@link University}.
+ *
+ * Compare the scores with {@code metrics=false} and {@code metrics=true};
+ * run with {@code -t max} to see the cost of the shared counters under contention
+ * (use a {@code ConcurrentUniversity} scenario for updates from many threads).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MetricsBenchmark {
+
+	@Param({"false", "true"})
+	boolean metrics;
+
+	private static final int STUDENTS = 100_000;
+	private static final int COURSES = 1000;
+
+	private University university;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		university = Scenario.of(STUDENTS, COURSES, 0.5).build(University.StorageMode.COMPACT);
+		university.setMetrics(metrics);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		university.setMetrics(false);
+	}
+
+	/**
+	 * Random ids, pre-drawn for each benchmark thread
+	 */
+	@State(Scope.Thread)
+	public static class Ids {
+		private static final int SIZE = 1 << 12;
+		private final int[] students = new int[SIZE];
+		private final int[] courses = new int[SIZE];
+		private int next;
+
+		@Setup(Level.Trial)
+		public void setUp() {
+			SplittableRandom rnd = new SplittableRandom(Thread.currentThread().threadId());
+			for (int i = 0; i < SIZE; i++) {
+				students[i] = Scenario.FIRST_STUDENT + rnd.nextInt(STUDENTS);
+				courses[i] = Scenario.FIRST_COURSE + rnd.nextInt(COURSES);
+			}
+		}
+
+		int student() {
+			return students[next++ & (SIZE - 1)];
+		}
+
+		int course() {
+			return courses[next++ & (SIZE - 1)];
+		}
+	}
+
+	@Benchmark
+	public String studentAvg(Ids ids) {
+		return university.studentAvg(ids.student());
+	}
+
+	@Benchmark
+	public String courseAvg(Ids ids) {
+		return university.courseAvg(ids.course());
+	}
+
+	// exams are not measured, since each one grows the grade history
+	@Benchmark
+	public void register(Ids ids) {
+		university.register(ids.student(), ids.course());
+	}
+}
@@ -0,0 +1,150 @@
+package university.bench;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import university.University;
+
+/**
+ * Throughput and latency distribution of every {@link University} query.
+ *
+ * Run with {@code -prof gc} to also report the allocation rate.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QueryBenchmark {
+
+	@Param({"1000", "100000", "1000000"})
+	int students;
+
+	@Param({"10", "1000", "10000"})
+	int courses;
+
+	@Param({"0.2", "1.0"})
+	double examDensity;
+
+	@Param({"HASHED", "COMPACT"})
+	University.StorageMode mode;
+
+	private University university;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		university = Scenario.of(students, courses, examDensity).build(mode);
+	}
+
+	/**
+	 * Random ids, pre-drawn for each benchmark thread so that
+	 * the measured calls do not include the random generator
+	 */
+	@State(Scope.Thread)
+	public static class Ids {
+		private static final int SIZE = 1 << 12;
+		private final int[] students = new int[SIZE];
+		private final int[] courses = new int[SIZE];
+		private int next;
+
+		@Setup(Level.Trial)
+		public void setUp(QueryBenchmark benchmark) {
+			SplittableRandom rnd = new SplittableRandom(Thread.currentThread().threadId());
+			for (int i = 0; i < SIZE; i++) {
+				students[i] = Scenario.FIRST_STUDENT + rnd.nextInt(benchmark.students);
+				courses[i] = Scenario.FIRST_COURSE + rnd.nextInt(benchmark.courses);
+			}
+		}
+
+		int student() {
+			return students[next++ & (SIZE - 1)];
+		}
+
+		int course() {
+			return courses[next++ & (SIZE - 1)];
+		}
+	}
+
+	@Benchmark
+	public String listAttendees(Ids ids) {
+		return university.listAttendees(ids.course());
+	}
+
+	@Benchmark
+	public long listAttendeesToChannel(Ids ids, Sink sink) throws IOException {
+		university.listAttendees(ids.course(), sink);
+		return sink.written;
+	}
+
+	@Benchmark
+	public String studyPlan(Ids ids) {
+		return university.studyPlan(ids.student());
+	}
+
+	@Benchmark
+	public String studentAvg(Ids ids) {
+		return university.studentAvg(ids.student());
+	}
+
+	@Benchmark
+	public String courseAvg(Ids ids) {
+		return university.courseAvg(ids.course());
+	}
+
+	@Benchmark
+	public int[] coursesByTeacher(Ids ids) {
+		return university.coursesByTeacher("Teacher " + ids.course() % 97);
+	}
+
+	@Benchmark
+	public int[] coursesByTitle(Ids ids) {
+		return university.coursesByTitle("Course " + (ids.course() - Scenario.FIRST_COURSE));
+	}
+
+	@Benchmark
+	public String topThreeStudents() {
+		return university.topThreeStudents();
+	}
+
+	/**
+	 * Channel discarding the bytes written, to measure the streaming reports without I/O
+	 */
+	@State(Scope.Thread)
+	public static class Sink implements WritableByteChannel {
+		long written;
+
+		@Override
+		public int write(ByteBuffer src) {
+			int count = src.remaining();
+			src.position(src.limit());
+			written += count;
+			return count;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return true;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package university.bench;
+
+import java.util.SplittableRandom;
+import java.util.logging.Level;
+
+import university.University;
+
+/**
+ * Synthetic university data used by the benchmarks.
+ *
+ * Each student is registered to {@code plan} distinct random courses
+ * and has taken the exam of each of them with probability {@code examDensity}.
+ * The same parameters and seed always produce the same data.
+ */
+public final class Scenario {
+
+	/** id of the first student */
+	public static final int FIRST_STUDENT = 10000;
+	/** code of the first course */
+	public static final int FIRST_COURSE = 10;
+
+	/** number of students */
+	public final int students;
+	/** number of courses */
+	public final int courses;
+	/** number of courses in each study plan */
+	public final int plan;
+	/** fraction of registrations with an exam */
+	public final double examDensity;
+	/** seed of the random generator */
+	public final long seed;
+
+	/**
+	 * @param students number of students
+	 * @param courses number of courses
+	 * @param plan number of courses in each study plan
+	 * @param examDensity fraction of registrations with an exam
+	 * @param seed seed of the random generator
+	 */
+	public Scenario(int students, int courses, int plan, double examDensity, long seed) {
+		if (students < 1 || courses < 1 || plan < 0 || examDensity < 0 || examDensity > 1) {
+			throw new IllegalArgumentException("Invalid scenario: students=" + students + " courses=" + courses
+					+ " plan=" + plan + " examDensity=" + examDensity);
+		}
+		this.students = students;
+		this.courses = courses;
+		this.plan = Math.min(plan, courses);
+		this.examDensity = examDensity;
+		this.seed = seed;
+	}
+
+	/**
+	 * Scenario with study plans of 5 courses and a fixed seed
+	 * @param students number of students
+	 * @param courses number of courses
+	 * @param examDensity fraction of registrations with an exam
+	 * @return the scenario
+	 */
+	public static Scenario of(int students, int courses, double examDensity) {
+		return new Scenario(students, courses, 5, examDensity, 42);
+	}
+
+	/**
+	 * Creates a university with the scenario data and logging disabled
+	 * @param mode storage layout
+	 * @return the university
+	 */
+	public University build(University.StorageMode mode) {
+		return populate(new University("Benchmark", mode));
+	}
+
+	/**
+	 * Adds the scenario data to an empty university
+	 * @param university the university to fill
+	 * @return the same university
+	 */
+	public <U extends University> U populate(U university) {
+		University.logger.setLevel(Level.OFF);
+		SplittableRandom rnd = new SplittableRandom(seed);
+		for (int i = 0; i < courses; i++) {
+			university.activate("Course " + i, "Teacher " + (i % 97));
+		}
+		int[] chosen = new int[plan];
+		for (int i = 0; i < students; i++) {
+			int student = university.enroll("First" + i, "Last" + i);
+			for (int j = 0; j < plan; j++) {
+				int course;
+				do {
+					course = FIRST_COURSE + rnd.nextInt(courses);
+				} while (contains(chosen, j, course));
+				chosen[j] = course;
+				university.register(student, course);
+				if (rnd.nextDouble() < examDensity) {
+					university.exam(student, course, 18 + rnd.nextInt(13));
+				}
+			}
+		}
+		return university;
+	}
+
+	private static boolean contains(int[] values, int size, int value) {
+		for (int i = 0; i < size; i++) {
+			if (values[i] == value) return true;
+		}
+		return false;
+	}
+
+	@Override
+	public String toString() {
+		return "students=" + students + " courses=" + courses + " plan=" + plan
+				+ " examDensity=" + examDensity + " seed=" + seed;
+	}
+}
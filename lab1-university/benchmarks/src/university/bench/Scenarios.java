@@ -0,0 +1,84 @@
+package university.bench;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.function.IntFunction;
+
+import university.University;
+
+/**
+ * Command line tool to generate a benchmark scenario, save it for other tools
+ * and time a single run of each query.
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar university.bench.Scenarios
+ *     [--students N] [--courses N] [--plan N] [--density D] [--seed S]
+ *     [--mode HASHED|COMPACT] [--export FILE.csv] [--snapshot FILE] [--queries N]
+ * </pre>
+ */
+public class Scenarios {
+
+	public static void main(String[] args) throws IOException {
+		int students = 100_000;
+		int courses = 1_000;
+		int plan = 5;
+		double density = 0.5;
+		long seed = 42;
+		University.StorageMode mode = University.StorageMode.COMPACT;
+		Path export = null;
+		Path snapshot = null;
+		int queries = 10_000;
+
+		for (int i = 0; i < args.length; i++) {
+			String value = i + 1 < args.length ? args[i + 1] : null;
+			switch (args[i]) {
+			case "--students": students = Integer.parseInt(value); i++; break;
+			case "--courses": courses = Integer.parseInt(value); i++; break;
+			case "--plan": plan = Integer.parseInt(value); i++; break;
+			case "--density": density = Double.parseDouble(value); i++; break;
+			case "--seed": seed = Long.parseLong(value); i++; break;
+			case "--mode": mode = University.StorageMode.valueOf(value); i++; break;
+			case "--export": export = Path.of(value); i++; break;
+			case "--snapshot": snapshot = Path.of(value); i++; break;
+			case "--queries": queries = Integer.parseInt(value); i++; break;
+			default:
+				System.err.println("Unknown option " + args[i]);
+				System.exit(1);
+			}
+		}
+
+		Scenario scenario = new Scenario(students, courses, plan, density, seed);
+		long start = System.nanoTime();
+		University university = scenario.build(mode);
+		System.out.printf("Built %s (%s) in %d ms%n", scenario, mode, (System.nanoTime() - start) / 1_000_000);
+
+		if (export != null) {
+			start = System.nanoTime();
+			university.exportTo(export);
+			System.out.printf("Exported to %s in %d ms%n", export, (System.nanoTime() - start) / 1_000_000);
+		}
+		if (snapshot != null) {
+			start = System.nanoTime();
+			university.saveSnapshot(snapshot);
+			System.out.printf("Snapshot saved to %s in %d ms%n", snapshot, (System.nanoTime() - start) / 1_000_000);
+		}
+
+		final int studentCount = students;
+		final int courseCount = courses;
+		time("listAttendees", queries, i -> university.listAttendees(Scenario.FIRST_COURSE + i % courseCount));
+		time("studyPlan", queries, i -> university.studyPlan(Scenario.FIRST_STUDENT + i % studentCount));
+		time("studentAvg", queries, i -> university.studentAvg(Scenario.FIRST_STUDENT + i % studentCount));
+		time("courseAvg", queries, i -> university.courseAvg(Scenario.FIRST_COURSE + i % courseCount));
+		time("topThreeStudents", queries, i -> university.topThreeStudents());
+	}
+
+	private static void time(String query, int count, IntFunction<String> call) {
+		long chars = 0;
+		long start = System.nanoTime();
+		for (int i = 0; i < count; i++) {
+			chars += call.apply(i).length();
+		}
+		long elapsed = System.nanoTime() - start;
+		System.out.printf("%-18s %10.2f us/op (%d chars)%n", query, elapsed / 1000.0 / count, chars);
+	}
+}
@@ -0,0 +1,128 @@
+package university;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * {@link Appendable} encoding text as UTF-8 directly into a channel.
+ *
+ * The characters are collected and encoded in fixed size buffers that are
+ * written to the channel whenever they fill up, so the memory used does not
+ * depend on the length of the text. An instance can be reused for many
+ * channels, one at a time, to avoid allocating the buffers again.
+ *
+ * The channel must be in blocking mode: a write that makes no progress
+ * fails instead of being retried.
+ */
+class ChannelAppender implements Appendable, Closeable {
+
+	private static final int CHARS = 4096;
+	private static final int BYTES = 3 * CHARS;
+
+	// malformed text is replaced as String.getBytes does, so the output is the same
+	private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	private final CharBuffer chars = CharBuffer.allocate(CHARS);
+	private final ByteBuffer bytes = ByteBuffer.allocate(BYTES);
+	private WritableByteChannel channel;
+
+	/**
+	 * Starts writing to a channel
+	 * @param channel the destination
+	 * @return this appender, to be closed when the text is complete
+	 * @throws IllegalArgumentException if the channel is in non-blocking mode
+	 */
+	ChannelAppender open(WritableByteChannel channel) {
+		if (channel instanceof SelectableChannel && !((SelectableChannel) channel).isBlocking()) {
+			throw new IllegalArgumentException("Non-blocking channels are not supported");
+		}
+		this.channel = channel;
+		encoder.reset();
+		chars.clear();
+		bytes.clear();
+		return this;
+	}
+
+	@Override
+	public Appendable append(CharSequence csq) throws IOException {
+		return append(csq, 0, csq.length());
+	}
+
+	@Override
+	public Appendable append(CharSequence csq, int start, int end) throws IOException {
+		while (start < end) {
+			if (!chars.hasRemaining()) {
+				encode(false);
+			}
+			int count = Math.min(end - start, chars.remaining());
+			if (csq instanceof String) {
+				((String) csq).getChars(start, start + count, chars.array(), chars.arrayOffset() + chars.position());
+				chars.position(chars.position() + count);
+			} else {
+				chars.append(csq, start, start + count);
+			}
+			start += count;
+		}
+		return this;
+	}
+
+	@Override
+	public Appendable append(char c) throws IOException {
+		if (!chars.hasRemaining()) {
+			encode(false);
+		}
+		chars.put(c);
+		return this;
+	}
+
+	/**
+	 * Encodes and writes all the pending characters and stops writing to the channel
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			encode(true);
+			while (encoder.flush(bytes) == CoderResult.OVERFLOW) {
+				drain();
+			}
+			drain();
+		} finally {
+			channel = null;
+		}
+	}
+
+	private void encode(boolean endOfInput) throws IOException {
+		chars.flip();
+		while (true) {
+			CoderResult result = encoder.encode(chars, bytes, endOfInput);
+			if (result.isOverflow()) {
+				drain();
+			} else if (result.isUnderflow()) {
+				break;
+			} else {
+				result.throwException();
+			}
+		}
+		// a surrogate pair split between two appends is kept for the next round
+		chars.compact();
+	}
+
+	private void drain() throws IOException {
+		bytes.flip();
+		while (bytes.hasRemaining()) {
+			if (channel.write(bytes) == 0) {
+				throw new IOException("The channel did not accept any byte");
+			}
+		}
+		bytes.clear();
+	}
+}
@@ -0,0 +1,125 @@
+package university;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Buffered reader of the binary values written by {@link ChannelOutput}.
+ */
+class ChannelInput implements Closeable {
+
+	private final FileChannel channel;
+	private ByteBuffer buffer;
+
+	/**
+	 * @param channel source, read from its current position
+	 * @param capacity size of the buffer
+	 */
+	ChannelInput(FileChannel channel, int capacity) {
+		this.channel = channel;
+		this.buffer = ByteBuffer.allocateDirect(capacity);
+		buffer.flip();
+	}
+
+	/**
+	 * Makes sure that the given number of bytes is buffered
+	 * @return {@code false} if the input ends before
+	 */
+	private boolean fill(int bytes) throws IOException {
+		if (buffer.remaining() >= bytes) {
+			return true;
+		}
+		if (bytes > buffer.remaining() + channel.size() - channel.position()) {
+			return false; // without growing the buffer for a length read from a corrupt file
+		}
+		if (buffer.capacity() < bytes) {
+			ByteBuffer larger = ByteBuffer.allocateDirect(bytes);
+			larger.put(buffer);
+			buffer = larger;
+		} else {
+			buffer.compact();
+		}
+		while (buffer.position() < bytes) {
+			if (channel.read(buffer) < 0) {
+				buffer.flip();
+				return false;
+			}
+		}
+		buffer.flip();
+		return true;
+	}
+
+	private void require(int bytes) throws IOException {
+		if (!fill(bytes)) {
+			throw new EOFException("Unexpected end of file");
+		}
+	}
+
+	/**
+	 * @return whether there are no more values to read
+	 */
+	boolean atEnd() throws IOException {
+		return !fill(1);
+	}
+
+	/**
+	 * Checks whether a complete record can be read
+	 * @param bytes minimum length of the record
+	 * @return {@code true} if at least the given number of bytes is available
+	 */
+	boolean available(int bytes) throws IOException {
+		return fill(bytes);
+	}
+
+	void skip(int bytes) throws IOException {
+		require(bytes);
+		buffer.position(buffer.position() + bytes);
+	}
+
+	int getByte() throws IOException {
+		require(1);
+		return buffer.get();
+	}
+
+	int getInt() throws IOException {
+		require(4);
+		return buffer.getInt();
+	}
+
+	long getLong() throws IOException {
+		require(8);
+		return buffer.getLong();
+	}
+
+	/**
+	 * Reads a block of bytes, e.g. a record to be parsed with bounds checks
+	 * @param length number of bytes
+	 * @return a buffer holding the bytes
+	 */
+	ByteBuffer getBuffer(int length) throws IOException {
+		require(length);
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return ByteBuffer.wrap(bytes);
+	}
+
+	String getString() throws IOException {
+		int length = getInt();
+		if (length < 0) {
+			return null;
+		}
+		require(length);
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
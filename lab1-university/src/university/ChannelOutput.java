@@ -0,0 +1,107 @@
+package university;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Buffered writer of binary values to a file channel.
+ *
+ * Values are written big-endian; strings are written as the length
+ * of their UTF-8 encoding followed by the bytes, or -1 for {@code null}.
+ * Closing the writer forces the file to the storage device.
+ */
+class ChannelOutput implements Closeable {
+
+	private final FileChannel channel;
+	private ByteBuffer buffer;
+
+	/**
+	 * @param channel destination, written from its current position
+	 * @param capacity size of the buffer
+	 */
+	ChannelOutput(FileChannel channel, int capacity) {
+		this.channel = channel;
+		this.buffer = ByteBuffer.allocateDirect(capacity);
+	}
+
+	private void ensure(int bytes) throws IOException {
+		if (buffer.remaining() < bytes) {
+			flush();
+			if (buffer.capacity() < bytes) {
+				buffer = ByteBuffer.allocateDirect(bytes);
+			}
+		}
+	}
+
+	void putByte(int value) throws IOException {
+		ensure(1);
+		buffer.put((byte) value);
+	}
+
+	void putInt(int value) throws IOException {
+		ensure(4);
+		buffer.putInt(value);
+	}
+
+	void putLong(long value) throws IOException {
+		ensure(8);
+		buffer.putLong(value);
+	}
+
+	void putString(String value) throws IOException {
+		if (value == null) {
+			putInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		ensure(4 + bytes.length);
+		buffer.putInt(bytes.length);
+		buffer.put(bytes);
+	}
+
+	/**
+	 * Starts a section prefixed by its length in bytes
+	 * @return the mark to pass to {@link #endSection}
+	 */
+	long beginSection() throws IOException {
+		flush();
+		long mark = channel.position();
+		putLong(0);
+		return mark;
+	}
+
+	/**
+	 * Ends a section, filling in its length
+	 * @param mark the value returned by {@link #beginSection}
+	 */
+	void endSection(long mark) throws IOException {
+		flush();
+		ByteBuffer length = ByteBuffer.allocate(8);
+		length.putLong(0, channel.position() - mark - 8);
+		channel.write(length, mark);
+	}
+
+	/**
+	 * Writes the buffered values to the channel
+	 */
+	void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+			channel.force(true);
+		} finally {
+			channel.close();
+		}
+	}
+}
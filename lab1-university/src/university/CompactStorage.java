@@ -0,0 +1,144 @@
+package university;
+
+import java.util.Arrays;
+import java.util.PrimitiveIterator;
+
+/**
+ * Storage keeping students and courses in array columns indexed
+ * by {@code id - base}, with registrations kept as sorted int arrays.
+ *
+ * It relies on ids being dense, as assigned by {@link University},
+ * and avoids boxing ids and allocating an object per student or course.
+ */
+class CompactStorage implements Storage {
+
+	private final int studentBase;
+	private String[] firsts = new String[64];
+	private String[] lasts = new String[64];
+	private IntSet[] studentCourses = new IntSet[64];
+	private int studentCount;
+
+	private final int courseBase;
+	private String[] titles = new String[16];
+	private String[] teachers = new String[16];
+	private IntSet[] courseStudents = new IntSet[16];
+	private int courseCount;
+
+	/**
+	 * @param studentBase id of the first student
+	 * @param courseBase code of the first course
+	 */
+	CompactStorage(int studentBase, int courseBase) {
+		this.studentBase = studentBase;
+		this.courseBase = courseBase;
+	}
+
+	@Override
+	public void ensureCapacity(int students, int courses) {
+		if (students > firsts.length) {
+			growStudents(students);
+		}
+		if (courses > titles.length) {
+			growCourses(courses);
+		}
+	}
+
+	private void growStudents(int capacity) {
+		firsts = Arrays.copyOf(firsts, capacity);
+		lasts = Arrays.copyOf(lasts, capacity);
+		studentCourses = Arrays.copyOf(studentCourses, capacity);
+	}
+
+	private void growCourses(int capacity) {
+		titles = Arrays.copyOf(titles, capacity);
+		teachers = Arrays.copyOf(teachers, capacity);
+		courseStudents = Arrays.copyOf(courseStudents, capacity);
+	}
+
+	@Override
+	public void addStudent(int id, String first, String last) {
+		int slot = id - studentBase;
+		if (slot >= firsts.length) {
+			growStudents(Math.max(firsts.length * 2, slot + 1));
+		}
+		firsts[slot] = first;
+		lasts[slot] = last;
+		studentCourses[slot] = new IntSet();
+		studentCount = Math.max(studentCount, slot + 1);
+	}
+
+	@Override
+	public boolean hasStudent(int id) {
+		int slot = id - studentBase;
+		return slot >= 0 && slot < studentCount && studentCourses[slot] != null;
+	}
+
+	@Override
+	public String first(int id) {
+		return firsts[id - studentBase];
+	}
+
+	@Override
+	public String last(int id) {
+		return lasts[id - studentBase];
+	}
+
+	@Override
+	public void addCourse(int id, String title, String teacher) {
+		int slot = id - courseBase;
+		if (slot >= titles.length) {
+			growCourses(Math.max(titles.length * 2, slot + 1));
+		}
+		titles[slot] = title;
+		teachers[slot] = teacher;
+		courseStudents[slot] = new IntSet();
+		courseCount = Math.max(courseCount, slot + 1);
+	}
+
+	@Override
+	public boolean hasCourse(int id) {
+		int slot = id - courseBase;
+		return slot >= 0 && slot < courseCount && courseStudents[slot] != null;
+	}
+
+	@Override
+	public String title(int id) {
+		return titles[id - courseBase];
+	}
+
+	@Override
+	public String teacher(int id) {
+		return teachers[id - courseBase];
+	}
+
+	@Override
+	public boolean register(int studentId, int courseId) {
+		courseStudents[courseId - courseBase].add(studentId);
+		return studentCourses[studentId - studentBase].add(courseId);
+	}
+
+	@Override
+	public boolean isRegistered(int courseId, int studentId) {
+		return courseStudents[courseId - courseBase].contains(studentId);
+	}
+
+	@Override
+	public int courseCount(int studentId) {
+		return studentCourses[studentId - studentBase].size();
+	}
+
+	@Override
+	public int studentCount(int courseId) {
+		return courseStudents[courseId - courseBase].size();
+	}
+
+	@Override
+	public PrimitiveIterator.OfInt courses(int studentId) {
+		return studentCourses[studentId - studentBase].iterator();
+	}
+
+	@Override
+	public PrimitiveIterator.OfInt students(int courseId) {
+		return courseStudents[courseId - courseBase].iterator();
+	}
+}
@@ -0,0 +1,573 @@
+package university;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+/**
+ * A {@link University} that can be used by many threads at the same time.
+ *
+ * The state is guarded by three kinds of {@link StampedLock}s, always taken in this order:
+ * <ul>
+ * <li>a structure lock, held exclusively by the updates that add students and courses
+ *     or touch many of them ({@code enroll}, {@code activate}, {@code examBatch},
+ *     {@code closeTerm}, imports, journals, ...), and in read mode by everything else,
+ *     so that the tables of students and courses never change under a reader;</li>
+ * <li>{@value #STRIPES} stripes, each guarding the registrations and the grades of the students
+ *     and courses whose id falls in it: {@code register} and {@code exam} hold the
+ *     write locks of the stripes of their student and course only, so updates of
+ *     different students and courses run in parallel;</li>
+ * <li>a lock of the ranking, the term history and the journal, held exclusively
+ *     by {@code register} and {@code exam} only for the short update of these shared aggregates.</li>
+ * </ul>
+ * Queries on a single student or course copy the few numbers they need
+ * (sums, counts, histograms) under an optimistic read of its stripe,
+ * validate the copy and only then compute and format their results;
+ * a copy invalidated by a concurrent update is repeated under the read lock of the stripe.
+ * Lists of attendees and study plans, and the grade history, are copied under the read lock.
+ */
+public class ConcurrentUniversity extends University {
+
+	private static final int STRIPES = 64;
+
+	private final StampedLock structure = new StampedLock();
+	private final StampedLock[] stripes = new StampedLock[STRIPES];
+	private final StampedLock shared = new StampedLock();
+
+	/**
+	 * Constructor
+	 * @param name name of the university
+	 */
+	public ConcurrentUniversity(String name) {
+		super(name);
+		for (int i = 0; i < STRIPES; i++) {
+			stripes[i] = new StampedLock();
+		}
+	}
+
+	/**
+	 * Constructor with an explicit storage layout
+	 * @param name name of the university
+	 * @param mode how students, courses and registrations are stored
+	 */
+	public ConcurrentUniversity(String name, StorageMode mode) {
+		super(name, mode);
+		for (int i = 0; i < STRIPES; i++) {
+			stripes[i] = new StampedLock();
+		}
+	}
+
+	private static int stripe(int id) {
+		return id & (STRIPES - 1);
+	}
+
+	/**
+	 * Runs a query while the students and courses cannot be added
+	 */
+	private <T> T structural(Supplier<T> query) {
+		long stamp = structure.readLock();
+		try {
+			return query.get();
+		} finally {
+			structure.unlockRead(stamp);
+		}
+	}
+
+	private void exclusive(Runnable update) {
+		long stamp = structure.writeLock();
+		try {
+			update.run();
+		} finally {
+			structure.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Stops the updates of all the students and courses, e.g. to write a snapshot.
+	 * The caller holds the structure lock.
+	 * 
+	 * @return the stamps to be passed to {@link #unlockStripes}
+	 */
+	private long[] lockStripes() {
+		long[] stamps = new long[STRIPES];
+		for (int i = 0; i < STRIPES; i++) {
+			stamps[i] = stripes[i].readLock();
+		}
+		return stamps;
+	}
+
+	private void unlockStripes(long[] stamps) {
+		for (int i = STRIPES - 1; i >= 0; i--) {
+			stripes[i].unlockRead(stamps[i]);
+		}
+	}
+
+	/**
+	 * Copies the state of a student or course as an optimistic read of its stripe,
+	 * falling back to the read lock if a concurrent update invalidates it.
+	 * A copy racing with an update may see inconsistent data and fail in any way,
+	 * in that case the failure is discarded and the copy is repeated.
+	 * The caller holds the structure lock.
+	 */
+	private <T> T copy(int id, Supplier<T> state) {
+		StampedLock lock = stripes[stripe(id)];
+		long stamp = lock.tryOptimisticRead();
+		if (stamp != 0) {
+			try {
+				T result = state.get();
+				if (lock.validate(stamp)) {
+					return result;
+				}
+			} catch (Throwable e) {
+				if (lock.validate(stamp)) {
+					throw e;
+				}
+			}
+		}
+		return locked(id, state);
+	}
+
+	private <T> T locked(int id, Supplier<T> state) {
+		StampedLock lock = stripes[stripe(id)];
+		long stamp = lock.readLock();
+		try {
+			return state.get();
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Copies the state of a student or course together with the shared aggregates
+	 */
+	private <T> T lockedShared(int id, Supplier<T> state) {
+		return locked(id, () -> {
+			long stamp = shared.readLock();
+			try {
+				return state.get();
+			} finally {
+				shared.unlockRead(stamp);
+			}
+		});
+	}
+
+	/**
+	 * Updates a student and a course, holding the write locks of their stripes
+	 */
+	private void update(int studentId, int courseId, Runnable update) {
+		int first = Math.min(stripe(studentId), stripe(courseId));
+		int second = Math.max(stripe(studentId), stripe(courseId));
+		long stamp = structure.readLock();
+		try {
+			long firstStamp = stripes[first].writeLock();
+			try {
+				if (first == second) {
+					update.run();
+				} else {
+					long secondStamp = stripes[second].writeLock();
+					try {
+						update.run();
+					} finally {
+						stripes[second].unlockWrite(secondStamp);
+					}
+				}
+			} finally {
+				stripes[first].unlockWrite(firstStamp);
+			}
+		} finally {
+			structure.unlockRead(stamp);
+		}
+	}
+
+	@Override
+	long lockShared() {
+		return shared.writeLock();
+	}
+
+	@Override
+	void unlockShared(long stamp) {
+		shared.unlockWrite(stamp);
+	}
+
+	@Override
+	long[] studentTotals(int studentId) {
+		return copy(studentId, () -> super.studentTotals(studentId));
+	}
+
+	@Override
+	long[] courseTotals(int courseId) {
+		return copy(courseId, () -> super.courseTotals(courseId));
+	}
+
+	@Override
+	int[] studentCounts(int studentId) {
+		return copy(studentId, () -> super.studentCounts(studentId));
+	}
+
+	@Override
+	int[] courseCounts(int courseId) {
+		return copy(courseId, () -> super.courseCounts(courseId));
+	}
+
+	@Override
+	PrimitiveIterator.OfInt attendees(int courseCode) {
+		return locked(courseCode, () -> ids(super.attendees(courseCode)));
+	}
+
+	@Override
+	PrimitiveIterator.OfInt studyPlanCourses(int studentID) {
+		return locked(studentID, () -> ids(super.studyPlanCourses(studentID)));
+	}
+
+	private static PrimitiveIterator.OfInt ids(PrimitiveIterator.OfInt source) {
+		IntStream.Builder ids = IntStream.builder();
+		source.forEachRemaining((IntConsumer) ids::add);
+		return ids.build().iterator();
+	}
+
+	@Override
+	long[] studentTotalsAsOf(int studentId, int term) {
+		return lockedShared(studentId, () -> super.studentTotalsAsOf(studentId, term));
+	}
+
+	@Override
+	long[] courseTotalsAsOf(int courseId, int term) {
+		return lockedShared(courseId, () -> super.courseTotalsAsOf(courseId, term));
+	}
+
+	@Override
+	int[] examTerms(int studentId, int courseId) {
+		return lockedShared(studentId, () -> super.examTerms(studentId, courseId));
+	}
+
+	@Override
+	Leaderboard.Entry[] best(int k) {
+		long stamp = shared.readLock();
+		try {
+			return super.best(k);
+		} finally {
+			shared.unlockRead(stamp);
+		}
+	}
+
+	@Override
+	public void setRector(String first, String last) {
+		exclusive(() -> super.setRector(first, last));
+	}
+
+	@Override
+	public String getRector() {
+		return structural(super::getRector);
+	}
+
+	@Override
+	public int enroll(String first, String last) {
+		long stamp = structure.writeLock();
+		try {
+			return super.enroll(first, last);
+		} finally {
+			structure.unlockWrite(stamp);
+		}
+	}
+
+	@Override
+	public String student(int id) {
+		return structural(() -> super.student(id));
+	}
+
+	@Override
+	public int activate(String title, String teacher) {
+		long stamp = structure.writeLock();
+		try {
+			return super.activate(title, teacher);
+		} finally {
+			structure.unlockWrite(stamp);
+		}
+	}
+
+	@Override
+	public String course(int code) {
+		return structural(() -> super.course(code));
+	}
+
+	@Override
+	public int[] coursesByTeacher(String teacher) {
+		return structural(() -> super.coursesByTeacher(teacher));
+	}
+
+	@Override
+	public int[] coursesByTitle(String text) {
+		return structural(() -> super.coursesByTitle(text));
+	}
+
+	@Override
+	public void register(int studentID, int courseCode) {
+		update(studentID, courseCode, () -> super.register(studentID, courseCode));
+	}
+
+	@Override
+	public String listAttendees(int courseCode) {
+		return structural(() -> super.listAttendees(courseCode));
+	}
+
+	@Override
+	public String studyPlan(int studentID) {
+		return structural(() -> super.studyPlan(studentID));
+	}
+
+	// the streaming reports hold the structure lock while writing, so a slow destination
+	// delays the enrollments and the other structural updates, but not register and exam
+	@Override
+	public void listAttendees(int courseCode, Appendable out) throws IOException {
+		streamLocked(() -> super.listAttendees(courseCode, out));
+	}
+
+	@Override
+	public void listAttendees(int courseCode, WritableByteChannel out) throws IOException {
+		streamLocked(() -> super.listAttendees(courseCode, out));
+	}
+
+	@Override
+	public void studyPlan(int studentID, Appendable out) throws IOException {
+		streamLocked(() -> super.studyPlan(studentID, out));
+	}
+
+	@Override
+	public void studyPlan(int studentID, WritableByteChannel out) throws IOException {
+		streamLocked(() -> super.studyPlan(studentID, out));
+	}
+
+	@Override
+	public void topThreeStudents(Appendable out) throws IOException {
+		streamLocked(() -> super.topThreeStudents(out));
+	}
+
+	@Override
+	public void topThreeStudents(WritableByteChannel out) throws IOException {
+		streamLocked(() -> super.topThreeStudents(out));
+	}
+
+	@FunctionalInterface
+	private interface Streaming {
+		void run() throws IOException;
+	}
+
+	private void streamLocked(Streaming report) throws IOException {
+		long stamp = structure.readLock();
+		try {
+			report.run();
+		} finally {
+			structure.unlockRead(stamp);
+		}
+	}
+
+	@Override
+	public void exam(int studentId, int courseID, int grade) {
+		update(studentId, courseID, () -> super.exam(studentId, courseID, grade));
+	}
+
+	@Override
+	public void examBatch(int[] studentIds, int[] courseIds, int[] grades) {
+		exclusive(() -> super.examBatch(studentIds, courseIds, grades));
+	}
+
+	@Override
+	public String studentAvg(int studentId) {
+		return structural(() -> super.studentAvg(studentId));
+	}
+
+	@Override
+	public String courseAvg(int courseId) {
+		return structural(() -> super.courseAvg(courseId));
+	}
+
+	@Override
+	public int[] courseHistogram(int courseId) {
+		return structural(() -> super.courseHistogram(courseId));
+	}
+
+	@Override
+	public int[] studentHistogram(int studentId) {
+		return structural(() -> super.studentHistogram(studentId));
+	}
+
+	@Override
+	public int coursePercentile(int courseId, double percent) {
+		return structural(() -> super.coursePercentile(courseId, percent));
+	}
+
+	@Override
+	public String topThreeStudents() {
+		return structural(super::topThreeStudents);
+	}
+
+	@Override
+	public String topStudents(int k) {
+		return structural(() -> super.topStudents(k));
+	}
+
+	@Override
+	public int closeTerm() {
+		long stamp = structure.writeLock();
+		try {
+			return super.closeTerm();
+		} finally {
+			structure.unlockWrite(stamp);
+		}
+	}
+
+	@Override
+	public int currentTerm() {
+		return structural(super::currentTerm);
+	}
+
+	@Override
+	public String studentAvgAsOf(int studentId, int term) {
+		return structural(() -> super.studentAvgAsOf(studentId, term));
+	}
+
+	@Override
+	public String courseAvgAsOf(int courseId, int term) {
+		return structural(() -> super.courseAvgAsOf(courseId, term));
+	}
+
+	@Override
+	public String topThreeStudentsAsOf(int term) {
+		return structural(() -> super.topThreeStudentsAsOf(term));
+	}
+
+	@Override
+	public String examHistory(int studentId, int courseId) {
+		return structural(() -> super.examHistory(studentId, courseId));
+	}
+
+	@Override
+	public void importFrom(Path file) throws IOException {
+		long stamp = structure.writeLock();
+		try {
+			super.importFrom(file);
+		} finally {
+			structure.unlockWrite(stamp);
+		}
+	}
+
+	@Override
+	public void exportTo(Path file) throws IOException {
+		long stamp = structure.readLock();
+		long[] stamps = lockStripes();
+		try {
+			super.exportTo(file);
+		} finally {
+			unlockStripes(stamps);
+			structure.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Creates a concurrent university from a snapshot written by {@link #saveSnapshot}
+	 * 
+	 * @param file the snapshot file
+	 * @return the restored university
+	 * @throws IOException if the file cannot be read or is not a valid snapshot
+	 */
+	public static ConcurrentUniversity loadSnapshot(Path file) throws IOException {
+		return loadSnapshot(file, StorageMode.HASHED);
+	}
+
+	/**
+	 * Creates a concurrent university from a snapshot written by {@link #saveSnapshot}
+	 * 
+	 * @param file the snapshot file
+	 * @param mode how students, courses and registrations are stored
+	 * @return the restored university
+	 * @throws IOException if the file cannot be read or is not a valid snapshot
+	 */
+	public static ConcurrentUniversity loadSnapshot(Path file, StorageMode mode) throws IOException {
+		return loadSnapshot(file, name -> new ConcurrentUniversity(name, mode));
+	}
+
+	@Override
+	public void saveSnapshot(Path file) throws IOException {
+		long stamp = structure.readLock();
+		long[] stamps = lockStripes();
+		try {
+			super.saveSnapshot(file);
+		} finally {
+			unlockStripes(stamps);
+			structure.unlockRead(stamp);
+		}
+	}
+
+	@Override
+	public void openJournal(Path file) throws IOException {
+		long stamp = structure.writeLock();
+		try {
+			super.openJournal(file);
+		} finally {
+			structure.unlockWrite(stamp);
+		}
+	}
+
+	@Override
+	public void closeJournal() throws IOException {
+		long stamp = structure.writeLock();
+		try {
+			super.closeJournal();
+		} finally {
+			structure.unlockWrite(stamp);
+		}
+	}
+
+	@Override
+	public long replayJournal(Path file) throws IOException {
+		long stamp = structure.writeLock();
+		try {
+			return super.replayJournal(file);
+		} finally {
+			structure.unlockWrite(stamp);
+		}
+	}
+
+	@Override
+	public void setAsyncLogging(boolean enabled) {
+		exclusive(() -> super.setAsyncLogging(enabled));
+	}
+
+	@Override
+	int enrolled() {
+		return structural(super::enrolled);
+	}
+
+	@Override
+	List<UniversityRegistry.Ranked> ranking(int k, int campus) {
+		return structural(() -> super.ranking(k, campus));
+	}
+
+	@Override
+	long[] gradeTotals(String title) {
+		return structural(() -> super.gradeTotals(title));
+	}
+
+	@Override
+	public void setMetrics(boolean enabled) {
+		exclusive(() -> super.setMetrics(enabled));
+	}
+
+	@Override
+	void checkConsistency() {
+		long stamp = structure.readLock();
+		long[] stamps = lockStripes();
+		try {
+			super.checkConsistency();
+		} finally {
+			unlockStripes(stamps);
+			structure.unlockRead(stamp);
+		}
+	}
+}
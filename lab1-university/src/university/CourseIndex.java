@@ -0,0 +1,228 @@
+package university;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Secondary indexes of the courses, by teacher and by words in the title.
+ *
+ * The teacher index maps each teacher to the sorted codes of their courses.
+ * The title index maps each trigram (sequence of three characters, ignoring case)
+ * of the titles to the sorted codes of the courses containing it: a search
+ * intersects the lists of the trigrams of the searched text and then checks the
+ * few remaining candidates, instead of scanning all the titles.
+ * The trigrams are packed into longs and kept in an open addressing table,
+ * whose slots are chosen by multiplicative hashing: packed trigrams differ
+ * mostly in their low bits, which a plain hash of the long would not spread.
+ */
+class CourseIndex {
+
+	private static final int GRAM = 3;
+	private static final int[] NONE = new int[0];
+
+	private final int base;
+	private String[] titles = new String[16];
+	private int size;
+	private final Map<String, IntSet> byTeacher = new HashMap<>();
+	private long[] trigrams = new long[1024]; // open addressing, linear probing
+	private IntSet[] postings = new IntSet[1024]; // null for the free slots
+	private int distinctTrigrams;
+
+	/**
+	 * Creates an empty index
+	 * @param base the smallest course code
+	 */
+	CourseIndex(int base) {
+		this.base = base;
+	}
+
+	/**
+	 * Adds a course, courses must be added in order of code
+	 *
+	 * @param code code of the course
+	 * @param title title of the course
+	 * @param teacher name of the teacher
+	 */
+	void add(int code, String title, String teacher) {
+		int slot = code - base;
+		if (slot >= titles.length) {
+			titles = Arrays.copyOf(titles, Math.max(titles.length * 2, slot + 1));
+		}
+		titles[slot] = title;
+		size = Math.max(size, slot + 1);
+		byTeacher.computeIfAbsent(teacher, t -> new IntSet()).add(code);
+		for (int i = 0; i + GRAM <= title.length(); i++) {
+			postingsOf(trigram(title, i)).add(code);
+		}
+	}
+
+	private int slot(long trigram) {
+		return (int) ((trigram * 0x9E3779B97F4A7C15L) >>> 32) & (trigrams.length - 1);
+	}
+
+	/**
+	 * @return the courses containing a trigram, or {@code null} if none does
+	 */
+	private IntSet postings(long trigram) {
+		for (int slot = slot(trigram); postings[slot] != null; slot = (slot + 1) & (trigrams.length - 1)) {
+			if (trigrams[slot] == trigram) {
+				return postings[slot];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return the courses containing a trigram, added to the table if missing
+	 */
+	private IntSet postingsOf(long trigram) {
+		int slot = slot(trigram);
+		while (postings[slot] != null) {
+			if (trigrams[slot] == trigram) {
+				return postings[slot];
+			}
+			slot = (slot + 1) & (trigrams.length - 1);
+		}
+		if (2 * (distinctTrigrams + 1) > trigrams.length) {
+			grow();
+			return postingsOf(trigram);
+		}
+		distinctTrigrams++;
+		trigrams[slot] = trigram;
+		postings[slot] = new IntSet();
+		return postings[slot];
+	}
+
+	private void grow() {
+		long[] oldTrigrams = trigrams;
+		IntSet[] oldPostings = postings;
+		trigrams = new long[oldTrigrams.length * 2];
+		postings = new IntSet[oldTrigrams.length * 2];
+		for (int i = 0; i < oldTrigrams.length; i++) {
+			if (oldPostings[i] != null) {
+				int slot = slot(oldTrigrams[i]);
+				while (postings[slot] != null) {
+					slot = (slot + 1) & (trigrams.length - 1);
+				}
+				trigrams[slot] = oldTrigrams[i];
+				postings[slot] = oldPostings[i];
+			}
+		}
+	}
+
+	private static long trigram(String text, int start) {
+		return (long) Character.toLowerCase(text.charAt(start)) << 32
+				| (long) Character.toLowerCase(text.charAt(start + 1)) << 16
+				| Character.toLowerCase(text.charAt(start + 2));
+	}
+
+	/**
+	 * @param teacher name of the teacher
+	 * @return the codes of the courses of the teacher, in increasing order
+	 */
+	int[] byTeacher(String teacher) {
+		IntSet courses = byTeacher.get(teacher);
+		return courses == null ? NONE : courses.toArray();
+	}
+
+	/**
+	 * @param text the text to search, ignoring case
+	 * @return the codes of the courses whose title contains the text, in increasing order
+	 */
+	int[] byTitle(String text) {
+		String lower = lowerCase(text);
+		if (lower.length() < GRAM) {
+			return scan(lower);
+		}
+		int grams = lower.length() - GRAM + 1;
+		IntSet[] lists = new IntSet[grams];
+		for (int i = 0; i < grams; i++) {
+			lists[i] = postings(trigram(lower, i));
+			if (lists[i] == null) {
+				return NONE;
+			}
+		}
+		// the candidates are taken from the shortest list and looked up in the others,
+		// whose cursors only move forward
+		Arrays.sort(lists, (a, b) -> Integer.compare(a.size(), b.size()));
+		int[] cursors = new int[grams];
+		IntSet shortest = lists[0];
+		int[] result = new int[shortest.size()];
+		int found = 0;
+		candidates:
+		for (int c = 0; c < shortest.size(); c++) {
+			int code = shortest.get(c);
+			for (int p = 1; p < grams; p++) {
+				cursors[p] = lists[p].ceiling(cursors[p], code);
+				if (cursors[p] == lists[p].size()) {
+					break candidates;
+				}
+				if (lists[p].get(cursors[p]) != code) {
+					continue candidates;
+				}
+			}
+			// with more than one trigram, they may appear in the title in a different order
+			if (grams == 1 || contains(titles[code - base], lower)) {
+				result[found++] = code;
+			}
+		}
+		return Arrays.copyOf(result, found);
+	}
+
+	private int[] scan(String lower) {
+		if (lower.isEmpty()) {
+			return all();
+		}
+		int[] result = new int[size];
+		int found = 0;
+		for (int slot = 0; slot < size; slot++) {
+			if (titles[slot] != null && contains(titles[slot], lower)) {
+				result[found++] = base + slot;
+			}
+		}
+		return Arrays.copyOf(result, found);
+	}
+
+	private int[] all() {
+		int[] result = new int[size];
+		int found = 0;
+		for (int slot = 0; slot < size; slot++) {
+			if (titles[slot] != null) {
+				result[found++] = base + slot;
+			}
+		}
+		return Arrays.copyOf(result, found);
+	}
+
+	// lower case character by character, as done for the trigrams
+	private static String lowerCase(String text) {
+		char[] chars = text.toCharArray();
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = Character.toLowerCase(chars[i]);
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * @param title a title
+	 * @param lower the searched text, in lower case
+	 * @return whether the title contains the text, ignoring case
+	 */
+	private static boolean contains(String title, String lower) {
+		char first = lower.charAt(0);
+		for (int i = 0; i + lower.length() <= title.length(); i++) {
+			if (Character.toLowerCase(title.charAt(i)) != first) {
+				continue;
+			}
+			int j = 1;
+			while (j < lower.length() && Character.toLowerCase(title.charAt(i + j)) == lower.charAt(j)) {
+				j++;
+			}
+			if (j == lower.length()) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
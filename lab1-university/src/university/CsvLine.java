@@ -0,0 +1,225 @@
+package university;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reader and writer of the fields of the semicolon separated files
+ * used by {@link University#importFrom} and {@link University#exportTo}.
+ *
+ * Text fields containing separators, quotes or line breaks are enclosed
+ * in double quotes, with the quotes inside them doubled.
+ * Numeric fields are parsed in place, without creating substrings.
+ *
+ * Lines end with {@code \n}, {@code \r\n} or {@code \r}. Line breaks inside
+ * quoted fields are kept as they are, and the lines are numbered as they
+ * appear in the file, counting the ones inside quoted fields.
+ */
+class CsvLine {
+
+	static final char SEPARATOR = ';';
+	private static final char QUOTE = '"';
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final Reader in;
+	private final char[] buffer = new char[BUFFER_SIZE];
+	private int start;
+	private int end;
+	private final StringBuilder field = new StringBuilder();
+	private String line;
+	private String lineBreak;
+	private int pos;
+	private long number;
+
+	/**
+	 * @param in source of the lines
+	 */
+	CsvLine(Reader in) {
+		this.in = in;
+	}
+
+	/**
+	 * Moves to the next line
+	 * @return {@code false} when the end of the input is reached
+	 */
+	boolean next() throws IOException {
+		line = readLine();
+		pos = 0;
+		return line != null;
+	}
+
+	/**
+	 * Reads a physical line, keeping the line break that ends it in {@link #lineBreak}
+	 * @return the line without the line break, or {@code null} at the end of the input
+	 */
+	private String readLine() throws IOException {
+		StringBuilder pending = null;
+		while (start < end || fill()) {
+			for (int i = start; i < end; i++) {
+				char c = buffer[i];
+				if (c == '\n' || c == '\r') {
+					String text = pending == null ? new String(buffer, start, i - start)
+							: pending.append(buffer, start, i - start).toString();
+					start = i + 1;
+					lineBreak = "\n";
+					if (c == '\r') {
+						lineBreak = "\r";
+						if ((start < end || fill()) && buffer[start] == '\n') {
+							start++;
+							lineBreak = "\r\n";
+						}
+					}
+					number++;
+					return text;
+				}
+			}
+			if (pending == null) {
+				pending = new StringBuilder();
+			}
+			pending.append(buffer, start, end - start);
+			start = end;
+		}
+		// the last line may have no line break
+		lineBreak = "";
+		if (pending == null) {
+			return null;
+		}
+		number++;
+		return pending.toString();
+	}
+
+	private boolean fill() throws IOException {
+		start = 0;
+		end = Math.max(0, in.read(buffer, 0, buffer.length));
+		return end > 0;
+	}
+
+	/**
+	 * @return the current line, unparsed
+	 */
+	String raw() {
+		return line;
+	}
+
+	/**
+	 * @return whether the current line has no more fields
+	 */
+	boolean atEnd() {
+		return pos > line.length();
+	}
+
+	/**
+	 * Reads the next field as a single character
+	 * @return the character
+	 */
+	char tag() throws IOException {
+		int end = fieldEnd();
+		if (end != pos + 1) {
+			throw error("record type expected");
+		}
+		char tag = line.charAt(pos);
+		pos = end + 1;
+		return tag;
+	}
+
+	/**
+	 * Reads the next field as an integer
+	 * @return the value of the field
+	 */
+	int number() throws IOException {
+		int end = fieldEnd();
+		try {
+			int value = Integer.parseInt(line, pos, end, 10);
+			pos = end + 1;
+			return value;
+		} catch (NumberFormatException e) {
+			throw error("number expected");
+		}
+	}
+
+	/**
+	 * Reads the next field as text, removing quotes
+	 * @return the text
+	 */
+	String text() throws IOException {
+		if (pos > line.length()) {
+			throw error("missing field");
+		}
+		if (pos == line.length() || line.charAt(pos) != QUOTE) {
+			int end = fieldEnd();
+			String text = line.substring(pos, end);
+			pos = end + 1;
+			return text;
+		}
+		field.setLength(0);
+		pos++;
+		while (true) {
+			int quote = line.indexOf(QUOTE, pos);
+			if (quote < 0) {
+				// the quoted field continues on the next line
+				field.append(line, pos, line.length()).append(lineBreak);
+				line = readLine();
+				pos = 0;
+				if (line == null) {
+					throw error("unterminated quoted field");
+				}
+				continue;
+			}
+			field.append(line, pos, quote);
+			if (quote + 1 < line.length() && line.charAt(quote + 1) == QUOTE) {
+				field.append(QUOTE);
+				pos = quote + 2;
+				continue;
+			}
+			pos = quote + 1;
+			if (pos < line.length() && line.charAt(pos) != SEPARATOR) {
+				throw error("separator expected after quoted field");
+			}
+			pos++;
+			return field.toString();
+		}
+	}
+
+	private int fieldEnd() throws IOException {
+		if (pos > line.length()) {
+			throw error("missing field");
+		}
+		int end = line.indexOf(SEPARATOR, pos);
+		return end < 0 ? line.length() : end;
+	}
+
+	/**
+	 * Creates an exception for a malformed line
+	 * @param message description of the problem
+	 * @return the exception, including the line number
+	 */
+	IOException error(String message) {
+		return new IOException("Line " + number + ": " + message);
+	}
+
+	/**
+	 * Appends a text field, quoting it when needed
+	 * @param out destination
+	 * @param text content of the field
+	 */
+	static void appendText(StringBuilder out, String text) {
+		boolean quote = false;
+		for (int i = 0; i < text.length() && !quote; i++) {
+			char c = text.charAt(i);
+			quote = c == SEPARATOR || c == QUOTE || c == '\n' || c == '\r';
+		}
+		if (!quote) {
+			out.append(text);
+			return;
+		}
+		out.append(QUOTE);
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c == QUOTE) {
+				out.append(QUOTE);
+			}
+			out.append(c);
+		}
+		out.append(QUOTE);
+	}
+}
@@ -0,0 +1,245 @@
+package university;
+
+import java.lang.ref.Cleaner;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Asynchronous writer of the events logged by {@link University}.
+ *
+ * Events are stored as raw fields into the pre-allocated slots of a ring buffer
+ * and a background thread formats them and passes them to the logger,
+ * so the thread recording an event neither formats strings nor waits for the log handlers.
+ * When the buffer is full, producers block until the background thread frees a slot,
+ * and the background thread blocks while there are no events: neither of them spins.
+ * The lock guarding the waits is taken only when somebody is waiting.
+ * The background thread stops when the log is closed or when its owner
+ * is no longer reachable.
+ */
+class EventLog {
+
+	/**
+	 * Kinds of logged events, with the {@link University} method generating them
+	 */
+	enum Kind {
+		ENROLL("enroll"),
+		ACTIVATE("activate"),
+		REGISTER("register"),
+		EXAM("exam"),
+		EXAM_BATCH("examBatch");
+
+		final String method;
+
+		Kind(String method) {
+			this.method = method;
+		}
+	}
+
+	private final Logger logger;
+	private final Event[] ring;
+	private final int mask;
+	private final AtomicLongArray published;
+	private final AtomicLong claimed = new AtomicLong();
+	private volatile long consumed;
+	private volatile boolean running = true;
+	private volatile boolean stopped;
+	private final Thread drainer;
+
+	// the waiting threads set their flag or counter before checking again the
+	// condition they wait for, and the threads changing it signal only if they see them
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition work = lock.newCondition();
+	private final Condition progress = lock.newCondition();
+	private volatile boolean idle;
+	private volatile int waiting;
+	private final Cleaner.Cleanable cleanable;
+
+	/**
+	 * Cleaner shared by all the logs, created with the first of them
+	 */
+	private static class Owners {
+		static final Cleaner CLEANER = Cleaner.create();
+	}
+
+	/**
+	 * Creates the log and starts the background thread
+	 *
+	 * @param logger logger receiving the messages
+	 * @param capacity number of slots in the buffer, rounded up to a power of two
+	 * @param name name of the background thread
+	 * @param owner object using the log, when it is no longer reachable the log is closed
+	 */
+	EventLog(Logger logger, int capacity, String name, Object owner) {
+		this.logger = logger;
+		int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+		ring = new Event[size];
+		mask = size - 1;
+		published = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			ring[i] = new Event();
+			published.set(i, -1);
+		}
+		drainer = new Thread(this::drain, name);
+		drainer.setDaemon(true);
+		drainer.start();
+		// the action must not refer to the owner, or the owner would stay reachable
+		cleanable = Owners.CLEANER.register(owner, this::stop);
+	}
+
+	/**
+	 * Formats the message of an event
+	 */
+	static String format(Kind kind, int a, int b, int c, String x, String y) {
+		switch (kind) {
+		case ENROLL: return String.format("New student enrolled: %d, %s %s", a, x, y);
+		case ACTIVATE: return String.format("New course activated: %d, %s %s", a, x, y);
+		case REGISTER: return String.format("Student %d signed up for course %d", a, b);
+		case EXAM_BATCH: return String.format("Recorded %d grades of %d students in %d courses", a, b, c);
+		default: return String.format("Student %d took an exam in course %d with grade %d", a, b, c);
+		}
+	}
+
+	/**
+	 * Records an event, the message will be formatted and logged later
+	 */
+	void append(Kind kind, int a, int b, int c, String x, String y) {
+		long seq = claimed.getAndIncrement();
+		if (seq - consumed >= ring.length) {
+			awaitConsumed(seq - ring.length + 1);
+		}
+		int slot = (int) seq & mask;
+		Event event = ring[slot];
+		event.kind = kind;
+		event.a = a;
+		event.b = b;
+		event.c = c;
+		event.x = x;
+		event.y = y;
+		published.set(slot, seq);
+		if (idle) {
+			signal(work);
+		}
+	}
+
+	/**
+	 * Waits until all the events recorded so far have been logged
+	 */
+	void flush() {
+		awaitConsumed(claimed.get());
+	}
+
+	/**
+	 * Blocks until the given number of events has been consumed, or the background thread stops
+	 */
+	private void awaitConsumed(long target) {
+		if (consumed >= target) {
+			return;
+		}
+		lock.lock();
+		try {
+			waiting++;
+			while (consumed < target && !stopped) {
+				progress.awaitUninterruptibly();
+			}
+		} finally {
+			waiting--;
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Logs the pending events and stops the background thread.
+	 * It has no effect if the log is already closed.
+	 */
+	void close() {
+		cleanable.clean();
+	}
+
+	private void stop() {
+		running = false;
+		signal(work);
+		try {
+			drainer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void signal(Condition condition) {
+		lock.lock();
+		try {
+			condition.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Blocks until the given sequence number is published or the log is closed
+	 */
+	private void awaitPublished(int slot, long next) {
+		lock.lock();
+		try {
+			idle = true;
+			while (published.get(slot) != next && running) {
+				work.awaitUninterruptibly();
+			}
+		} finally {
+			idle = false;
+			lock.unlock();
+		}
+	}
+
+	private void drain() {
+		try {
+			drainEvents();
+		} finally {
+			// wakes up the producers, which no longer wait once the thread has stopped
+			stopped = true;
+			signal(progress);
+		}
+	}
+
+	private void drainEvents() {
+		long next = consumed;
+		while (running || next < claimed.get()) {
+			int slot = (int) next & mask;
+			if (published.get(slot) != next) {
+				if (running) {
+					awaitPublished(slot, next);
+				} else {
+					// claimed by a producer that is still filling the slot
+					Thread.yield();
+				}
+				continue;
+			}
+			Event event = ring[slot];
+			String message = format(event.kind, event.a, event.b, event.c, event.x, event.y);
+			String method = event.kind.method;
+			event.x = event.y = null;
+			try {
+				logger.logp(Level.INFO, University.class.getName(), method, message);
+			} catch (RuntimeException e) {
+				// a failing filter or handler must not stop the log
+			} finally {
+				consumed = ++next;
+				if (waiting > 0) {
+					signal(progress);
+				}
+			}
+		}
+	}
+
+	private static class Event {
+		private Kind kind;
+		private int a;
+		private int b;
+		private int c;
+		private String x;
+		private String y;
+	}
+}
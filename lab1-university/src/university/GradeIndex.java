@@ -0,0 +1,264 @@
+package university;
+
+import java.util.Arrays;
+
+/**
+ * Index of exam grades grouped by owner (a student or a course).
+ *
+ * Owners are identified by dense integer ids starting from a base value,
+ * so each owner's row is found by direct array access.
+ * Each row keeps the ids of the counterparts (courses for a student,
+ * students for a course) sorted, together with the corresponding grades,
+ * and maintains the running sum of its grades so that averages can be
+ * read in constant time.
+ * Since grades range from {@value #MIN_GRADE} to {@value #MAX_GRADE}, each row
+ * also counts how many times each grade occurs, so that its distribution
+ * and percentiles are read without sorting the grades.
+ * A row can also link each grade to an int value, such as the
+ * entry of the grade in the {@link TermHistory} log.
+ */
+class GradeIndex {
+
+	static final int MIN_GRADE = 0;
+	static final int MAX_GRADE = 30;
+	static final int GRADES = MAX_GRADE - MIN_GRADE + 1;
+
+	private final int base;
+	private Row[] rows = new Row[16];
+
+	/**
+	 * Creates an empty index
+	 * @param base the smallest id that can be used as owner
+	 */
+	GradeIndex(int base) {
+		this.base = base;
+	}
+
+	/**
+	 * Makes room for the given number of owners
+	 * @param owners expected number of owners
+	 */
+	void ensureCapacity(int owners) {
+		if (owners > rows.length) {
+			rows = Arrays.copyOf(rows, owners);
+		}
+	}
+
+	/**
+	 * Makes room for the row of an owner, growing the index geometrically,
+	 * so that recording the grades of the owner does not replace the array of rows
+	 * @param owner id of the owner
+	 */
+	void reserve(int owner) {
+		int slot = owner - base;
+		if (slot >= rows.length) {
+			rows = Arrays.copyOf(rows, Math.max(rows.length * 2, slot + 1));
+		}
+	}
+
+	/**
+	 * Records a grade for the pair owner/other, replacing any previous one.
+	 *
+	 * @param owner id of the owner of the row
+	 * @param other id of the counterpart
+	 * @param grade the grade
+	 * @return the previous grade or -1 if none was recorded
+	 */
+	int put(int owner, int other, int grade) {
+		int slot = owner - base;
+		if (slot >= rows.length) {
+			rows = Arrays.copyOf(rows, Math.max(rows.length * 2, slot + 1));
+		}
+		Row row = rows[slot];
+		if (row == null) {
+			row = new Row();
+			rows[slot] = row;
+		}
+		return row.put(other, grade);
+	}
+
+	/**
+	 * Retrieves the grades of an owner
+	 *
+	 * @param owner id of the owner
+	 * @return the row or {@code null} if no grade has been recorded
+	 */
+	Row row(int owner) {
+		int slot = owner - base;
+		if (slot < 0 || slot >= rows.length) {
+			return null;
+		}
+		return rows[slot];
+	}
+
+	/**
+	 * Checks the running aggregates against a full recompute and
+	 * verifies that every grade is mirrored in the transposed index.
+	 *
+	 * @param transposed the index with owners and counterparts swapped
+	 * @throws IllegalStateException if an inconsistency is found
+	 */
+	void verify(GradeIndex transposed) {
+		long entries = 0;
+		for (int slot = 0; slot < rows.length; slot++) {
+			Row row = rows[slot];
+			if (row == null) continue;
+			int owner = slot + base;
+			long sum = 0;
+			int[] histogram = new int[GRADES];
+			for (int i = 0; i < row.size; i++) {
+				sum += row.grades[i];
+				histogram[row.grades[i] - MIN_GRADE]++;
+				Row mirror = transposed.row(row.keys[i]);
+				if (mirror == null || mirror.gradeOf(owner) != row.grades[i]) {
+					throw new IllegalStateException("Grade " + owner + "/" + row.keys[i] + " is not mirrored");
+				}
+			}
+			if (sum != row.sum) {
+				throw new IllegalStateException("Running sum of " + owner + " is " + row.sum + " instead of " + sum);
+			}
+			if (!Arrays.equals(histogram, row.histogram)) {
+				throw new IllegalStateException("Histogram of " + owner + " does not match its grades");
+			}
+			entries += row.size;
+		}
+		if (entries != transposed.entries()) {
+			throw new IllegalStateException("Indexes hold " + entries + " and " + transposed.entries() + " grades");
+		}
+	}
+
+	/**
+	 * @return total number of grades in the index
+	 */
+	long entries() {
+		long entries = 0;
+		for (Row row : rows) {
+			if (row != null) entries += row.size;
+		}
+		return entries;
+	}
+
+	/**
+	 * Grades of a single owner, sorted by counterpart id
+	 */
+	static class Row {
+		private int[] keys = new int[4];
+		private int[] grades = new int[4];
+		private int[] links; // parallel to keys, allocated by the first link
+		private int size;
+		private long sum;
+		private final int[] histogram = new int[GRADES];
+
+		private int put(int key, int grade) {
+			int pos = Arrays.binarySearch(keys, 0, size, key);
+			if (pos >= 0) {
+				int previous = grades[pos];
+				grades[pos] = grade;
+				sum += grade - previous;
+				histogram[previous - MIN_GRADE]--;
+				histogram[grade - MIN_GRADE]++;
+				return previous;
+			}
+			pos = -pos - 1;
+			if (size == keys.length) {
+				keys = Arrays.copyOf(keys, size * 2);
+				grades = Arrays.copyOf(grades, size * 2);
+				if (links != null) {
+					links = Arrays.copyOf(links, size * 2);
+				}
+			}
+			System.arraycopy(keys, pos, keys, pos + 1, size - pos);
+			System.arraycopy(grades, pos, grades, pos + 1, size - pos);
+			keys[pos] = key;
+			grades[pos] = grade;
+			if (links != null) {
+				System.arraycopy(links, pos, links, pos + 1, size - pos);
+				links[pos] = -1;
+			}
+			size++;
+			sum += grade;
+			histogram[grade - MIN_GRADE]++;
+			return -1;
+		}
+
+		/**
+		 * @return number of grades in the row
+		 */
+		int size() { return size; }
+
+		/**
+		 * @param i position in the row
+		 * @return id of the counterpart at the given position
+		 */
+		int key(int i) { return keys[i]; }
+
+		/**
+		 * @param i position in the row
+		 * @return grade at the given position
+		 */
+		int grade(int i) { return grades[i]; }
+
+		/**
+		 * @param key id of the counterpart
+		 * @return the grade or -1 if none was recorded
+		 */
+		int gradeOf(int key) {
+			int pos = Arrays.binarySearch(keys, 0, size, key);
+			return pos >= 0 ? grades[pos] : -1;
+		}
+
+		/**
+		 * @param key id of the counterpart
+		 * @return the value linked to the grade of the counterpart, or -1 if none
+		 */
+		int link(int key) {
+			int pos = Arrays.binarySearch(keys, 0, size, key);
+			return pos >= 0 && links != null ? links[pos] : -1;
+		}
+
+		/**
+		 * Links a value to the grade of a counterpart
+		 * 
+		 * @param key id of a counterpart with a grade in the row
+		 * @param value the value
+		 */
+		void link(int key, int value) {
+			int pos = Arrays.binarySearch(keys, 0, size, key);
+			if (links == null) {
+				links = new int[keys.length];
+				Arrays.fill(links, -1);
+			}
+			links[pos] = value;
+		}
+
+		/**
+		 * @return sum of all the grades in the row
+		 */
+		long sum() { return sum; }
+
+		/**
+		 * @return number of occurrences of each grade, starting from {@value #MIN_GRADE}
+		 */
+		int[] histogram() { return histogram.clone(); }
+	}
+
+	/**
+	 * Finds a percentile of a distribution of grades with the nearest rank method
+	 * 
+	 * @param histogram number of occurrences of each grade, starting from {@value #MIN_GRADE}
+	 * @param size number of grades, greater than 0
+	 * @param percent the percentile, between 0 and 100
+	 * @return the smallest grade such that at least the given percentage of the grades is not above it
+	 */
+	static int percentile(int[] histogram, long size, double percent) {
+		long rank = Math.max(1, (long) Math.ceil(size * percent / 100));
+		long seen = 0;
+		for (int i = 0; i < GRADES; i++) {
+			seen += histogram[i];
+			if (seen >= rank) {
+				return MIN_GRADE + i;
+			}
+		}
+		return MAX_GRADE;
+	}
+}
@@ -0,0 +1,131 @@
+package university;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PrimitiveIterator;
+
+/**
+ * Storage based on hash maps of student and course objects.
+ * The registrations of each student and course are sorted int sets,
+ * so they are listed in id order.
+ */
+class HashedStorage implements Storage {
+
+	private Map<Integer, Student> students = new HashMap<>();
+	private Map<Integer, Course> courses = new HashMap<>();
+
+	private Map<Integer, IntSet> studentCourses = new HashMap<>(); // studentId -> set of courseIds
+	private Map<Integer, IntSet> courseStudents = new HashMap<>(); // courseId -> set of studentIds
+
+	@Override
+	public void ensureCapacity(int students, int courses) {
+		// hash maps cannot grow in advance, so they are replaced by larger ones
+		if (students > this.students.size()) {
+			this.students = copy(this.students, students);
+			this.studentCourses = copy(this.studentCourses, students);
+		}
+		if (courses > this.courses.size()) {
+			this.courses = copy(this.courses, courses);
+			this.courseStudents = copy(this.courseStudents, courses);
+		}
+	}
+
+	private static <V> Map<Integer, V> copy(Map<Integer, V> map, int capacity) {
+		Map<Integer, V> copy = HashMap.newHashMap(capacity);
+		copy.putAll(map);
+		return copy;
+	}
+
+	@Override
+	public void addStudent(int id, String first, String last) {
+		students.put(id, new Student(first, last));
+		studentCourses.put(id, new IntSet());
+	}
+
+	@Override
+	public boolean hasStudent(int id) {
+		return students.containsKey(id);
+	}
+
+	@Override
+	public String first(int id) {
+		return students.get(id).first;
+	}
+
+	@Override
+	public String last(int id) {
+		return students.get(id).last;
+	}
+
+	@Override
+	public void addCourse(int id, String title, String teacher) {
+		courses.put(id, new Course(title, teacher));
+		courseStudents.put(id, new IntSet());
+	}
+
+	@Override
+	public boolean hasCourse(int id) {
+		return courses.containsKey(id);
+	}
+
+	@Override
+	public String title(int id) {
+		return courses.get(id).title;
+	}
+
+	@Override
+	public String teacher(int id) {
+		return courses.get(id).teacher;
+	}
+
+	@Override
+	public boolean register(int studentId, int courseId) {
+		courseStudents.get(courseId).add(studentId);
+		return studentCourses.get(studentId).add(courseId);
+	}
+
+	@Override
+	public boolean isRegistered(int courseId, int studentId) {
+		return courseStudents.get(courseId).contains(studentId);
+	}
+
+	@Override
+	public int courseCount(int studentId) {
+		return studentCourses.get(studentId).size();
+	}
+
+	@Override
+	public int studentCount(int courseId) {
+		return courseStudents.get(courseId).size();
+	}
+
+	@Override
+	public PrimitiveIterator.OfInt courses(int studentId) {
+		return studentCourses.get(studentId).iterator();
+	}
+
+	@Override
+	public PrimitiveIterator.OfInt students(int courseId) {
+		return courseStudents.get(courseId).iterator();
+	}
+
+	private static class Student {
+		private final String first;
+		private final String last;
+
+		Student(String first, String last) {
+			this.first = first;
+			this.last = last;
+		}
+	}
+
+	private static class Course {
+		private final String title;
+		private final String teacher;
+
+		Course(String title, String teacher) {
+			this.title = title;
+			this.teacher = teacher;
+		}
+	}
+}
@@ -0,0 +1,134 @@
+package university;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Set of primitive ints kept as a sorted array.
+ *
+ * Ids are allocated in increasing order, so most insertions fall at the end
+ * of the array or close to it: the insertion point is searched by galloping
+ * backwards from the last value, which takes constant time for appends and
+ * grows with the logarithm of the distance from the end otherwise.
+ */
+class IntSet {
+
+	private int[] values = new int[4];
+	private int size;
+
+	/**
+	 * Adds a value to the set
+	 * @param value the value
+	 * @return {@code true} if the value was not already present
+	 */
+	boolean add(int value) {
+		int pos = insertionPoint(value);
+		if (pos < 0) {
+			return false;
+		}
+		if (size == values.length) {
+			values = Arrays.copyOf(values, size * 2);
+		}
+		System.arraycopy(values, pos, values, pos + 1, size - pos);
+		values[pos] = value;
+		size++;
+		return true;
+	}
+
+	/**
+	 * Gallops backwards from the end of the array, then searches the last step
+	 * @return the index where the value must be inserted, or a negative number if it is present
+	 */
+	private int insertionPoint(int value) {
+		int hi = size;
+		int step = 1;
+		while (hi > 0 && values[hi - 1] >= value) {
+			int lo = Math.max(0, hi - step);
+			if (values[lo] < value) {
+				int pos = Arrays.binarySearch(values, lo + 1, hi, value);
+				return pos >= 0 ? -1 : -pos - 1;
+			}
+			if (values[lo] == value) {
+				return -1;
+			}
+			hi = lo;
+			step <<= 1;
+		}
+		return hi;
+	}
+
+	/**
+	 * @param value the value
+	 * @return whether the set contains the value
+	 */
+	boolean contains(int value) {
+		return Arrays.binarySearch(values, 0, size, value) >= 0;
+	}
+
+	/**
+	 * @return number of values in the set
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @param index position of the value, from 0 to {@link #size()} excluded
+	 * @return the value at the given position in increasing order
+	 */
+	int get(int index) {
+		return values[index];
+	}
+
+	/**
+	 * Finds the first value not smaller than a given one, galloping forward from a position,
+	 * so that a sequence of increasing lookups scans the array only once
+	 *
+	 * @param from position where the search starts
+	 * @param value the value
+	 * @return the position of the first value, from {@code from} on, not smaller than {@code value},
+	 *         or {@link #size()} if there is none
+	 */
+	int ceiling(int from, int value) {
+		int lo = from;
+		int step = 1;
+		while (lo < size && values[lo] < value) {
+			int hi = lo + step;
+			if (hi >= size || values[hi] >= value) {
+				int pos = Arrays.binarySearch(values, lo + 1, Math.min(hi, size), value);
+				return pos >= 0 ? pos : -pos - 1;
+			}
+			lo = hi;
+			step <<= 1;
+		}
+		return lo;
+	}
+
+	/**
+	 * @return a copy of the values, in increasing order
+	 */
+	int[] toArray() {
+		return Arrays.copyOf(values, size);
+	}
+
+	/**
+	 * @return the values in increasing order
+	 */
+	PrimitiveIterator.OfInt iterator() {
+		return new PrimitiveIterator.OfInt() {
+			private int next;
+
+			@Override
+			public boolean hasNext() {
+				return next < size;
+			}
+
+			@Override
+			public int nextInt() {
+				if (next >= size) throw new NoSuchElementException();
+				return values[next++];
+			}
+		};
+	}
+}
@@ -0,0 +1,256 @@
+package university;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Append-only log of the updates applied to a {@link University}
+ * after its last snapshot.
+ *
+ * Each record is written to the file as soon as the update is performed,
+ * prefixed by its length: when the journal is read back, a truncated
+ * last record (e.g. after a crash) is ignored, while a length or a field
+ * that does not fit its record is reported as a corrupt journal.
+ * Records are numbered by a sequence that continues across journals and is
+ * saved in the snapshots, so that the records already contained in a snapshot
+ * are skipped when the journal is replayed.
+ * Since updates cannot report checked exceptions, write failures
+ * are reported as {@link UncheckedIOException}.
+ */
+class Journal implements Closeable {
+
+	private static final byte ENROLL = 'S';
+	private static final byte ACTIVATE = 'C';
+	private static final byte REGISTER = 'R';
+	private static final byte EXAM = 'E';
+	private static final byte RECTOR = 'K';
+	private static final byte TERM = 'T';
+
+	/**
+	 * Receiver of the records read from a journal
+	 */
+	interface Visitor {
+		void enroll(int id, String first, String last) throws IOException;
+		void activate(int code, String title, String teacher) throws IOException;
+		void register(int studentId, int courseId) throws IOException;
+		void exam(int studentId, int courseId, int grade) throws IOException;
+		void rector(String first, String last) throws IOException;
+		void closeTerm(int term) throws IOException;
+	}
+
+	private static final int BATCH_CAPACITY = 1 << 16;
+	private static final int MIN_LENGTH = 8 + 1 + 12 + 4 + 4; // sequence, tag, numbers and two null strings
+
+	private final FileChannel channel;
+	private ByteBuffer record = ByteBuffer.allocate(256);
+	private ByteBuffer batch; // records of a bulk update not written yet
+	private long sequence; // of the last record written
+
+	/**
+	 * Opens a journal, appending to it if it already exists
+	 * @param file the journal file
+	 * @param sequence sequence number of the last update already recorded
+	 */
+	Journal(Path file, long sequence) throws IOException {
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		this.sequence = sequence;
+	}
+
+	/**
+	 * @return sequence number of the last record written
+	 */
+	long sequence() {
+		return sequence;
+	}
+
+	/**
+	 * Collects the following records in memory, so that a bulk update
+	 * is written with a few large writes instead of one write per record
+	 * until {@link #endBatch} is called
+	 */
+	void beginBatch() {
+		batch = ByteBuffer.allocate(BATCH_CAPACITY);
+	}
+
+	/**
+	 * Writes the records collected since {@link #beginBatch}
+	 */
+	void endBatch() throws IOException {
+		ByteBuffer records = batch;
+		batch = null;
+		records.flip();
+		drain(records);
+	}
+
+	/**
+	 * Discards all the records, used when a new snapshot is taken
+	 */
+	void truncate() throws IOException {
+		channel.truncate(0);
+	}
+
+	void enroll(int id, String first, String last) {
+		write(ENROLL, id, 0, 0, first, last);
+	}
+
+	void activate(int code, String title, String teacher) {
+		write(ACTIVATE, code, 0, 0, title, teacher);
+	}
+
+	void register(int studentId, int courseId) {
+		write(REGISTER, studentId, courseId, 0, null, null);
+	}
+
+	void exam(int studentId, int courseId, int grade) {
+		write(EXAM, studentId, courseId, grade, null, null);
+	}
+
+	/**
+	 * Appends one exam record per grade, with a single write
+	 */
+	void exams(int[] studentIds, int[] courseIds, int[] grades) {
+		int length = 8 + 1 + 12 + 2 * length(null);
+		ByteBuffer records = ByteBuffer.allocate((4 + length) * grades.length);
+		for (int i = 0; i < grades.length; i++) {
+			records.putInt(length).putLong(++sequence).put(EXAM).putInt(studentIds[i]).putInt(courseIds[i]).putInt(grades[i]);
+			records.putInt(-1).putInt(-1);
+		}
+		records.flip();
+		write(records);
+	}
+
+	void rector(String first, String last) {
+		write(RECTOR, 0, 0, 0, first, last);
+	}
+
+	void closeTerm(int term) {
+		write(TERM, term, 0, 0, null, null);
+	}
+
+	private void write(byte tag, int a, int b, int c, String x, String y) {
+		byte[] bx = x == null ? null : x.getBytes(StandardCharsets.UTF_8);
+		byte[] by = y == null ? null : y.getBytes(StandardCharsets.UTF_8);
+		int length = 8 + 1 + 12 + length(bx) + length(by);
+		if (record.capacity() < 4 + length) {
+			record = ByteBuffer.allocate(4 + length);
+		}
+		record.clear();
+		record.putInt(length).putLong(++sequence).put(tag).putInt(a).putInt(b).putInt(c);
+		put(bx);
+		put(by);
+		record.flip();
+		write(record);
+	}
+
+	private void write(ByteBuffer records) {
+		try {
+			if (batch != null) {
+				if (batch.remaining() < records.remaining()) {
+					batch.flip();
+					drain(batch);
+					batch.clear();
+				}
+				if (batch.remaining() >= records.remaining()) {
+					batch.put(records);
+					return;
+				}
+			}
+			drain(records);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void drain(ByteBuffer records) throws IOException {
+		while (records.hasRemaining()) {
+			channel.write(records);
+		}
+	}
+
+	private static int length(byte[] bytes) {
+		return 4 + (bytes == null ? 0 : bytes.length);
+	}
+
+	private void put(byte[] bytes) {
+		if (bytes == null) {
+			record.putInt(-1);
+		} else {
+			record.putInt(bytes.length).put(bytes);
+		}
+	}
+
+	/**
+	 * Reads the complete records of a journal that follow a given one
+	 * @param file the journal file
+	 * @param after sequence number of the last update already applied
+	 * @param visitor receiver of the records
+	 * @return the sequence number of the last record read, or {@code after} if there is none
+	 */
+	static long read(Path file, long after, Visitor visitor) throws IOException {
+		long last = after;
+		try (ChannelInput in = new ChannelInput(FileChannel.open(file, StandardOpenOption.READ), 1 << 16)) {
+			while (in.available(4)) {
+				int length = in.getInt();
+				if (length < MIN_LENGTH) {
+					throw new IOException("Corrupt journal record of " + length + " bytes after update " + last);
+				}
+				if (!in.available(length)) {
+					break; // truncated last record
+				}
+				ByteBuffer record = in.getBuffer(length);
+				long sequence = record.getLong();
+				if (sequence <= after) {
+					continue; // already contained in the snapshot
+				}
+				if (sequence != last + 1) {
+					throw new IOException("Journal continues with update " + sequence + " instead of " + (last + 1));
+				}
+				byte tag = record.get();
+				int a = record.getInt();
+				int b = record.getInt();
+				int c = record.getInt();
+				String x = getString(record, sequence);
+				String y = getString(record, sequence);
+				if (record.hasRemaining()) {
+					throw new IOException("Corrupt journal record " + sequence + ": " + record.remaining() + " bytes left");
+				}
+				switch (tag) {
+				case ENROLL: visitor.enroll(a, x, y); break;
+				case ACTIVATE: visitor.activate(a, x, y); break;
+				case REGISTER: visitor.register(a, b); break;
+				case EXAM: visitor.exam(a, b, c); break;
+				case RECTOR: visitor.rector(x, y); break;
+				case TERM: visitor.closeTerm(a); break;
+				default: throw new IOException("Unknown journal record " + tag);
+				}
+				last = sequence;
+			}
+		}
+		return last;
+	}
+
+	private static String getString(ByteBuffer record, long sequence) throws IOException {
+		int length = record.remaining() < 4 ? -2 : record.getInt();
+		if (length == -1) {
+			return null;
+		}
+		if (length < 0 || length > record.remaining()) {
+			throw new IOException("Corrupt journal record " + sequence + ": string does not fit the record");
+		}
+		byte[] bytes = new byte[length];
+		record.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.force(false);
+		channel.close();
+	}
+}
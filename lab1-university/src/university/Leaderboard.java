@@ -0,0 +1,103 @@
+package university;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * Ranking of students by score, kept up to date as scores change.
+ *
+ * Entries are ordered by decreasing score and, for equal scores,
+ * by increasing student id, so the first k entries can be read
+ * without scanning or sorting all the students.
+ */
+class Leaderboard {
+
+	private final int base;
+	private Entry[] current = new Entry[16];
+	private final NavigableSet<Entry> ranking = new TreeSet<>();
+
+	/**
+	 * Creates an empty leaderboard
+	 * @param base the smallest student id
+	 */
+	Leaderboard(int base) {
+		this.base = base;
+	}
+
+	/**
+	 * Sets the score of a student, replacing the previous one
+	 *
+	 * @param studentId id of the student
+	 * @param score new score
+	 */
+	void update(int studentId, double score) {
+		int slot = studentId - base;
+		if (slot >= current.length) {
+			current = Arrays.copyOf(current, Math.max(current.length * 2, slot + 1));
+		}
+		Entry old = current[slot];
+		if (old != null) {
+			if (Double.compare(old.score, score) == 0) return;
+			ranking.remove(old);
+		}
+		Entry entry = new Entry(studentId, score);
+		current[slot] = entry;
+		ranking.add(entry);
+	}
+
+	/**
+	 * @return number of ranked students
+	 */
+	int size() {
+		return ranking.size();
+	}
+
+	/**
+	 * @return the entries from the best to the worst score
+	 */
+	Iterator<Entry> iterator() {
+		return ranking.iterator();
+	}
+
+	/**
+	 * Checks the ranked score of each student against the expected one
+	 *
+	 * @param studentId id of the student
+	 * @param score expected score, {@code NaN} if the student should not be ranked
+	 * @throws IllegalStateException if the ranked score is different
+	 */
+	void verify(int studentId, double score) {
+		int slot = studentId - base;
+		Entry entry = slot < current.length ? current[slot] : null;
+		boolean ranked = !Double.isNaN(score);
+		if (ranked != (entry != null) || (ranked && Double.compare(entry.score, score) != 0)) {
+			throw new IllegalStateException("Ranking of " + studentId + " is " + entry + " instead of " + score);
+		}
+	}
+
+	/**
+	 * Score of a student in the ranking
+	 */
+	static final class Entry implements Comparable<Entry> {
+		final int studentId;
+		final double score;
+
+		Entry(int studentId, double score) {
+			this.studentId = studentId;
+			this.score = score;
+		}
+
+		@Override
+		public int compareTo(Entry other) {
+			int c = Double.compare(other.score, score);
+			return c != 0 ? c : Integer.compare(studentId, other.studentId);
+		}
+
+		@Override
+		public String toString() {
+			return studentId + ":" + score;
+		}
+	}
+}
@@ -0,0 +1,248 @@
+package university;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+/**
+ * Load generator for {@link UniversityServer}.
+ *
+ * Many clients, each on its own virtual thread, send batches of pipelined requests
+ * (mostly averages, plus registrations, exams and rankings) and wait for all
+ * the responses of a batch before sending the next one.
+ * Unless a port is given, a server is started on the loopback interface and
+ * populated with the requested number of students and courses.
+ *
+ * <pre>
+ * java -cp target/classes university.LoadGenerator
+ *     [--host HOST] [--port N] [--clients N] [--batches N] [--pipeline N]
+ *     [--students N] [--courses N]
+ * </pre>
+ */
+public class LoadGenerator {
+
+	private static final int POPULATE_BATCH = 256;
+
+	private final InetSocketAddress address;
+	private final int students;
+	private final int courses;
+
+	/**
+	 * @param address address of the server
+	 * @param students number of students enrolled in the server
+	 * @param courses number of courses activated in the server
+	 */
+	public LoadGenerator(InetSocketAddress address, int students, int courses) {
+		this.address = address;
+		this.students = students;
+		this.courses = courses;
+	}
+
+	/**
+	 * Enrols the students and activates the courses used by the load,
+	 * in a server whose university is empty
+	 *
+	 * @throws IOException if the server cannot be reached
+	 */
+	public void populate() throws IOException {
+		try (Connection connection = new Connection(address)) {
+			StringBuilder batch = new StringBuilder();
+			int count = 0;
+			for (int i = 0; i < courses + students; i++) {
+				if (i < courses) {
+					batch.append("activate Course ").append(i).append(";Teacher ").append(i).append('\n');
+				} else {
+					batch.append("enroll First").append(i).append(" Last").append(i).append('\n');
+				}
+				// the batches are small enough to fit in the socket buffers
+				if (++count == POPULATE_BATCH || i == courses + students - 1) {
+					connection.exchange(batch.toString(), count);
+					batch.setLength(0);
+					count = 0;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Runs the load and reports throughput and batch latencies
+	 *
+	 * @param clients number of concurrent connections
+	 * @param batches number of batches sent by each client
+	 * @param pipeline number of requests in each batch
+	 * @return a summary of the run
+	 * @throws IOException if a client fails
+	 * @throws IllegalArgumentException if any of the counts is not positive
+	 */
+	public String run(int clients, int batches, int pipeline) throws IOException {
+		if (clients <= 0 || batches <= 0 || pipeline <= 0) {
+			throw new IllegalArgumentException("Clients, batches and pipeline must be positive");
+		}
+		long[] latencies = new long[clients * batches];
+		AtomicLong errors = new AtomicLong();
+		long start = System.nanoTime();
+		try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			List<Future<?>> running = new ArrayList<>(clients);
+			for (int c = 0; c < clients; c++) {
+				int client = c;
+				running.add(executor.submit(() -> {
+					client(client, batches, pipeline, latencies, errors);
+					return null;
+				}));
+			}
+			for (Future<?> future : running) {
+				future.get();
+			}
+		} catch (Exception e) {
+			throw new IOException("Client failed", e instanceof ExecutionException ? e.getCause() : e);
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		Arrays.sort(latencies);
+		long requests = (long) clients * batches * pipeline;
+		return String.format("%d clients, %d requests in %.2f s: %.0f requests/s, %d errors%n"
+				+ "batch latency (us): p50 %d, p99 %d, max %d",
+				clients, requests, seconds, requests / seconds, errors.get(),
+				percentile(latencies, 50) / 1000, percentile(latencies, 99) / 1000, latencies[latencies.length - 1] / 1000);
+	}
+
+	private void client(int client, int batches, int pipeline, long[] latencies, AtomicLong errors) throws IOException {
+		SplittableRandom rnd = new SplittableRandom(client);
+		StringBuilder batch = new StringBuilder();
+		try (Connection connection = new Connection(address)) {
+			for (int b = 0; b < batches; b++) {
+				batch.setLength(0);
+				for (int i = 0; i < pipeline; i++) {
+					request(batch, rnd);
+				}
+				long start = System.nanoTime();
+				errors.addAndGet(connection.exchange(batch.toString(), pipeline));
+				latencies[client * batches + b] = System.nanoTime() - start;
+			}
+		}
+	}
+
+	private void request(StringBuilder batch, SplittableRandom rnd) {
+		int student = 10000 + rnd.nextInt(students);
+		int course = 10 + rnd.nextInt(courses);
+		int kind = rnd.nextInt(100);
+		if (kind < 40) {
+			batch.append("avg student ").append(student);
+		} else if (kind < 80) {
+			batch.append("avg course ").append(course);
+		} else if (kind < 90) {
+			batch.append("register ").append(student).append(' ').append(course);
+		} else if (kind < 98) {
+			batch.append("exam ").append(student).append(' ').append(course).append(' ').append(18 + rnd.nextInt(13));
+		} else {
+			batch.append("top 3");
+		}
+		batch.append('\n');
+	}
+
+	private static long percentile(long[] sorted, int percent) {
+		return sorted[Math.max(0, (int) Math.ceil(sorted.length * percent / 100.0) - 1)];
+	}
+
+	/**
+	 * Client side of a connection, sending pipelined requests
+	 */
+	static class Connection implements AutoCloseable {
+		private final Socket socket;
+		private final OutputStream out;
+		private final BufferedReader in;
+
+		Connection(InetSocketAddress address) throws IOException {
+			socket = new Socket(address.getAddress(), address.getPort());
+			socket.setTcpNoDelay(true);
+			out = socket.getOutputStream();
+			in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+		}
+
+		/**
+		 * Sends a batch of requests with a single write and reads all the responses
+		 *
+		 * @param requests the requests, one per line
+		 * @param count number of requests
+		 * @return number of error responses
+		 */
+		int exchange(String requests, int count) throws IOException {
+			out.write(requests.getBytes(StandardCharsets.UTF_8));
+			out.flush();
+			int errors = 0;
+			for (int i = 0; i < count; i++) {
+				String status = in.readLine();
+				if (status == null) {
+					throw new IOException("Connection closed by the server");
+				}
+				if (status.startsWith("OK ")) {
+					for (int lines = Integer.parseInt(status.substring(3)); lines > 0; lines--) {
+						in.readLine();
+					}
+				} else {
+					errors++;
+				}
+			}
+			return errors;
+		}
+
+		@Override
+		public void close() throws IOException {
+			socket.close();
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		String host = null;
+		int port = 0;
+		int clients = 1000;
+		int batches = 100;
+		int pipeline = 16;
+		int students = 10_000;
+		int courses = 100;
+
+		for (int i = 0; i < args.length; i++) {
+			String value = i + 1 < args.length ? args[i + 1] : null;
+			switch (args[i]) {
+			case "--host": host = value; i++; break;
+			case "--port": port = Integer.parseInt(value); i++; break;
+			case "--clients": clients = Integer.parseInt(value); i++; break;
+			case "--batches": batches = Integer.parseInt(value); i++; break;
+			case "--pipeline": pipeline = Integer.parseInt(value); i++; break;
+			case "--students": students = Integer.parseInt(value); i++; break;
+			case "--courses": courses = Integer.parseInt(value); i++; break;
+			default:
+				System.err.println("Unknown option " + args[i]);
+				System.exit(1);
+			}
+		}
+
+		if (port != 0) {
+			InetAddress server = host == null ? InetAddress.getLoopbackAddress() : InetAddress.getByName(host);
+			System.out.println(new LoadGenerator(new InetSocketAddress(server, port), students, courses)
+					.run(clients, batches, pipeline));
+			return;
+		}
+		University.logger.setLevel(Level.OFF);
+		try (UniversityServer server = new UniversityServer(new ConcurrentUniversity("Load test"), 0)) {
+			LoadGenerator load = new LoadGenerator(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort()),
+					students, courses);
+			load.populate();
+			System.out.println(load.run(clients, batches, pipeline));
+		}
+	}
+}
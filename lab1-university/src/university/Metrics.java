@@ -0,0 +1,219 @@
+package university;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters and latency histograms of the operations of a {@link University}.
+ *
+ * All the values are {@link LongAdder}s, so recording an operation takes
+ * no lock and threads recording at the same time update separate cells.
+ * Latencies are counted in log-linear buckets, as in HdrHistogram:
+ * each power of two is divided into {@value #SUB_BUCKETS} buckets,
+ * so a percentile is reported with a relative error below 1/{@value #SUB_BUCKETS}.
+ */
+class Metrics {
+
+	/**
+	 * Measured operations, with the name used in the reports
+	 */
+	enum Operation {
+		ENROLL("enroll"),
+		ACTIVATE("activate"),
+		REGISTER("register"),
+		EXAM("exam"),
+		EXAM_BATCH("examBatch"),
+		STUDENT_AVG("studentAvg"),
+		COURSE_AVG("courseAvg"),
+		TOP_STUDENTS("topStudents");
+
+		final String label;
+
+		Operation(String label) {
+			this.label = label;
+		}
+	}
+
+	private static final int SUB_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	// latencies above 2^MAX_EXPONENT ns (about 68 s) are counted in the last bucket
+	private static final int MAX_EXPONENT = 36;
+	private static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) * SUB_BUCKETS;
+
+	private final Stats[] stats = new Stats[Operation.values().length];
+	private final List<ObjectName> registered = new ArrayList<>();
+
+	Metrics() {
+		for (Operation operation : Operation.values()) {
+			stats[operation.ordinal()] = new Stats(operation);
+		}
+	}
+
+	/**
+	 * Records an execution of an operation
+	 *
+	 * @param operation the operation
+	 * @param start value of {@link System#nanoTime()} when the operation started
+	 */
+	void record(Operation operation, long start) {
+		stats[operation.ordinal()].record(System.nanoTime() - start);
+	}
+
+	static int bucket(long nanos) {
+		if (nanos < SUB_BUCKETS) {
+			return (int) Math.max(nanos, 0);
+		}
+		int shift = Math.min(63 - Long.numberOfLeadingZeros(nanos), MAX_EXPONENT) - SUB_BITS;
+		int sub = (int) Math.min(nanos >>> shift, 2 * SUB_BUCKETS - 1);
+		return (shift + 1) * SUB_BUCKETS + sub - SUB_BUCKETS;
+	}
+
+	/**
+	 * @return the largest latency counted in a bucket
+	 */
+	static long upperBound(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int shift = bucket / SUB_BUCKETS - 1;
+		long sub = SUB_BUCKETS + bucket % SUB_BUCKETS;
+		return ((sub + 1) << shift) - 1;
+	}
+
+	/**
+	 * Registers one MBean per operation with the platform MBean server.
+	 * If any of them cannot be registered, e.g. because another university
+	 * with the same name exports its metrics, none is left registered.
+	 *
+	 * @param university name of the university, used in the object names
+	 * @throws JMException if the MBeans cannot be registered
+	 */
+	void register(String university) throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			for (Stats operation : stats) {
+				ObjectName name = new ObjectName("university:type=Metrics,university=" + ObjectName.quote(university)
+						+ ",operation=" + operation.operation.label);
+				server.registerMBean(operation, name);
+				registered.add(name);
+			}
+		} catch (JMException e) {
+			unregister();
+			throw e;
+		}
+	}
+
+	/**
+	 * Removes the MBeans registered by {@link #register}
+	 */
+	void unregister() {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		for (ObjectName name : registered) {
+			try {
+				server.unregisterMBean(name);
+			} catch (JMException e) {
+				// already removed
+			}
+		}
+		registered.clear();
+	}
+
+	/**
+	 * Formats all the metrics as a table, one operation per row, with latencies in microseconds
+	 */
+	String dump() {
+		StringBuilder result = new StringBuilder(String.format("%-12s %10s %10s %10s %10s %10s %10s",
+				"operation", "count", "mean", "p50", "p90", "p99", "max"));
+		for (Stats operation : stats) {
+			result.append(String.format("%n%-12s %10d %10.2f %10.2f %10.2f %10.2f %10.2f",
+					operation.operation.label, operation.getCount(), operation.getMeanMicros(),
+					operation.getP50Micros(), operation.getP90Micros(), operation.getP99Micros(),
+					operation.getMaxMicros()));
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Metrics of one operation
+	 */
+	private static class Stats implements OperationMetricsMXBean {
+		private final Operation operation;
+		private final LongAdder count = new LongAdder();
+		private final LongAdder totalNanos = new LongAdder();
+		private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+		private final LongAdder[] buckets = new LongAdder[BUCKETS];
+
+		Stats(Operation operation) {
+			this.operation = operation;
+			for (int i = 0; i < BUCKETS; i++) {
+				buckets[i] = new LongAdder();
+			}
+		}
+
+		void record(long nanos) {
+			count.increment();
+			totalNanos.add(nanos);
+			maxNanos.accumulate(nanos);
+			buckets[bucket(nanos)].increment();
+		}
+
+		@Override
+		public long getCount() {
+			return count.sum();
+		}
+
+		@Override
+		public double getMeanMicros() {
+			long n = count.sum();
+			return n == 0 ? 0 : totalNanos.sum() / 1000.0 / n;
+		}
+
+		@Override
+		public double getP50Micros() {
+			return percentile(50);
+		}
+
+		@Override
+		public double getP90Micros() {
+			return percentile(90);
+		}
+
+		@Override
+		public double getP99Micros() {
+			return percentile(99);
+		}
+
+		@Override
+		public double getMaxMicros() {
+			return maxNanos.get() / 1000.0;
+		}
+
+		private double percentile(double percent) {
+			long[] counts = new long[BUCKETS];
+			long total = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				counts[i] = buckets[i].sum();
+				total += counts[i];
+			}
+			if (total == 0) {
+				return 0;
+			}
+			long rank = (long) Math.ceil(total * percent / 100);
+			long seen = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				seen += counts[i];
+				if (seen >= rank) {
+					return Math.min(upperBound(i), maxNanos.get()) / 1000.0;
+				}
+			}
+			return maxNanos.get() / 1000.0;
+		}
+	}
+}
@@ -0,0 +1,27 @@
+package university;
+
+/**
+ * Management interface exposing the metrics of one {@link University} operation
+ * through JMX, when enabled with {@link University#setMetrics}.
+ *
+ * Each operation is registered with an object name such as
+ * {@code university:type=Metrics,university="Politecnico di Torino",operation=exam}.
+ * Latencies are in microseconds.
+ */
+public interface OperationMetricsMXBean {
+
+	/**
+	 * @return number of executions of the operation
+	 */
+	long getCount();
+
+	double getMeanMicros();
+
+	double getP50Micros();
+
+	double getP90Micros();
+
+	double getP99Micros();
+
+	double getMaxMicros();
+}
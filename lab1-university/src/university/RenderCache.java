@@ -0,0 +1,197 @@
+package university;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Cache of rendered reports (lists of attendees and study plans).
+ *
+ * Entries are evicted in least-recently-used order when their estimated
+ * size exceeds the memory budget.
+ * The reports are spread over {@value #SLOTS} generation counters by key:
+ * a change to the underlying data of a report only advances the counter of its key,
+ * without locking, and the entries rendered at an older generation are discarded
+ * when they are read. A report rendered while its data was being changed is not
+ * stored (see {@link #put}), while the reports of other keys are not affected,
+ * except for the rare ones sharing the same counter.
+ * The other methods are synchronized, so the cache can be used by concurrent readers.
+ */
+class RenderCache {
+
+	static final int ATTENDEES = 1;
+	static final int STUDY_PLAN = 2;
+
+	private static final int SLOTS = 1024;
+
+	// estimated size of a String object and its map entry, excluding the characters
+	private static final int ENTRY_OVERHEAD = 120;
+
+	private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+	private final AtomicLongArray generations = new AtomicLongArray(SLOTS);
+	private long budget;
+	private long bytes;
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	/**
+	 * @param budget maximum estimated size of the cached reports, in bytes
+	 */
+	RenderCache(long budget) {
+		this.budget = budget;
+	}
+
+	/**
+	 * @param kind {@link #ATTENDEES} or {@link #STUDY_PLAN}
+	 * @param id code of the course or id of the student
+	 * @return the key of the report
+	 */
+	static long key(int kind, int id) {
+		return (long) kind << 32 | (id & 0xFFFFFFFFL);
+	}
+
+	private static int slot(long key) {
+		return (int) ((key * 0x9E3779B97F4A7C15L) >>> (64 - Integer.numberOfTrailingZeros(SLOTS)));
+	}
+
+	private static long size(String value) {
+		return ENTRY_OVERHEAD + 2L * value.length();
+	}
+
+	/**
+	 * A report with the generation of its key when it started being rendered
+	 */
+	private static class Entry {
+		final String value;
+		final long generation;
+
+		Entry(String value, long generation) {
+			this.value = value;
+			this.generation = generation;
+		}
+	}
+
+	/**
+	 * @param key key of the report
+	 * @return the current generation of the key, to be read before rendering the report
+	 */
+	long generation(long key) {
+		return generations.get(slot(key));
+	}
+
+	/**
+	 * @param key key of the report
+	 * @return the cached report or {@code null}
+	 */
+	synchronized String get(long key) {
+		String value = lookup(key);
+		if (value != null) {
+			hits++;
+		} else {
+			misses++;
+		}
+		return value;
+	}
+
+	/**
+	 * Looks for a report without counting a hit or a miss,
+	 * e.g. to reuse it for an output that is never cached
+	 * @param key key of the report
+	 * @return the cached report or {@code null}
+	 */
+	synchronized String peek(long key) {
+		return lookup(key);
+	}
+
+	private String lookup(long key) {
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			return null;
+		}
+		if (entry.generation != generations.get(slot(key))) {
+			remove(key);
+			return null;
+		}
+		return entry.value;
+	}
+
+	/**
+	 * Stores a report, unless its data changed after it started being rendered
+	 *
+	 * @param key key of the report
+	 * @param value the report
+	 * @param renderGeneration generation of the key read before rendering
+	 */
+	synchronized void put(long key, String value, long renderGeneration) {
+		long size = size(value);
+		if (renderGeneration != generations.get(slot(key)) || size > budget) {
+			return;
+		}
+		Entry old = entries.put(key, new Entry(value, renderGeneration));
+		if (old != null) {
+			bytes -= size(old.value);
+		}
+		bytes += size;
+		evict();
+	}
+
+	private void evict() {
+		Iterator<Map.Entry<Long, Entry>> eldest = entries.entrySet().iterator();
+		while (bytes > budget && eldest.hasNext()) {
+			bytes -= size(eldest.next().getValue().value);
+			eldest.remove();
+			evictions++;
+		}
+	}
+
+	private void remove(long key) {
+		Entry old = entries.remove(key);
+		if (old != null) {
+			bytes -= size(old.value);
+		}
+	}
+
+	/**
+	 * Marks a report as outdated because its data changed.
+	 * It takes no lock: the report is discarded when it is next read or evicted.
+	 * @param key key of the report
+	 */
+	void invalidate(long key) {
+		generations.incrementAndGet(slot(key));
+	}
+
+	/**
+	 * Removes all the reports
+	 */
+	synchronized void clear() {
+		for (int i = 0; i < SLOTS; i++) {
+			generations.incrementAndGet(i);
+		}
+		entries.clear();
+		bytes = 0;
+	}
+
+	/**
+	 * Changes the memory budget, evicting entries if needed
+	 * @param budget maximum estimated size of the cached reports, in bytes
+	 */
+	synchronized void setBudget(long budget) {
+		this.budget = budget;
+		evict();
+	}
+
+	synchronized long hits() {
+		return hits;
+	}
+
+	synchronized long misses() {
+		return misses;
+	}
+
+	synchronized String stats() {
+		return "entries=" + entries.size() + " bytes=" + bytes + " budget=" + budget
+				+ " hits=" + hits + " misses=" + misses + " evictions=" + evictions;
+	}
+}
@@ -0,0 +1,110 @@
+package university;
+
+import java.util.PrimitiveIterator;
+
+/**
+ * Storage of the students, courses and registrations of a {@link University}.
+ *
+ * Student and course ids are dense and assigned by the university,
+ * so implementations may rely on ids being added in increasing order.
+ */
+interface Storage {
+
+	/**
+	 * Makes room for the given total number of students and courses
+	 * @param students expected number of students
+	 * @param courses expected number of courses
+	 */
+	void ensureCapacity(int students, int courses);
+
+	/**
+	 * Stores a new student
+	 * @param id id of the student
+	 * @param first first name
+	 * @param last last name
+	 */
+	void addStudent(int id, String first, String last);
+
+	/**
+	 * @param id id of the student
+	 * @return whether the student exists
+	 */
+	boolean hasStudent(int id);
+
+	/**
+	 * @param id id of an existing student
+	 * @return first name of the student
+	 */
+	String first(int id);
+
+	/**
+	 * @param id id of an existing student
+	 * @return last name of the student
+	 */
+	String last(int id);
+
+	/**
+	 * Stores a new course
+	 * @param id code of the course
+	 * @param title title of the course
+	 * @param teacher name of the teacher
+	 */
+	void addCourse(int id, String title, String teacher);
+
+	/**
+	 * @param id code of the course
+	 * @return whether the course exists
+	 */
+	boolean hasCourse(int id);
+
+	/**
+	 * @param id code of an existing course
+	 * @return title of the course
+	 */
+	String title(int id);
+
+	/**
+	 * @param id code of an existing course
+	 * @return name of the teacher
+	 */
+	String teacher(int id);
+
+	/**
+	 * Registers an existing student to an existing course
+	 * @param studentId id of the student
+	 * @param courseId code of the course
+	 * @return {@code true} if the registration was not already present
+	 */
+	boolean register(int studentId, int courseId);
+
+	/**
+	 * @param courseId code of an existing course
+	 * @param studentId id of a student
+	 * @return whether the student is registered to the course
+	 */
+	boolean isRegistered(int courseId, int studentId);
+
+	/**
+	 * @param studentId id of an existing student
+	 * @return number of courses the student is registered to
+	 */
+	int courseCount(int studentId);
+
+	/**
+	 * @param courseId code of an existing course
+	 * @return number of students registered to the course
+	 */
+	int studentCount(int courseId);
+
+	/**
+	 * @param studentId id of an existing student
+	 * @return the codes of the courses the student is registered to, in increasing order
+	 */
+	PrimitiveIterator.OfInt courses(int studentId);
+
+	/**
+	 * @param courseId code of an existing course
+	 * @return the ids of the students registered to the course, in increasing order
+	 */
+	PrimitiveIterator.OfInt students(int courseId);
+}
@@ -0,0 +1,352 @@
+package university;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * History of the grades recorded by a {@link University}, divided into terms.
+ *
+ * Every exam is appended to a log, where each version of the grade of a
+ * student in a course links to the previous one; the entry of the latest
+ * version is linked to the grade in the row of the student.
+ * The averages of the terms in progress are those of the grade rows. For the
+ * closed terms, each student and course records the term of its last change
+ * and, when it changes in a later term, the running sum and number of its
+ * grades at the end of the previous change, so the averages at the end of a past
+ * term are found with a binary search instead of replaying the log.
+ * Students and courses whose grades all belong to one term need no timeline.
+ * The ranking used to award prizes is recorded when a term is closed.
+ */
+class TermHistory {
+
+	private static final int NONE = -1;
+
+	private final int studentBase;
+	private final int courseBase;
+	private int current;
+
+	// log of the exams, one entry per grade recorded
+	private int size;
+	private int[] terms = new int[64];
+	private int[] students = new int[64];
+	private int[] courses = new int[64];
+	private int[] grades = new int[64];
+	private int[] previous = new int[64];
+
+	private final Owners studentTerms;
+	private final Owners courseTerms;
+	private Leaderboard.Entry[][] rankings = new Leaderboard.Entry[4][];
+
+	/**
+	 * Creates an empty history, whose current term is 0
+	 * @param studentBase the smallest student id
+	 * @param courseBase the smallest course code
+	 */
+	TermHistory(int studentBase, int courseBase) {
+		this.studentBase = studentBase;
+		this.courseBase = courseBase;
+		this.studentTerms = new Owners(studentBase);
+		this.courseTerms = new Owners(courseBase);
+	}
+
+	/**
+	 * @return the term to which new grades belong
+	 */
+	int current() {
+		return current;
+	}
+
+	/**
+	 * Appends a grade to the log and records the past aggregates of the student and the course
+	 *
+	 * @param studentId id of the student
+	 * @param courseId code of the course
+	 * @param grade the grade
+	 * @param studentRow grades of the student, including the new one
+	 * @param courseRow grades of the course, including the new one
+	 */
+	void exam(int studentId, int courseId, int grade, GradeIndex.Row studentRow, GradeIndex.Row courseRow) {
+		record(studentId, courseId, grade, studentRow, studentRow, courseRow);
+	}
+
+	/**
+	 * @param links row where the latest log entry of each grade is kept
+	 * @param studentRow aggregates of the student, including the new grade
+	 * @param courseRow aggregates of the course, including the new grade
+	 */
+	private void record(int studentId, int courseId, int grade, GradeIndex.Row links, GradeIndex.Row studentRow, GradeIndex.Row courseRow) {
+		if (size == terms.length) {
+			int capacity = size * 2;
+			terms = Arrays.copyOf(terms, capacity);
+			students = Arrays.copyOf(students, capacity);
+			courses = Arrays.copyOf(courses, capacity);
+			grades = Arrays.copyOf(grades, capacity);
+			previous = Arrays.copyOf(previous, capacity);
+		}
+		int last = links.link(courseId);
+		terms[size] = current;
+		students[size] = studentId;
+		courses[size] = courseId;
+		grades[size] = grade;
+		previous[size] = last;
+		links.link(courseId, size);
+		size++;
+
+		// aggregates before the new grade
+		int replaced = last == NONE ? 0 : grades[last];
+		int added = last == NONE ? 1 : 0;
+		studentTerms.change(studentId, current, studentRow.sum() - grade + replaced, studentRow.size() - added);
+		courseTerms.change(courseId, current, courseRow.sum() - grade + replaced, courseRow.size() - added);
+	}
+
+	/**
+	 * Closes the current term
+	 *
+	 * @param ranking the best students at the end of the term
+	 * @return the closed term
+	 */
+	int close(Leaderboard.Entry[] ranking) {
+		if (current == rankings.length) {
+			rankings = Arrays.copyOf(rankings, current * 2);
+		}
+		rankings[current] = ranking;
+		return current++;
+	}
+
+	/**
+	 * @param term a closed term
+	 * @return the best students at the end of the term, or {@code null} if the term is not closed
+	 */
+	Leaderboard.Entry[] ranking(int term) {
+		return term >= 0 && term < current ? rankings[term] : null;
+	}
+
+	/**
+	 * @param studentId id of the student
+	 * @param term the term
+	 * @param row current grades of the student
+	 * @return the sum and number of the grades of the student at the end of the term,
+	 *         or {@code null} if the student had no grades
+	 */
+	long[] studentTotals(int studentId, int term, GradeIndex.Row row) {
+		return studentTerms.totals(studentId, term, row);
+	}
+
+	/**
+	 * @param courseId code of the course
+	 * @param term the term
+	 * @param row current grades of the course
+	 * @return the sum and number of the grades of the course at the end of the term,
+	 *         or {@code null} if the course had no grades
+	 */
+	long[] courseTotals(int courseId, int term, GradeIndex.Row row) {
+		return courseTerms.totals(courseId, term, row);
+	}
+
+	/**
+	 * @param studentRow current grades of the student
+	 * @param courseId code of the course
+	 * @return the log entry of the last grade of the student in the course, or a negative value
+	 */
+	int latest(GradeIndex.Row studentRow, int courseId) {
+		return studentRow == null ? NONE : studentRow.link(courseId);
+	}
+
+	/**
+	 * @param entry a log entry
+	 * @return the entry of the previous grade of the same student in the same course, or a negative value
+	 */
+	int previous(int entry) {
+		return previous[entry];
+	}
+
+	int term(int entry) {
+		return terms[entry];
+	}
+
+	int grade(int entry) {
+		return grades[entry];
+	}
+
+	/**
+	 * Checks that the log and the terms of the changes match the given indexes
+	 *
+	 * @throws IllegalStateException if an inconsistency is found
+	 */
+	void verify(GradeIndex studentGrades, GradeIndex courseGrades) {
+		long linked = 0;
+		for (int slot = 0; slot < studentTerms.changed.length; slot++) {
+			GradeIndex.Row row = studentGrades.row(studentBase + slot);
+			for (int i = 0; row != null && i < row.size(); i++) {
+				int entry = row.link(row.key(i));
+				if (entry < 0 || students[entry] != studentBase + slot || courses[entry] != row.key(i) || grades[entry] != row.grade(i)) {
+					throw new IllegalStateException("History of " + (studentBase + slot) + "/" + row.key(i) + " does not match its grade");
+				}
+				linked++;
+			}
+		}
+		if (linked != studentGrades.entries()) {
+			throw new IllegalStateException("History links " + linked + " of " + studentGrades.entries() + " grades");
+		}
+		studentTerms.verify(studentGrades, "student");
+		courseTerms.verify(courseGrades, "course");
+	}
+
+	/**
+	 * Writes the log and the rankings of the closed terms to a snapshot
+	 */
+	void write(ChannelOutput out) throws IOException {
+		out.putInt(current);
+		out.putInt(size);
+		for (int i = 0; i < size; i++) {
+			out.putInt(terms[i]);
+			out.putInt(students[i]);
+			out.putInt(courses[i]);
+			out.putInt(grades[i]);
+		}
+		for (int term = 0; term < current; term++) {
+			out.putInt(rankings[term].length);
+			for (Leaderboard.Entry entry : rankings[term]) {
+				out.putInt(entry.studentId);
+				out.putLong(Double.doubleToLongBits(entry.score));
+			}
+		}
+	}
+
+	/**
+	 * Restores the history written by {@link #write}, rebuilding the timelines from the log
+	 * 
+	 * @param links the grades of the students, where the latest log entries are linked
+	 */
+	void read(ChannelInput in, GradeIndex links) throws IOException {
+		int closed = in.getInt();
+		GradeIndex studentGrades = new GradeIndex(studentBase);
+		GradeIndex courseGrades = new GradeIndex(courseBase);
+		for (int n = in.getInt(); n > 0; n--) {
+			current = in.getInt();
+			int studentId = in.getInt();
+			int courseId = in.getInt();
+			int grade = in.getInt();
+			GradeIndex.Row row = links.row(studentId);
+			if (row == null || row.gradeOf(courseId) < 0) {
+				throw new IOException("History holds a grade of student " + studentId + " in course " + courseId + " not in the snapshot");
+			}
+			studentGrades.put(studentId, courseId, grade);
+			courseGrades.put(courseId, studentId, grade);
+			record(studentId, courseId, grade, row, studentGrades.row(studentId), courseGrades.row(courseId));
+		}
+		current = 0;
+		while (current < closed) {
+			Leaderboard.Entry[] ranking = new Leaderboard.Entry[in.getInt()];
+			for (int i = 0; i < ranking.length; i++) {
+				ranking[i] = new Leaderboard.Entry(in.getInt(), Double.longBitsToDouble(in.getLong()));
+			}
+			close(ranking);
+		}
+	}
+
+	/**
+	 * Terms in which the grades of the students or of the courses changed
+	 */
+	private static class Owners {
+		private final int base;
+		private int[] changed = new int[16]; // term of the last change of each owner plus one, 0 if none
+		private Timeline[] timelines = new Timeline[0]; // aggregates at the end of the earlier changes
+
+		Owners(int base) {
+			this.base = base;
+		}
+
+		/**
+		 * Records a change of the grades of an owner
+		 * 
+		 * @param owner id of the owner
+		 * @param term the term in progress
+		 * @param sum sum of the grades of the owner before the change
+		 * @param count number of the grades of the owner before the change
+		 */
+		void change(int owner, int term, long sum, int count) {
+			int slot = owner - base;
+			if (slot >= changed.length) {
+				changed = Arrays.copyOf(changed, Math.max(changed.length * 2, slot + 1));
+			}
+			int last = changed[slot] - 1;
+			if (last == term) {
+				return;
+			}
+			if (last >= 0) {
+				// the aggregates before the change are those at the end of the term of the last one
+				if (slot >= timelines.length) {
+					timelines = Arrays.copyOf(timelines, Math.max(timelines.length * 2, slot + 1));
+				}
+				if (timelines[slot] == null) {
+					timelines[slot] = new Timeline();
+				}
+				timelines[slot].record(last, sum, count);
+			}
+			changed[slot] = term + 1;
+		}
+
+		/**
+		 * @param row current grades of the owner
+		 * @return the aggregates at the end of the term or {@code null} if there were no grades yet
+		 */
+		long[] totals(int owner, int term, GradeIndex.Row row) {
+			int slot = owner - base;
+			if (slot < 0 || slot >= changed.length || changed[slot] == 0) {
+				return null;
+			}
+			if (term >= changed[slot] - 1) {
+				return new long[] { row.sum(), row.size() };
+			}
+			return slot < timelines.length && timelines[slot] != null ? timelines[slot].at(term) : null;
+		}
+
+		void verify(GradeIndex index, String owner) {
+			for (int slot = 0; slot < changed.length; slot++) {
+				GradeIndex.Row row = index.row(base + slot);
+				Timeline timeline = slot < timelines.length ? timelines[slot] : null;
+				if ((changed[slot] == 0) != (row == null)
+						|| timeline != null && timeline.terms[timeline.size - 1] >= changed[slot] - 1) {
+					throw new IllegalStateException("History of " + owner + " " + (base + slot) + " does not match its grades");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sum and number of the grades of a student or course at the end of the terms in which they changed
+	 */
+	private static class Timeline {
+		private int size;
+		private int[] terms = new int[2];
+		private long[] sums = new long[2];
+		private int[] counts = new int[2];
+
+		/**
+		 * Records the aggregates at the end of a term, later than those already recorded
+		 */
+		void record(int term, long sum, int count) {
+			if (size == terms.length) {
+				terms = Arrays.copyOf(terms, size * 2);
+				sums = Arrays.copyOf(sums, size * 2);
+				counts = Arrays.copyOf(counts, size * 2);
+			}
+			terms[size] = term;
+			sums[size] = sum;
+			counts[size] = count;
+			size++;
+		}
+
+		/**
+		 * @return the aggregates at the end of the term or {@code null} if there were no grades yet
+		 */
+		long[] at(int term) {
+			int pos = Arrays.binarySearch(terms, 0, size, term);
+			if (pos < 0) {
+				pos = -pos - 2;
+			}
+			return pos < 0 ? null : new long[] { sums[pos], counts[pos] };
+		}
+	}
+}
@@ -1,7 +1,24 @@
 package university;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.*;
 
+import javax.management.JMException;
+
 /**
  * This class represents a university education system.
  * 
@@ -16,19 +33,35 @@ public class University {
 	private String rectorLast;
 	
 	// Student management
-	private int nextStudentId = 10000;
-	private final Map<Integer, Student> students = new HashMap<>();
+	private static final int FIRST_STUDENT_ID = 10000;
+	private int nextStudentId = FIRST_STUDENT_ID;
 	
 	// Course management
-	private int nextCourseId = 10;
-	private final Map<Integer, Course> courses = new HashMap<>();
+	private static final int FIRST_COURSE_ID = 10;
+	private int nextCourseId = FIRST_COURSE_ID;
 	
-	// Registration management
-	private final Map<Integer, Set<Integer>> studentCourses = new HashMap<>(); // studentId -> set of courseIds
-	private final Map<Integer, Set<Integer>> courseStudents = new HashMap<>(); // courseId -> set of studentIds
+	// Students, courses and registrations
+	private final Storage storage;
+	private final CourseIndex courseIndex = new CourseIndex(FIRST_COURSE_ID);
 	
 	// Exam management
-	private final Map<String, Integer> examGrades = new HashMap<>(); // "studentId-courseId" -> grade
+	private final GradeIndex studentGrades = new GradeIndex(FIRST_STUDENT_ID); // studentId -> courseId -> grade
+	private final GradeIndex courseGrades = new GradeIndex(FIRST_COURSE_ID); // courseId -> studentId -> grade
+	private final TermHistory history = new TermHistory(FIRST_STUDENT_ID, FIRST_COURSE_ID);
+	private static final int RANKING_CHECKPOINT = 3;
+	
+	// Rendered reports
+	private static final long DEFAULT_RENDER_CACHE_BUDGET = 8L << 20;
+	private final RenderCache renderCache = new RenderCache(DEFAULT_RENDER_CACHE_BUDGET);
+	
+	// Award management
+	private final Leaderboard leaderboard = new Leaderboard(FIRST_STUDENT_ID);
+	
+	// Persistence
+	private static final int SNAPSHOT_MAGIC = 0x554E4956; // "UNIV"
+	private static final int SNAPSHOT_VERSION = 1;
+	private Journal journal;
+	private long journalSequence; // of the last update recorded in a journal, when none is open
 
 // R1
 	/**
@@ -36,7 +69,29 @@ public class University {
 	 * @param name name of the university
 	 */
 	public University(String name){
+		this(name, StorageMode.HASHED);
+	}
+	
+	/**
+	 * Constructor with an explicit storage layout
+	 * @param name name of the university
+	 * @param mode how students, courses and registrations are stored
+	 */
+	public University(String name, StorageMode mode){
 		this.name = name;
+		this.storage = mode == StorageMode.COMPACT
+				? new CompactStorage(FIRST_STUDENT_ID, FIRST_COURSE_ID)
+				: new HashedStorage();
+	}
+	
+	/**
+	 * Layout used to store students, courses and registrations
+	 */
+	public enum StorageMode {
+		/** one object per student and course, registrations in hash sets */
+		HASHED,
+		/** array columns indexed by id, registrations in sorted int arrays */
+		COMPACT
 	}
 	
 	/**
@@ -57,6 +112,9 @@ public class University {
 	public void setRector(String first, String last){
 		this.rectorFirst = first;
 		this.rectorLast = last;
+		if (journal != null) {
+			journal.rector(first, last);
+		}
 	}
 	
 	/**
@@ -83,12 +141,15 @@ public class University {
 	 * @return unique ID of the newly enrolled student
 	 */
 	public int enroll(String first, String last){
+		long start = startTimer();
 		int studentId = nextStudentId++;
-		Student student = new Student(studentId, first, last);
-		students.put(studentId, student);
-		studentCourses.put(studentId, new HashSet<>());
+		addStudent(studentId, first, last);
+		if (journal != null) {
+			journal.enroll(studentId, first, last);
+		}
 		
-		logger.info(String.format("New student enrolled: %d, %s %s", studentId, first, last));
+		log(EventLog.Kind.ENROLL, studentId, 0, 0, first, last);
+		stopTimer(Metrics.Operation.ENROLL, start);
 		return studentId;
 	}
 	
@@ -101,11 +162,19 @@ public class University {
 	 * @return information about the student
 	 */
 	public String student(int id){
-		Student student = students.get(id);
-		if (student == null) {
+		if (!storage.hasStudent(id)) {
 			return null;
 		}
-		return student.getId() + " " + student.getFirst() + " " + student.getLast();
+		return formatStudent(id);
+	}
+	
+	private String formatStudent(int id) {
+		return id + " " + storage.first(id) + " " + storage.last(id);
+	}
+	
+	private void addStudent(int id, String first, String last) {
+		storage.addStudent(id, first, last);
+		studentGrades.reserve(id);
 	}
 	
 // R3
@@ -119,12 +188,15 @@ public class University {
 	 * @return the unique code assigned to the course
 	 */
 	public int activate(String title, String teacher){
+		long start = startTimer();
 		int courseId = nextCourseId++;
-		Course course = new Course(courseId, title, teacher);
-		courses.put(courseId, course);
-		courseStudents.put(courseId, new HashSet<>());
+		addCourse(courseId, title, teacher);
+		if (journal != null) {
+			journal.activate(courseId, title, teacher);
+		}
 		
-		logger.info(String.format("New course activated: %d, %s %s", courseId, title, teacher));
+		log(EventLog.Kind.ACTIVATE, courseId, 0, 0, title, teacher);
+		stopTimer(Metrics.Operation.ACTIVATE, start);
 		return courseId;
 	}
 	
@@ -140,11 +212,42 @@ public class University {
 	 * @return information about the course
 	 */
 	public String course(int code){
-		Course course = courses.get(code);
-		if (course == null) {
+		if (!storage.hasCourse(code)) {
 			return null;
 		}
-		return course.getId() + "," + course.getTitle() + "," + course.getTeacher();
+		return formatCourse(code);
+	}
+	
+	private String formatCourse(int code) {
+		return code + "," + storage.title(code) + "," + storage.teacher(code);
+	}
+	
+	private void addCourse(int code, String title, String teacher) {
+		storage.addCourse(code, title, teacher);
+		courseGrades.reserve(code);
+		courseIndex.add(code, title, teacher);
+	}
+	
+	/**
+	 * Retrieves the courses taught by a teacher.
+	 * 
+	 * @param teacher name of the teacher, as given to {@link #activate}
+	 * 
+	 * @return the codes of the courses, in increasing order
+	 */
+	public int[] coursesByTeacher(String teacher){
+		return courseIndex.byTeacher(teacher);
+	}
+	
+	/**
+	 * Searches the courses whose title contains a text, ignoring case.
+	 * 
+	 * @param text the text to search, e.g. {@code "programming"}
+	 * 
+	 * @return the codes of the courses, in increasing order
+	 */
+	public int[] coursesByTitle(String text){
+		return courseIndex.byTitle(text);
 	}
 	
 // R4
@@ -154,37 +257,115 @@ public class University {
 	 * @param courseCode id of the course
 	 */
 	public void register(int studentID, int courseCode){
-		if (students.containsKey(studentID) && courses.containsKey(courseCode)) {
-			studentCourses.get(studentID).add(courseCode);
-			courseStudents.get(courseCode).add(studentID);
+		long start = startTimer();
+		if (storage.hasStudent(studentID) && storage.hasCourse(courseCode)) {
+			boolean added = storage.register(studentID, courseCode);
+			if (added) {
+				renderCache.invalidate(RenderCache.key(RenderCache.ATTENDEES, courseCode));
+				renderCache.invalidate(RenderCache.key(RenderCache.STUDY_PLAN, studentID));
+			}
+			long stamp = lockShared();
+			try {
+				if (added) {
+					updateScore(studentID);
+				}
+				if (journal != null) {
+					journal.register(studentID, courseCode);
+				}
+			} finally {
+				unlockShared(stamp);
+			}
 			
-			logger.info(String.format("Student %d signed up for course %d", studentID, courseCode));
+			log(EventLog.Kind.REGISTER, studentID, courseCode, 0, null, null);
 		}
+		stopTimer(Metrics.Operation.REGISTER, start);
 	}
 	
 	/**
 	 * Retrieve a list of attendees.
 	 * 
 	 * The students appear one per row (rows end with `'\n'`) 
-	 * and each row is formatted as describe in in method {@link #student}
+	 * and each row is formatted as describe in in method {@link #student}.
+	 * Students are listed in order of id.
 	 * 
 	 * @param courseCode unique id of the course
 	 * @return list of attendees separated by "\n"
 	 */
 	public String listAttendees(int courseCode){
-		Set<Integer> attendees = courseStudents.get(courseCode);
-		if (attendees == null || attendees.isEmpty()) {
+		if (!storage.hasCourse(courseCode)) {
 			return "";
 		}
+		long key = RenderCache.key(RenderCache.ATTENDEES, courseCode);
+		long generation = renderCache.generation(key);
+		String cached = renderCache.get(key);
+		if (cached != null) {
+			return cached;
+		}
 		
-		StringBuilder result = new StringBuilder();
-		for (int studentId : attendees) {
-			if (result.length() > 0) {
-				result.append("\n");
+		String rendered = render(out -> writeAttendees(courseCode, out));
+		renderCache.put(key, rendered, generation);
+		return rendered;
+	}
+
+	/**
+	 * Writes the list of attendees to a destination, row by row, without building it in memory.
+	 * The text written is the same returned by {@link #listAttendees(int)}.
+	 * 
+	 * @param courseCode unique id of the course
+	 * @param out destination of the list
+	 * @throws IOException if the destination cannot be written
+	 */
+	public void listAttendees(int courseCode, Appendable out) throws IOException {
+		streamAttendees(courseCode, out);
+	}
+
+	/**
+	 * Writes the list of attendees to a channel, encoded as UTF-8, 
+	 * with the same content as {@link #listAttendees(int, Appendable)}.
+	 * The text is encoded in buffers of fixed size, reused across calls.
+	 * 
+	 * @param courseCode unique id of the course
+	 * @param out destination of the list
+	 * @throws IOException if the channel cannot be written
+	 * @throws IllegalArgumentException if the channel is in non-blocking mode
+	 */
+	public void listAttendees(int courseCode, WritableByteChannel out) throws IOException {
+		stream(out, appender -> streamAttendees(courseCode, appender));
+	}
+
+	private void streamAttendees(int courseCode, Appendable out) throws IOException {
+		if (!storage.hasCourse(courseCode)) {
+			return;
+		}
+		// a cached list is reused, but large lists streamed here are not cached
+		String cached = renderCache.peek(RenderCache.key(RenderCache.ATTENDEES, courseCode));
+		if (cached != null) {
+			out.append(cached);
+			return;
+		}
+		writeAttendees(courseCode, out);
+	}
+
+	private void writeAttendees(int courseCode, Appendable out) throws IOException {
+		boolean first = true;
+		for (PrimitiveIterator.OfInt attendees = attendees(courseCode); attendees.hasNext(); ) {
+			if (!first) {
+				out.append('\n');
 			}
-			result.append(student(studentId));
+			first = false;
+			int id = attendees.nextInt();
+			out.append(Integer.toString(id)).append(' ').append(storage.first(id)).append(' ').append(storage.last(id));
 		}
-		return result.toString();
+	}
+
+	/**
+	 * Iterates over the students registered to a course
+	 * 
+	 * @param courseCode code of an existing course
+	 * @return the ids of the students, in increasing order
+	 */
+	PrimitiveIterator.OfInt attendees(int courseCode) {
+		return storage.students(courseCode);
 	}
 
 	/**
@@ -193,42 +374,276 @@ public class University {
 	 * The study plan is reported as a string having
 	 * one course per line (i.e. separated by '\n').
 	 * The courses are formatted as describe in method {@link #course}
+	 * and listed in order of code.
 	 * 
 	 * @param studentID id of the student
 	 * 
 	 * @return the list of courses the student is registered for
 	 */
 	public String studyPlan(int studentID){
-		Set<Integer> studentCourseIds = studentCourses.get(studentID);
-		if (studentCourseIds == null || studentCourseIds.isEmpty()) {
+		if (!storage.hasStudent(studentID)) {
 			return "";
 		}
+		long key = RenderCache.key(RenderCache.STUDY_PLAN, studentID);
+		long generation = renderCache.generation(key);
+		String cached = renderCache.get(key);
+		if (cached != null) {
+			return cached;
+		}
 		
-		StringBuilder result = new StringBuilder();
-		for (int courseId : studentCourseIds) {
-			if (result.length() > 0) {
-				result.append("\n");
+		String rendered = render(out -> writeStudyPlan(studentID, out));
+		renderCache.put(key, rendered, generation);
+		return rendered;
+	}
+
+	/**
+	 * Writes the study plan of a student to a destination, row by row, without building it in memory.
+	 * The text written is the same returned by {@link #studyPlan(int)}.
+	 * 
+	 * @param studentID id of the student
+	 * @param out destination of the study plan
+	 * @throws IOException if the destination cannot be written
+	 */
+	public void studyPlan(int studentID, Appendable out) throws IOException {
+		streamStudyPlan(studentID, out);
+	}
+
+	/**
+	 * Writes the study plan of a student to a channel, encoded as UTF-8, 
+	 * with the same content as {@link #studyPlan(int, Appendable)}.
+	 * 
+	 * @param studentID id of the student
+	 * @param out destination of the study plan
+	 * @throws IOException if the channel cannot be written
+	 * @throws IllegalArgumentException if the channel is in non-blocking mode
+	 */
+	public void studyPlan(int studentID, WritableByteChannel out) throws IOException {
+		stream(out, appender -> streamStudyPlan(studentID, appender));
+	}
+
+	private void streamStudyPlan(int studentID, Appendable out) throws IOException {
+		if (!storage.hasStudent(studentID)) {
+			return;
+		}
+		String cached = renderCache.peek(RenderCache.key(RenderCache.STUDY_PLAN, studentID));
+		if (cached != null) {
+			out.append(cached);
+			return;
+		}
+		writeStudyPlan(studentID, out);
+	}
+
+	private void writeStudyPlan(int studentID, Appendable out) throws IOException {
+		boolean first = true;
+		for (PrimitiveIterator.OfInt studentCourseIds = studyPlanCourses(studentID); studentCourseIds.hasNext(); ) {
+			if (!first) {
+				out.append('\n');
 			}
-			result.append(course(courseId));
+			first = false;
+			int code = studentCourseIds.nextInt();
+			out.append(Integer.toString(code)).append(',').append(storage.title(code)).append(',').append(storage.teacher(code));
+		}
+	}
+
+	/**
+	 * Iterates over the courses a student is registered to
+	 * 
+	 * @param studentID id of an existing student
+	 * @return the codes of the courses, in increasing order
+	 */
+	PrimitiveIterator.OfInt studyPlanCourses(int studentID) {
+		return storage.courses(studentID);
+	}
+
+	/**
+	 * A report written to a destination
+	 */
+	@FunctionalInterface
+	private interface Report {
+		void write(Appendable out) throws IOException;
+	}
+
+	private static String render(Report report) {
+		StringBuilder result = new StringBuilder();
+		try {
+			report.write(result);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e); // not thrown by StringBuilder
 		}
 		return result.toString();
 	}
 
+	// buffers for writing reports to channels, kept for the next call
+	private final AtomicReference<ChannelAppender> spareAppender = new AtomicReference<>();
+
+	private void stream(WritableByteChannel channel, Report report) throws IOException {
+		ChannelAppender appender = spareAppender.getAndSet(null);
+		if (appender == null) {
+			appender = new ChannelAppender();
+		}
+		// a failure while flushing does not hide the failure of the report
+		try (ChannelAppender out = appender.open(channel)) {
+			report.write(out);
+		} finally {
+			spareAppender.set(appender);
+		}
+	}
+
+	/**
+	 * Sets the memory budget of the cache of rendered lists of attendees and study plans.
+	 * 
+	 * Rendered lists are reused until a registration changes them; when their
+	 * estimated size exceeds the budget, the least recently used ones are evicted.
+	 * A budget of 0 disables the cache. The default budget is 8 MiB.
+	 * 
+	 * @param bytes maximum estimated size of the cached lists, in bytes
+	 */
+	public void setRenderCacheBudget(long bytes) {
+		renderCache.setBudget(bytes);
+	}
+
+	/**
+	 * @return number of lists of attendees and study plans served from the cache
+	 */
+	public long getRenderCacheHits() {
+		return renderCache.hits();
+	}
+
+	/**
+	 * @return number of lists of attendees and study plans that had to be rendered
+	 */
+	public long getRenderCacheMisses() {
+		return renderCache.misses();
+	}
+
+	/**
+	 * Describes the state of the cache of rendered lists, e.g.
+	 * {@code "entries=10 bytes=4200 budget=8388608 hits=90 misses=10 evictions=0"}
+	 * 
+	 * @return cache statistics
+	 */
+	public String renderCacheStats() {
+		return renderCache.stats();
+	}
+
 // R5
 	/**
 	 * records the grade (integer 0-30) for an exam can 
 	 * 
+	 * Like an exam of an unknown student or course, a grade
+	 * not between 0 and 30 is not recorded; a warning is logged.
+	 * 
 	 * @param studentId the ID of the student
 	 * @param courseID	course code 
 	 * @param grade		grade ( 0-30)
 	 */
 	public void exam(int studentId, int courseID, int grade) {
-		if (students.containsKey(studentId) && courses.containsKey(courseID)) {
-			String examKey = studentId + "-" + courseID;
-			examGrades.put(examKey, grade);
+		long start = startTimer();
+		if (storage.hasStudent(studentId) && storage.hasCourse(courseID) && checkGrade(studentId, courseID, grade)) {
+			studentGrades.put(studentId, courseID, grade);
+			courseGrades.put(courseID, studentId, grade);
+			long stamp = lockShared();
+			try {
+				history.exam(studentId, courseID, grade, studentGrades.row(studentId), courseGrades.row(courseID));
+				updateScore(studentId);
+				if (journal != null) {
+					journal.exam(studentId, courseID, grade);
+				}
+			} finally {
+				unlockShared(stamp);
+			}
 			
-			logger.info(String.format("Student %d took an exam in course %d with grade %d", studentId, courseID, grade));
+			log(EventLog.Kind.EXAM, studentId, courseID, grade, null, null);
+		}
+		stopTimer(Metrics.Operation.EXAM, start);
+	}
+
+	/**
+	 * Records the grades of many exams at once, e.g. at the end of an exam session.
+	 * 
+	 * The effect is the same as calling {@link #exam} for each triple
+	 * {@code studentIds[i], courseIds[i], grades[i]} in order, but the ranking
+	 * is updated once per student instead of once per grade and a single
+	 * summary message is logged.
+	 * The ids are all checked before any grade is recorded, so a batch
+	 * with an unknown student or course leaves the university unchanged.
+	 * 
+	 * @param studentIds the IDs of the students
+	 * @param courseIds the course codes
+	 * @param grades the grades
+	 * @throws IllegalArgumentException if the arrays have different lengths
+	 *         or contain an unknown student or course or a grade not between 0 and 30
+	 */
+	public void examBatch(int[] studentIds, int[] courseIds, int[] grades) {
+		long start = startTimer();
+		int count = studentIds.length;
+		if (courseIds.length != count || grades.length != count) {
+			throw new IllegalArgumentException("Batch arrays have different lengths");
+		}
+		for (int i = 0; i < count; i++) {
+			if (!storage.hasStudent(studentIds[i]) || !storage.hasCourse(courseIds[i])) {
+				throw new IllegalArgumentException("Unknown student " + studentIds[i] + " or course " + courseIds[i] + " at position " + i);
+			}
+			if (!validGrade(grades[i])) {
+				throw new IllegalArgumentException("Grade " + grades[i] + " out of range at position " + i);
+			}
+		}
+		
+		BitSet students = new BitSet();
+		BitSet courses = new BitSet();
+		for (int i = 0; i < count; i++) {
+			recordGrade(studentIds[i], courseIds[i], grades[i]);
+			students.set(studentIds[i] - FIRST_STUDENT_ID);
+			courses.set(courseIds[i] - FIRST_COURSE_ID);
 		}
+		for (int i = students.nextSetBit(0); i >= 0; i = students.nextSetBit(i + 1)) {
+			updateScore(FIRST_STUDENT_ID + i);
+		}
+		if (journal != null) {
+			journal.exams(studentIds, courseIds, grades);
+		}
+		
+		log(EventLog.Kind.EXAM_BATCH, count, students.cardinality(), courses.cardinality(), null, null);
+		stopTimer(Metrics.Operation.EXAM_BATCH, start);
+	}
+
+	private static boolean validGrade(int grade) {
+		return grade >= GradeIndex.MIN_GRADE && grade <= GradeIndex.MAX_GRADE;
+	}
+
+	private static boolean checkGrade(int studentId, int courseId, int grade) {
+		if (validGrade(grade)) {
+			return true;
+		}
+		logger.warning("Grade " + grade + " of student " + studentId + " in course " + courseId
+				+ " out of range " + GradeIndex.MIN_GRADE + "-" + GradeIndex.MAX_GRADE + ", not recorded");
+		return false;
+	}
+
+	private void recordGrade(int studentId, int courseId, int grade) {
+		studentGrades.put(studentId, courseId, grade);
+		courseGrades.put(courseId, studentId, grade);
+		history.exam(studentId, courseId, grade, studentGrades.row(studentId), courseGrades.row(courseId));
+	}
+
+	/**
+	 * Starts an update of the state shared by all the students and courses:
+	 * the ranking, the term history and the journal.
+	 * {@link #register} and {@link #exam} change the state of a single student
+	 * and course before calling it; a plain university takes no lock,
+	 * {@link ConcurrentUniversity} serializes these short sections.
+	 * 
+	 * @return a value to be passed to {@link #unlockShared}
+	 */
+	long lockShared() {
+		return 0;
+	}
+
+	/**
+	 * Ends an update started by {@link #lockShared}
+	 * @param stamp the value returned by {@link #lockShared}
+	 */
+	void unlockShared(long stamp) {
 	}
 
 	/**
@@ -244,27 +659,49 @@ public class University {
 	 * @return the average grade formatted as a string.
 	 */
 	public String studentAvg(int studentId) {
-		List<Integer> grades = new ArrayList<>();
-		
-		// Find all grades for this student
-		for (Map.Entry<String, Integer> entry : examGrades.entrySet()) {
-			if (entry.getKey().startsWith(studentId + "-")) {
-				grades.add(entry.getValue());
-			}
-		}
-		
-		if (grades.isEmpty()) {
+		long start = startTimer();
+		String average = formatStudentAvg(studentId, studentTotals(studentId));
+		stopTimer(Metrics.Operation.STUDENT_AVG, start);
+		return average;
+	}
+
+	private static String formatStudentAvg(int studentId, long[] totals) {
+		if (totals == null) {
 			return "Student " + studentId + " hasn't taken any exams";
 		}
 		
-		double sum = 0;
-		for (int grade : grades) {
-			sum += grade;
-		}
-		double average = sum / grades.size();
+		double average = (double) totals[0] / totals[1];
 		
 		return "Student " + studentId + " : " + String.format("%.1f", average);
 	}
+
+	/**
+	 * Copies the sum and the number of the grades of a student.
+	 * 
+	 * This and the other methods reading the state of a single student or course
+	 * only copy it, while the queries compute and format their results from the copies.
+	 * {@link ConcurrentUniversity} overrides them to take consistent copies.
+	 * 
+	 * @param studentId the ID of the student
+	 * @return sum and number of the grades, or {@code null} if the student has none
+	 */
+	long[] studentTotals(int studentId) {
+		return totals(studentGrades.row(studentId));
+	}
+
+	/**
+	 * Copies the sum and the number of the grades of a course
+	 * 
+	 * @param courseId course code
+	 * @return sum and number of the grades, or {@code null} if the course has none
+	 */
+	long[] courseTotals(int courseId) {
+		return totals(courseGrades.row(courseId));
+	}
+
+	private static long[] totals(GradeIndex.Row grades) {
+		return grades == null ? null : new long[] { grades.sum(), grades.size() };
+	}
 	
 	/**
 	 * Computes the average grades of all students that took the exam for a given course.
@@ -278,31 +715,91 @@ public class University {
 	 * @return the course average formatted as a string
 	 */
 	public String courseAvg(int courseId) {
-		Course course = courses.get(courseId);
-		if (course == null) {
-			return "No student has taken the exam in Unknown Course";
+		long start = startTimer();
+		String average = storage.hasCourse(courseId)
+				? formatCourseAvg(storage.title(courseId), courseTotals(courseId))
+				: "No student has taken the exam in Unknown Course";
+		stopTimer(Metrics.Operation.COURSE_AVG, start);
+		return average;
+	}
+
+	private static String formatCourseAvg(String title, long[] totals) {
+		if (totals == null) {
+			return "No student has taken the exam in " + title;
 		}
 		
-		List<Integer> grades = new ArrayList<>();
-		
-		// Find all grades for this course
-		for (Map.Entry<String, Integer> entry : examGrades.entrySet()) {
-			if (entry.getKey().endsWith("-" + courseId)) {
-				grades.add(entry.getValue());
-			}
-		}
+		double average = (double) totals[0] / totals[1];
 		
-		if (grades.isEmpty()) {
-			return "No student has taken the exam in " + course.getTitle();
+		return "The average for the course " + title + " is: " + String.format("%.1f", average);
+	}
+
+	/**
+	 * Counts how many times each grade was given in a course.
+	 * 
+	 * @param courseId course code
+	 * @return an array of 31 elements where element {@code g} is the number of students
+	 *         with grade {@code g}; all zeros if the course is unknown or has no grades
+	 */
+	public int[] courseHistogram(int courseId) {
+		return courseCounts(courseId);
+	}
+
+	/**
+	 * Counts how many times a student got each grade.
+	 * 
+	 * @param studentId the ID of the student
+	 * @return an array of 31 elements where element {@code g} is the number of exams
+	 *         with grade {@code g}; all zeros if the student is unknown or has no grades
+	 */
+	public int[] studentHistogram(int studentId) {
+		return studentCounts(studentId);
+	}
+
+	/**
+	 * Copies the histogram of the grades of a course
+	 * 
+	 * @param courseId course code
+	 * @return the number of students with each grade
+	 */
+	int[] courseCounts(int courseId) {
+		return histogram(courseGrades.row(courseId));
+	}
+
+	/**
+	 * Copies the histogram of the grades of a student
+	 * 
+	 * @param studentId the ID of the student
+	 * @return the number of exams with each grade
+	 */
+	int[] studentCounts(int studentId) {
+		return histogram(studentGrades.row(studentId));
+	}
+
+	private static int[] histogram(GradeIndex.Row grades) {
+		return grades == null ? new int[GradeIndex.GRADES] : grades.histogram();
+	}
+
+	/**
+	 * Computes a percentile of the grades of a course, e.g. the median for {@code percent = 50}.
+	 * 
+	 * The result is the smallest grade such that at least {@code percent}% of the
+	 * grades of the course are less than or equal to it (nearest rank method).
+	 * 
+	 * @param courseId course code
+	 * @param percent the percentile, between 0 and 100
+	 * @return the grade at the given percentile, or -1 if the course is unknown or has no grades
+	 * @throws IllegalArgumentException if the percentile is not between 0 and 100
+	 */
+	public int coursePercentile(int courseId, double percent) {
+		if (!(percent >= 0 && percent <= 100)) {
+			throw new IllegalArgumentException("Percentile " + percent + " out of range 0-100");
 		}
-		
-		double sum = 0;
-		for (int grade : grades) {
-			sum += grade;
+		int[] histogram = courseCounts(courseId);
+		long size = 0;
+		for (int count : histogram) {
+			size += count;
 		}
-		double average = sum / grades.size();
-		
-		return "The average for the course " + course.getTitle() + " is: " + String.format("%.1f", average);
+		return size == 0 ? -1 : GradeIndex.percentile(histogram, size, percent);
 	}
 	
 
@@ -323,103 +820,934 @@ public class University {
 	 * @return info on the best three students.
 	 */
 	public String topThreeStudents() {
-		List<StudentScore> studentScores = new ArrayList<>();
-		
-		for (Student student : students.values()) {
-			int studentId = student.getId();
-			
-			// Calculate exam average
-			List<Integer> grades = new ArrayList<>();
-			for (Map.Entry<String, Integer> entry : examGrades.entrySet()) {
-				if (entry.getKey().startsWith(studentId + "-")) {
-					grades.add(entry.getValue());
-				}
-			}
-			
-			if (grades.isEmpty()) {
-				continue; // Skip students with no exams
-			}
-			
-			double sum = 0;
-			for (int grade : grades) {
-				sum += grade;
-			}
-			double examAverage = sum / grades.size();
-			
-			// Calculate bonus
-			int enrolledCourses = studentCourses.get(studentId).size();
-			double bonus = (double) grades.size() / enrolledCourses * 10;
-			
-			// Calculate final score
-			double finalScore = examAverage + bonus;
-			
-			studentScores.add(new StudentScore(student, finalScore));
-		}
-		
-		// Sort by score (descending)
-		studentScores.sort((a, b) -> Double.compare(b.score, a.score));
-		
-		// Take top 3
-		StringBuilder result = new StringBuilder();
-		int count = Math.min(3, studentScores.size());
-		for (int i = 0; i < count; i++) {
-			if (result.length() > 0) {
-				result.append("\n");
-			}
-			StudentScore ss = studentScores.get(i);
-			result.append(ss.student.getFirst() + " " + ss.student.getLast() + " : " + String.format("%.1f", ss.score));
-		}
-		
-		return result.toString();
+		long start = startTimer();
+		String top = formatTop(3);
+		stopTimer(Metrics.Operation.TOP_STUDENTS, start);
+		return top;
 	}
 
-// R7
-    /**
-     * This field points to the logger for the class that can be used
-     * throughout the methods to log the activities.
-     */
-    public static final Logger logger = Logger.getLogger("University");
+	/**
+	 * Writes the information on the best three students to a destination.
+	 * The text written is the same returned by {@link #topThreeStudents()}.
+	 * 
+	 * @param out destination of the ranking
+	 * @throws IOException if the destination cannot be written
+	 */
+	public void topThreeStudents(Appendable out) throws IOException {
+		writeTop(3, out);
+	}
 
-	// Inner classes
-	private static class Student {
-		private int id;
-		private String first;
-		private String last;
-		
-		public Student(int id, String first, String last) {
-			this.id = id;
-			this.first = first;
-			this.last = last;
-		}
-		
-		public int getId() { return id; }
-		public String getFirst() { return first; }
-		public String getLast() { return last; }
+	/**
+	 * Writes the information on the best three students to a channel, encoded as UTF-8.
+	 * The text written is the same returned by {@link #topThreeStudents()}.
+	 * 
+	 * @param out destination of the ranking
+	 * @throws IOException if the channel cannot be written
+	 * @throws IllegalArgumentException if the channel is in non-blocking mode
+	 */
+	public void topThreeStudents(WritableByteChannel out) throws IOException {
+		stream(out, appender -> writeTop(3, appender));
 	}
-	
-	private static class Course {
-		private int id;
-		private String title;
-		private String teacher;
-		
-		public Course(int id, String title, String teacher) {
-			this.id = id;
-			this.title = title;
-			this.teacher = teacher;
+
+	/**
+	 * Retrieve information for the best {@code k} students.
+	 * 
+	 * The score is computed as described in {@link #topThreeStudents()} and the result
+	 * has the same format; fewer than {@code k} rows are returned if fewer students took exams.
+	 * The ranking is maintained while grades and registrations are recorded,
+	 * so the cost is proportional to {@code k}.
+	 * 
+	 * @param k number of students to retrieve
+	 * @return info on the best {@code k} students.
+	 */
+	public String topStudents(int k) {
+		long start = startTimer();
+		String top = formatTop(k);
+		stopTimer(Metrics.Operation.TOP_STUDENTS, start);
+		return top;
+	}
+
+	private String formatTop(int k) {
+		return render(out -> writeTop(k, out));
+	}
+
+	private void writeTop(int k, Appendable out) throws IOException {
+		Leaderboard.Entry[] ranking = best(k);
+		for (int i = 0; i < ranking.length; i++) {
+			if (i > 0) {
+				out.append('\n');
+			}
+			out.append(formatRanked(ranking[i]));
 		}
-		
-		public int getId() { return id; }
-		public String getTitle() { return title; }
-		public String getTeacher() { return teacher; }
 	}
-	
-	private static class StudentScore {
-		private Student student;
-		private double score;
-		
-		public StudentScore(Student student, double score) {
-			this.student = student;
-			this.score = score;
+
+	/**
+	 * Copies the first entries of the ranking
+	 * 
+	 * @param k maximum number of entries
+	 * @return the entries from the best to the worst score, empty if {@code k} is not positive
+	 */
+	Leaderboard.Entry[] best(int k) {
+		Leaderboard.Entry[] ranking = new Leaderboard.Entry[Math.max(0, Math.min(k, leaderboard.size()))];
+		Iterator<Leaderboard.Entry> entries = leaderboard.iterator();
+		for (int i = 0; i < ranking.length; i++) {
+			ranking[i] = entries.next();
+		}
+		return ranking;
+	}
+
+	private String formatRanked(Leaderboard.Entry entry) {
+		return storage.first(entry.studentId) + " " + storage.last(entry.studentId) + " : " + String.format("%.1f", entry.score);
+	}
+
+	/**
+	 * Computes the score of a student as described in {@link #topThreeStudents()}
+	 * 
+	 * @param studentId the ID of the student
+	 * @return the score or {@code NaN} if the student hasn't taken any exams
+	 */
+	private double score(int studentId) {
+		GradeIndex.Row grades = studentGrades.row(studentId);
+		if (grades == null) {
+			return Double.NaN;
+		}
+		double examAverage = (double) grades.sum() / grades.size();
+		int enrolledCourses = storage.courseCount(studentId);
+		double bonus = (double) grades.size() / enrolledCourses * 10;
+		return examAverage + bonus;
+	}
+
+	private void updateScore(int studentId) {
+		double score = score(studentId);
+		if (!Double.isNaN(score)) {
+			leaderboard.update(studentId, score);
+		}
+	}
+
+// Terms
+	/**
+	 * Closes the current academic term.
+	 * 
+	 * Terms are numbered from 0; the grades recorded after this call
+	 * belong to the next term. The averages and the ranking at the end
+	 * of a closed term remain available through {@link #studentAvgAsOf},
+	 * {@link #courseAvgAsOf} and {@link #topThreeStudentsAsOf}.
+	 * 
+	 * @return the number of the term just closed
+	 */
+	public int closeTerm() {
+		int term = history.close(best(RANKING_CHECKPOINT));
+		if (journal != null) {
+			journal.closeTerm(term);
+		}
+		return term;
+	}
+
+	/**
+	 * @return the number of the term in progress
+	 */
+	public int currentTerm() {
+		return history.current();
+	}
+
+	/**
+	 * Computes the average grade of a student at the end of a term,
+	 * with the same format as {@link #studentAvg}.
+	 * For the term in progress, or a later one, the current average is returned.
+	 * 
+	 * @param studentId the ID of the student
+	 * @param term number of the term
+	 * @return the average grade formatted as a string.
+	 */
+	public String studentAvgAsOf(int studentId, int term) {
+		return formatStudentAvg(studentId, studentTotalsAsOf(studentId, term));
+	}
+
+	/**
+	 * Copies the sum and the number of the grades of a student at the end of a term
+	 * 
+	 * @param studentId the ID of the student
+	 * @param term number of the term
+	 * @return sum and number of the grades, or {@code null} if the student had none
+	 */
+	long[] studentTotalsAsOf(int studentId, int term) {
+		return history.studentTotals(studentId, term, studentGrades.row(studentId));
+	}
+
+	/**
+	 * Computes the average grade of a course at the end of a term,
+	 * with the same format as {@link #courseAvg}.
+	 * For the term in progress, or a later one, the current average is returned.
+	 * 
+	 * @param courseId course code
+	 * @param term number of the term
+	 * @return the course average formatted as a string
+	 */
+	public String courseAvgAsOf(int courseId, int term) {
+		if (!storage.hasCourse(courseId)) {
+			return "No student has taken the exam in Unknown Course";
+		}
+		return formatCourseAvg(storage.title(courseId), courseTotalsAsOf(courseId, term));
+	}
+
+	/**
+	 * Copies the sum and the number of the grades of a course at the end of a term
+	 * 
+	 * @param courseId course code
+	 * @param term number of the term
+	 * @return sum and number of the grades, or {@code null} if the course had none
+	 */
+	long[] courseTotalsAsOf(int courseId, int term) {
+		return history.courseTotals(courseId, term, courseGrades.row(courseId));
+	}
+
+	/**
+	 * Retrieves the three best students at the end of a term,
+	 * with the same format as {@link #topThreeStudents}.
+	 * For the term in progress, or a later one, the current ranking is returned.
+	 * 
+	 * @param term number of the term
+	 * @return info on the best three students at the end of the term
+	 */
+	public String topThreeStudentsAsOf(int term) {
+		if (term >= history.current()) {
+			return formatTop(3);
+		}
+		Leaderboard.Entry[] ranking = history.ranking(term);
+		StringBuilder result = new StringBuilder();
+		for (int i = 0; ranking != null && i < ranking.length; i++) {
+			if (result.length() > 0) {
+				result.append("\n");
+			}
+			result.append(formatRanked(ranking[i]));
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Lists all the grades recorded for a student in a course, including
+	 * those replaced by a later exam, from the oldest to the latest.
+	 * 
+	 * The grades appear one per row, formatted as {@code "TERM: GRADE"}.
+	 * 
+	 * @param studentId the ID of the student
+	 * @param courseId course code
+	 * @return the grades or an empty string if none was recorded
+	 */
+	public String examHistory(int studentId, int courseId) {
+		int[] exams = examTerms(studentId, courseId);
+		StringBuilder rows = new StringBuilder();
+		for (int i = exams.length - 2; i >= 0; i -= 2) {
+			if (rows.length() > 0) {
+				rows.append('\n');
+			}
+			rows.append(exams[i]).append(": ").append(exams[i + 1]);
+		}
+		return rows.toString();
+	}
+
+	/**
+	 * Copies the grades recorded for a student in a course
+	 * 
+	 * @param studentId the ID of the student
+	 * @param courseId course code
+	 * @return term and grade of each exam, from the latest to the oldest
+	 */
+	int[] examTerms(int studentId, int courseId) {
+		int latest = history.latest(studentGrades.row(studentId), courseId);
+		int count = 0;
+		for (int entry = latest; entry >= 0; entry = history.previous(entry)) {
+			count++;
+		}
+		int[] exams = new int[2 * count];
+		int i = 0;
+		for (int entry = latest; entry >= 0; entry = history.previous(entry)) {
+			exams[i++] = history.term(entry);
+			exams[i++] = history.grade(entry);
+		}
+		return exams;
+	}
+
+// R7
+    /**
+     * This field points to the logger for the class that can be used
+     * throughout the methods to log the activities.
+     */
+    public static final Logger logger = Logger.getLogger("University");
+
+	private static final int ASYNC_LOG_CAPACITY = 8192;
+	private volatile EventLog asyncLog;
+
+	/**
+	 * Enables or disables asynchronous logging.
+	 * 
+	 * When enabled, the operations only record the event data and
+	 * a background thread formats the messages and sends them to {@link #logger},
+	 * so the messages reach the logger shortly after the operation returns.
+	 * Disabling it waits for the pending messages to be logged.
+	 * The background thread blocks while there are no messages, and stops
+	 * when logging is disabled or the university is no longer reachable.
+	 * 
+	 * @param enabled whether logging should be asynchronous
+	 */
+	public void setAsyncLogging(boolean enabled) {
+		EventLog current = asyncLog;
+		if (enabled && current == null) {
+			asyncLog = new EventLog(logger, ASYNC_LOG_CAPACITY, "University-log-" + name, this);
+		} else if (!enabled && current != null) {
+			asyncLog = null;
+			current.close();
+		}
+	}
+
+	/**
+	 * Waits until all the messages of the operations performed so far
+	 * have been sent to {@link #logger}.
+	 * It has no effect unless asynchronous logging is enabled.
+	 */
+	public void flushLog() {
+		EventLog current = asyncLog;
+		if (current != null) {
+			current.flush();
+		}
+	}
+
+	/**
+	 * Logs an operation, formatting the message only if it will be logged
+	 */
+	private void log(EventLog.Kind kind, int a, int b, int c, String x, String y) {
+		if (!logger.isLoggable(Level.INFO)) {
+			return;
+		}
+		EventLog async = asyncLog;
+		if (async != null) {
+			async.append(kind, a, b, c, x, y);
+		} else {
+			logger.logp(Level.INFO, University.class.getName(), kind.method, EventLog.format(kind, a, b, c, x, y));
+		}
+	}
+
+// Metrics
+	private volatile Metrics metrics;
+
+	/**
+	 * Enables or disables the collection of metrics.
+	 * 
+	 * When enabled, the number of executions and the latency distribution of
+	 * {@code enroll}, {@code activate}, {@code register}, {@code exam},
+	 * {@code examBatch}, {@code studentAvg}, {@code courseAvg} and {@code topStudents} are recorded;
+	 * they can be read with {@link #metricsReport} and through JMX
+	 * (see {@link OperationMetricsMXBean}).
+	 * When disabled, the only cost left in the operations is a field read,
+	 * and re-enabling starts from empty metrics.
+	 * 
+	 * @param enabled whether metrics should be collected
+	 */
+	public void setMetrics(boolean enabled) {
+		Metrics current = metrics;
+		if (enabled && current == null) {
+			Metrics created = new Metrics();
+			try {
+				created.register(name);
+			} catch (JMException e) {
+				logger.log(Level.WARNING, "Metrics of " + name + " not exported through JMX", e);
+			}
+			metrics = created;
+		} else if (!enabled && current != null) {
+			metrics = null;
+			current.unregister();
+		}
+	}
+
+	/**
+	 * Formats the collected metrics as a table with one operation per row:
+	 * number of executions, mean, 50th, 90th and 99th percentile
+	 * and maximum latency, in microseconds.
+	 * 
+	 * @return the metrics or an empty string if they are disabled
+	 */
+	public String metricsReport() {
+		Metrics current = metrics;
+		return current == null ? "" : current.dump();
+	}
+
+	private long startTimer() {
+		return metrics == null ? 0 : System.nanoTime();
+	}
+
+	private void stopTimer(Metrics.Operation operation, long start) {
+		Metrics current = metrics;
+		if (current != null && start != 0) {
+			current.record(operation, start);
+		}
+	}
+
+// Bulk import and export
+	/**
+	 * Loads students, courses, registrations and exams from a file
+	 * previously written by {@link #exportTo}, or by another system using the same format.
+	 * 
+	 * The file contains one record per line, with fields separated by {@code ';'}:
+	 * <ul>
+	 * <li>{@code H;STUDENTS;COURSES;REGISTRATIONS;EXAMS} optional header with the number of records, used to pre-size the internal structures
+	 * <li>{@code S;ID;FIRST;LAST} a student
+	 * <li>{@code C;CODE;TITLE;TEACHER} a course
+	 * <li>{@code R;STUDENT_ID;COURSE_CODE} a registration
+	 * <li>{@code E;STUDENT_ID;COURSE_CODE;GRADE} an exam
+	 * </ul>
+	 * Students and courses must have the ids that {@link #enroll} and {@link #activate}
+	 * would assign next, and must appear before the registrations and exams referring to them.
+	 * Text fields containing separators, quotes or line breaks are enclosed in double quotes.
+	 * 
+	 * Records are inserted directly, without logging each of them: a single summary
+	 * message is logged at the end. If the file is malformed, the records before the
+	 * offending line are kept.
+	 * If a journal is open, the records inserted are written to it.
+	 * 
+	 * @param file the file to read
+	 * @throws IOException if the file cannot be read or is malformed
+	 */
+	public void importFrom(Path file) throws IOException {
+		int students = 0;
+		int courses = 0;
+		long registrations = 0;
+		long exams = 0;
+		BitSet touched = new BitSet();
+		if (journal != null) {
+			journal.beginBatch();
+		}
+		try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			CsvLine row = new CsvLine(in);
+			while (row.next()) {
+				if (row.raw().isEmpty()) {
+					continue;
+				}
+				switch (row.tag()) {
+				case 'H': {
+					int moreStudents = row.number();
+					int moreCourses = row.number();
+					row.number();
+					row.number();
+					ensureCapacity(nextStudentId - FIRST_STUDENT_ID + moreStudents, nextCourseId - FIRST_COURSE_ID + moreCourses);
+					break;
+				}
+				case 'S': {
+					int id = row.number();
+					if (id != nextStudentId) {
+						throw row.error("student " + nextStudentId + " expected instead of " + id);
+					}
+					String first = row.text();
+					String last = row.text();
+					addStudent(nextStudentId++, first, last);
+					if (journal != null) {
+						journal.enroll(id, first, last);
+					}
+					students++;
+					break;
+				}
+				case 'C': {
+					int code = row.number();
+					if (code != nextCourseId) {
+						throw row.error("course " + nextCourseId + " expected instead of " + code);
+					}
+					String title = row.text();
+					String teacher = row.text();
+					addCourse(nextCourseId++, title, teacher);
+					if (journal != null) {
+						journal.activate(code, title, teacher);
+					}
+					courses++;
+					break;
+				}
+				case 'R': {
+					int studentId = row.number();
+					int courseId = row.number();
+					checkIds(row, studentId, courseId);
+					if (storage.register(studentId, courseId)) {
+						touched.set(studentId - FIRST_STUDENT_ID);
+					}
+					if (journal != null) {
+						journal.register(studentId, courseId);
+					}
+					registrations++;
+					break;
+				}
+				case 'E': {
+					int studentId = row.number();
+					int courseId = row.number();
+					int grade = row.number();
+					checkIds(row, studentId, courseId);
+					if (!validGrade(grade)) {
+						throw row.error("grade " + grade + " out of range");
+					}
+					recordGrade(studentId, courseId, grade);
+					touched.set(studentId - FIRST_STUDENT_ID);
+					if (journal != null) {
+						journal.exam(studentId, courseId, grade);
+					}
+					exams++;
+					break;
+				}
+				default:
+					throw row.error("unknown record type");
+				}
+				if (!row.atEnd()) {
+					throw row.error("unexpected fields");
+				}
+			}
+		} finally {
+			// scores are recomputed once per student instead of once per record
+			for (int i = touched.nextSetBit(0); i >= 0; i = touched.nextSetBit(i + 1)) {
+				updateScore(FIRST_STUDENT_ID + i);
+			}
+			renderCache.clear();
+			if (logger.isLoggable(Level.INFO)) {
+				logger.logp(Level.INFO, University.class.getName(), "importFrom",
+						String.format("Imported %d students, %d courses, %d registrations and %d exams from %s",
+								students, courses, registrations, exams, file));
+			}
+			if (journal != null) {
+				journal.endBatch();
+			}
+		}
+	}
+
+	private void ensureCapacity(int students, int courses) {
+		storage.ensureCapacity(students, courses);
+		studentGrades.ensureCapacity(students);
+		courseGrades.ensureCapacity(courses);
+	}
+
+	private void checkIds(CsvLine row, int studentId, int courseId) throws IOException {
+		if (!storage.hasStudent(studentId)) {
+			throw row.error("unknown student " + studentId);
+		}
+		if (!storage.hasCourse(courseId)) {
+			throw row.error("unknown course " + courseId);
+		}
+	}
+
+	/**
+	 * Writes students, courses, registrations and exams to a file,
+	 * using the format described in {@link #importFrom}.
+	 * 
+	 * @param file the file to write, replaced if it already exists
+	 * @throws IOException if the file cannot be written
+	 */
+	public void exportTo(Path file) throws IOException {
+		long registrations = 0;
+		for (int studentId = FIRST_STUDENT_ID; studentId < nextStudentId; studentId++) {
+			registrations += storage.courseCount(studentId);
+		}
+		try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			StringBuilder row = new StringBuilder(128);
+			row.append('H').append(CsvLine.SEPARATOR).append(nextStudentId - FIRST_STUDENT_ID)
+				.append(CsvLine.SEPARATOR).append(nextCourseId - FIRST_COURSE_ID)
+				.append(CsvLine.SEPARATOR).append(registrations)
+				.append(CsvLine.SEPARATOR).append(studentGrades.entries()).append('\n');
+			for (int studentId = FIRST_STUDENT_ID; studentId < nextStudentId; studentId++) {
+				row.append('S').append(CsvLine.SEPARATOR).append(studentId).append(CsvLine.SEPARATOR);
+				CsvLine.appendText(row, storage.first(studentId));
+				row.append(CsvLine.SEPARATOR);
+				CsvLine.appendText(row, storage.last(studentId));
+				row.append('\n');
+				writeIfFull(out, row);
+			}
+			for (int courseId = FIRST_COURSE_ID; courseId < nextCourseId; courseId++) {
+				row.append('C').append(CsvLine.SEPARATOR).append(courseId).append(CsvLine.SEPARATOR);
+				CsvLine.appendText(row, storage.title(courseId));
+				row.append(CsvLine.SEPARATOR);
+				CsvLine.appendText(row, storage.teacher(courseId));
+				row.append('\n');
+				writeIfFull(out, row);
+			}
+			for (int studentId = FIRST_STUDENT_ID; studentId < nextStudentId; studentId++) {
+				for (PrimitiveIterator.OfInt courseIds = storage.courses(studentId); courseIds.hasNext(); ) {
+					row.append('R').append(CsvLine.SEPARATOR).append(studentId)
+						.append(CsvLine.SEPARATOR).append(courseIds.nextInt()).append('\n');
+				}
+				writeIfFull(out, row);
+			}
+			for (int studentId = FIRST_STUDENT_ID; studentId < nextStudentId; studentId++) {
+				GradeIndex.Row grades = studentGrades.row(studentId);
+				if (grades == null) {
+					continue;
+				}
+				for (int i = 0; i < grades.size(); i++) {
+					row.append('E').append(CsvLine.SEPARATOR).append(studentId)
+						.append(CsvLine.SEPARATOR).append(grades.key(i))
+						.append(CsvLine.SEPARATOR).append(grades.grade(i)).append('\n');
+				}
+				writeIfFull(out, row);
+			}
+			out.append(row);
+		}
+	}
+
+	private static void writeIfFull(Writer out, StringBuilder rows) throws IOException {
+		if (rows.length() >= 8192) {
+			out.append(rows);
+			rows.setLength(0);
+		}
+	}
+
+// Snapshots and journal
+	/**
+	 * Writes the whole state of the university to a binary snapshot file.
+	 * 
+	 * The snapshot starts with a magic number and a version, followed by
+	 * sections (general data, students, courses, registrations, grades, term history)
+	 * each prefixed by its length in bytes as a big-endian long. The values are
+	 * big-endian ints and longs and length-prefixed UTF-8 strings, so the file can
+	 * also be memory-mapped.
+	 * The file is written to a temporary file that is forced to disk and then replaces the target,
+	 * so an interrupted snapshot never overwrites a previous one.
+	 * The snapshot records the sequence number of the last journaled update:
+	 * if a journal is open, it is emptied since the snapshot contains all its updates,
+	 * and if the process stops before that, {@link #replayJournal} skips them.
+	 * 
+	 * @param file the snapshot file
+	 * @throws IOException if the file cannot be written
+	 */
+	public void saveSnapshot(Path file) throws IOException {
+		Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (ChannelOutput out = new ChannelOutput(FileChannel.open(temp, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING), 1 << 16)) {
+			out.putInt(SNAPSHOT_MAGIC);
+			out.putInt(SNAPSHOT_VERSION);
+
+			long section = out.beginSection();
+			out.putString(name);
+			out.putString(rectorFirst);
+			out.putString(rectorLast);
+			out.putLong(journal == null ? journalSequence : journal.sequence());
+			out.endSection(section);
+
+			section = out.beginSection();
+			out.putInt(nextStudentId - FIRST_STUDENT_ID);
+			for (int studentId = FIRST_STUDENT_ID; studentId < nextStudentId; studentId++) {
+				out.putString(storage.first(studentId));
+				out.putString(storage.last(studentId));
+			}
+			out.endSection(section);
+
+			section = out.beginSection();
+			out.putInt(nextCourseId - FIRST_COURSE_ID);
+			for (int courseId = FIRST_COURSE_ID; courseId < nextCourseId; courseId++) {
+				out.putString(storage.title(courseId));
+				out.putString(storage.teacher(courseId));
+			}
+			out.endSection(section);
+
+			section = out.beginSection();
+			for (int studentId = FIRST_STUDENT_ID; studentId < nextStudentId; studentId++) {
+				out.putInt(storage.courseCount(studentId));
+				for (PrimitiveIterator.OfInt courseIds = storage.courses(studentId); courseIds.hasNext(); ) {
+					out.putInt(courseIds.nextInt());
+				}
+			}
+			out.endSection(section);
+
+			section = out.beginSection();
+			for (int studentId = FIRST_STUDENT_ID; studentId < nextStudentId; studentId++) {
+				GradeIndex.Row grades = studentGrades.row(studentId);
+				int size = grades == null ? 0 : grades.size();
+				out.putInt(size);
+				for (int i = 0; i < size; i++) {
+					out.putInt(grades.key(i));
+					out.putInt(grades.grade(i));
+				}
+			}
+			out.endSection(section);
+
+			section = out.beginSection();
+			history.write(out);
+			out.endSection(section);
+		}
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		forceDirectory(file);
+		// the journal is emptied only once the snapshot is durable
+		if (journal != null) {
+			journal.truncate();
+		}
+	}
+
+	/**
+	 * Makes the renaming of a file durable, where the platform allows forcing a directory
+	 * @param file the file renamed
+	 */
+	private static void forceDirectory(Path file) {
+		Path directory = file.toAbsolutePath().getParent();
+		try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException e) {
+			// e.g. on Windows directories cannot be opened as channels
+			logger.log(Level.FINE, "Cannot force directory " + directory, e);
+		}
+	}
+
+	/**
+	 * Creates a university from a snapshot written by {@link #saveSnapshot}
+	 * 
+	 * @param file the snapshot file
+	 * @return the restored university
+	 * @throws IOException if the file cannot be read or is not a valid snapshot
+	 */
+	public static University loadSnapshot(Path file) throws IOException {
+		return loadSnapshot(file, StorageMode.HASHED);
+	}
+
+	/**
+	 * Creates a university from a snapshot written by {@link #saveSnapshot}
+	 * 
+	 * @param file the snapshot file
+	 * @param mode how students, courses and registrations are stored
+	 * @return the restored university
+	 * @throws IOException if the file cannot be read or is not a valid snapshot
+	 */
+	public static University loadSnapshot(Path file, StorageMode mode) throws IOException {
+		return loadSnapshot(file, name -> new University(name, mode));
+	}
+
+	static <U extends University> U loadSnapshot(Path file, Function<String, U> factory) throws IOException {
+		try (ChannelInput in = new ChannelInput(FileChannel.open(file, StandardOpenOption.READ), 1 << 16)) {
+			int version = in.getInt() == SNAPSHOT_MAGIC ? in.getInt() : -1;
+			if (version != SNAPSHOT_VERSION) {
+				throw new IOException(file + " is not a university snapshot");
+			}
+			in.getLong();
+			U university = factory.apply(in.getString());
+			((University) university).readSnapshot(in);
+			return university;
+		}
+	}
+
+	private void readSnapshot(ChannelInput in) throws IOException {
+		rectorFirst = in.getString();
+		rectorLast = in.getString();
+		journalSequence = in.getLong();
+
+		in.getLong();
+		int students = in.getInt();
+		ensureCapacity(students, 0);
+		for (int i = 0; i < students; i++) {
+			addStudent(nextStudentId++, in.getString(), in.getString());
+		}
+		in.getLong();
+		int courses = in.getInt();
+		ensureCapacity(students, courses);
+		for (int i = 0; i < courses; i++) {
+			addCourse(nextCourseId++, in.getString(), in.getString());
+		}
+
+		in.getLong();
+		for (int studentId = FIRST_STUDENT_ID; studentId < nextStudentId; studentId++) {
+			for (int n = in.getInt(); n > 0; n--) {
+				storage.register(studentId, in.getInt());
+			}
+		}
+
+		in.getLong();
+		for (int studentId = FIRST_STUDENT_ID; studentId < nextStudentId; studentId++) {
+			for (int n = in.getInt(); n > 0; n--) {
+				int courseId = in.getInt();
+				int grade = in.getInt();
+				if (!validGrade(grade)) {
+					throw new IOException("Snapshot holds grade " + grade + " of student " + studentId);
+				}
+				studentGrades.put(studentId, courseId, grade);
+				courseGrades.put(courseId, studentId, grade);
+			}
+			updateScore(studentId);
+		}
+
+		in.getLong();
+		history.read(in, studentGrades);
+	}
+
+	/**
+	 * Starts recording every update (enrolments, activations, registrations,
+	 * exams, rector changes and closed terms) in a journal file, so that the updates
+	 * performed after the last snapshot can be recovered with {@link #replayJournal}.
+	 * If the file already exists, the new records are appended to it.
+	 * 
+	 * @param file the journal file
+	 * @throws IOException if the file cannot be opened
+	 */
+	public void openJournal(Path file) throws IOException {
+		closeJournal();
+		journal = new Journal(file, journalSequence);
+	}
+
+	/**
+	 * Stops recording updates in the journal
+	 * 
+	 * @throws IOException if the journal cannot be closed
+	 */
+	public void closeJournal() throws IOException {
+		if (journal != null) {
+			Journal current = journal;
+			journal = null;
+			journalSequence = current.sequence();
+			current.close();
+		}
+	}
+
+	/**
+	 * Applies the updates recorded in a journal, typically
+	 * right after restoring the snapshot the journal refers to.
+	 * The updates already contained in the snapshot are skipped and
+	 * a truncated last record, left by a crash, is ignored.
+	 * The updates are not logged.
+	 * 
+	 * @param file the journal file
+	 * @return the number of updates applied
+	 * @throws IOException if the file cannot be read or does not match the current state
+	 * @throws IllegalStateException if a journal is open
+	 */
+	public long replayJournal(Path file) throws IOException {
+		if (journal != null) {
+			throw new IllegalStateException("Cannot replay a journal while recording one");
+		}
+		BitSet touched = new BitSet();
+		long before = journalSequence;
+		try {
+			journalSequence = Journal.read(file, before, new Journal.Visitor() {
+				@Override
+				public void enroll(int id, String first, String last) throws IOException {
+					if (id != nextStudentId) {
+						throw new IOException("Journal enrols student " + id + " instead of " + nextStudentId);
+					}
+					addStudent(nextStudentId++, first, last);
+				}
+
+				@Override
+				public void activate(int code, String title, String teacher) throws IOException {
+					if (code != nextCourseId) {
+						throw new IOException("Journal activates course " + code + " instead of " + nextCourseId);
+					}
+					addCourse(nextCourseId++, title, teacher);
+				}
+
+				@Override
+				public void register(int studentId, int courseId) {
+					if (storage.hasStudent(studentId) && storage.hasCourse(courseId)
+							&& storage.register(studentId, courseId)) {
+						touched.set(studentId - FIRST_STUDENT_ID);
+					}
+				}
+
+				@Override
+				public void exam(int studentId, int courseId, int grade) throws IOException {
+					if (!validGrade(grade)) {
+						throw new IOException("Journal records grade " + grade + " of student " + studentId);
+					}
+					if (storage.hasStudent(studentId) && storage.hasCourse(courseId)) {
+						recordGrade(studentId, courseId, grade);
+						touched.set(studentId - FIRST_STUDENT_ID);
+					}
+				}
+
+				@Override
+				public void rector(String first, String last) {
+					rectorFirst = first;
+					rectorLast = last;
+				}
+
+				@Override
+				public void closeTerm(int term) throws IOException {
+					if (term != history.current()) {
+						throw new IOException("Journal closes term " + term + " instead of " + history.current());
+					}
+					for (int i = touched.nextSetBit(0); i >= 0; i = touched.nextSetBit(i + 1)) {
+						updateScore(FIRST_STUDENT_ID + i);
+					}
+					touched.clear();
+					history.close(best(RANKING_CHECKPOINT));
+				}
+			});
+			return journalSequence - before;
+		} finally {
+			for (int i = touched.nextSetBit(0); i >= 0; i = touched.nextSetBit(i + 1)) {
+				updateScore(FIRST_STUDENT_ID + i);
+			}
+			renderCache.clear();
+		}
+	}
+
+// Cross-campus aggregates
+	/**
+	 * @return number of students enrolled so far
+	 */
+	int enrolled() {
+		return nextStudentId - FIRST_STUDENT_ID;
+	}
+
+	/**
+	 * Collects the best {@code k} students for {@link UniversityRegistry#topStudents}
+	 * 
+	 * @param k number of students to retrieve
+	 * @param campus position of this university in the registry
+	 * @return the students from the best to the worst score
+	 */
+	List<UniversityRegistry.Ranked> ranking(int k, int campus) {
+		Leaderboard.Entry[] ranking = best(k);
+		List<UniversityRegistry.Ranked> result = new ArrayList<>(ranking.length);
+		for (Leaderboard.Entry entry : ranking) {
+			result.add(new UniversityRegistry.Ranked(entry.score, campus, entry.studentId, formatRanked(entry)));
+		}
+		return result;
+	}
+
+	/**
+	 * Sums the grades of the courses having a given title,
+	 * for {@link UniversityRegistry#courseAvg}.
+	 * The candidates are looked up in the title index.
+	 * 
+	 * @param title title of the courses
+	 * @return the sum and the number of grades
+	 */
+	long[] gradeTotals(String title) {
+		long[] totals = new long[2];
+		for (int courseId : courseIndex.byTitle(title)) {
+			if (title.equals(storage.title(courseId))) {
+				long[] grades = courseTotals(courseId);
+				if (grades != null) {
+					totals[0] += grades[0];
+					totals[1] += grades[1];
+				}
+			}
+		}
+		return totals;
+	}
+
+	/**
+	 * Verifies that the incrementally maintained aggregates match
+	 * the values obtained by recomputing them from scratch.
+	 * Intended to be used by tests.
+	 *
+	 * @throws IllegalStateException if an inconsistency is found
+	 */
+	void checkConsistency() {
+		studentGrades.verify(courseGrades);
+		courseGrades.verify(studentGrades);
+		history.verify(studentGrades, courseGrades);
+		long registrations = 0;
+		for (int studentId = FIRST_STUDENT_ID; studentId < nextStudentId; studentId++) {
+			leaderboard.verify(studentId, score(studentId));
+			for (PrimitiveIterator.OfInt courseIds = storage.courses(studentId); courseIds.hasNext(); ) {
+				int courseId = courseIds.nextInt();
+				if (!storage.isRegistered(courseId, studentId)) {
+					throw new IllegalStateException("Registration " + studentId + "/" + courseId + " is not mirrored");
+				}
+				registrations++;
+			}
+		}
+		for (int courseId = FIRST_COURSE_ID; courseId < nextCourseId; courseId++) {
+			registrations -= storage.studentCount(courseId);
+		}
+		if (registrations != 0) {
+			throw new IllegalStateException("Registrations of students and courses differ by " + registrations);
 		}
 	}
 
@@ -0,0 +1,223 @@
+package university;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+
+/**
+ * A set of universities (campuses) hosted in the same JVM,
+ * with statistics computed across all of them.
+ *
+ * Each aggregate is computed as a map-reduce in a {@link ForkJoinPool}:
+ * the campuses are split recursively, every campus computes its partial
+ * result from its own incrementally maintained indexes and the partial
+ * results are merged pairwise.
+ * The merged results are the same that a single university holding
+ * all the students and courses, enrolled campus by campus in registration
+ * order, would produce.
+ *
+ * Campuses can be added while queries are running; a query sees the campuses
+ * registered when it started. To be queried while they are being updated,
+ * campuses must be {@link ConcurrentUniversity} instances.
+ */
+public class UniversityRegistry {
+
+	private final ForkJoinPool pool;
+	private final Map<String, University> byName = new HashMap<>();
+	private volatile University[] campuses = new University[0];
+
+	/**
+	 * Creates a registry running the queries in the common pool
+	 */
+	public UniversityRegistry() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Creates a registry running the queries in the given pool
+	 * @param pool pool executing the queries
+	 */
+	public UniversityRegistry(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Adds a campus to the registry
+	 *
+	 * @param campus the university to add
+	 * @throws IllegalArgumentException if a university with the same name is already registered
+	 */
+	public synchronized void add(University campus) {
+		if (byName.putIfAbsent(campus.getName(), campus) != null) {
+			throw new IllegalArgumentException("Duplicate university: " + campus.getName());
+		}
+		University[] more = Arrays.copyOf(campuses, campuses.length + 1);
+		more[campuses.length] = campus;
+		campuses = more;
+	}
+
+	/**
+	 * Retrieves a campus by name
+	 *
+	 * @param name name of the university
+	 * @return the university or {@code null} if it is not registered
+	 */
+	public synchronized University get(String name) {
+		return byName.get(name);
+	}
+
+	/**
+	 * @return number of registered campuses
+	 */
+	public int size() {
+		return campuses.length;
+	}
+
+	/**
+	 * Computes the number of students enrolled in all the campuses
+	 *
+	 * @return the total enrolment
+	 */
+	public long totalEnrolment() {
+		return mapReduce((campus, i) -> (long) campus.enrolled(), Long::sum, 0L);
+	}
+
+	/**
+	 * Computes the average grade of the exams taken in all the courses
+	 * having the given title, in any campus.
+	 *
+	 * The format is the same as {@link University#courseAvg}:
+	 * {@code "The average for the course COURSE_TITLE is: COURSE_AVG"} or
+	 * {@code "No student has taken the exam in COURSE_TITLE"}.
+	 *
+	 * @param title title of the course
+	 * @return the course average formatted as a string
+	 */
+	public String courseAvg(String title) {
+		long[] totals = mapReduce((campus, i) -> campus.gradeTotals(title),
+				(a, b) -> new long[] { a[0] + b[0], a[1] + b[1] }, new long[2]);
+		if (totals[1] == 0) {
+			return "No student has taken the exam in " + title;
+		}
+		double average = (double) totals[0] / totals[1];
+		return "The average for the course " + title + " is: " + String.format("%.1f", average);
+	}
+
+	/**
+	 * Retrieves the best {@code k} students of all the campuses.
+	 *
+	 * The score and the format are the same as {@link University#topStudents};
+	 * students with the same score are listed by campus, in registration order,
+	 * and then by id.
+	 * As for a single university, an empty string is returned if {@code k} is not positive.
+	 *
+	 * @param k number of students to retrieve
+	 * @return info on the best {@code k} students
+	 */
+	public String topStudents(int k) {
+		if (k <= 0) {
+			return "";
+		}
+		List<Ranked> best = mapReduce((campus, i) -> campus.ranking(k, i), (a, b) -> merge(a, b, k), List.of());
+		StringBuilder result = new StringBuilder();
+		for (Ranked student : best) {
+			if (result.length() > 0) {
+				result.append("\n");
+			}
+			result.append(student.row);
+		}
+		return result.toString();
+	}
+
+	private static List<Ranked> merge(List<Ranked> a, List<Ranked> b, int k) {
+		List<Ranked> merged = new ArrayList<>(Math.min(k, a.size() + b.size()));
+		int i = 0;
+		int j = 0;
+		while (merged.size() < k && (i < a.size() || j < b.size())) {
+			if (j == b.size() || i < a.size() && a.get(i).compareTo(b.get(j)) <= 0) {
+				merged.add(a.get(i++));
+			} else {
+				merged.add(b.get(j++));
+			}
+		}
+		return merged;
+	}
+
+	private <T> T mapReduce(CampusFunction<T> map, BinaryOperator<T> reduce, T identity) {
+		University[] snapshot = campuses;
+		if (snapshot.length == 0) {
+			return identity;
+		}
+		return pool.invoke(new Partial<>(snapshot, 0, snapshot.length, map, reduce));
+	}
+
+	/**
+	 * Partial result of a campus, computed from its position and instance
+	 */
+	@FunctionalInterface
+	private interface CampusFunction<T> {
+		T apply(University campus, int position);
+	}
+
+	/**
+	 * Result of a query over a range of campuses
+	 */
+	private static class Partial<T> extends RecursiveTask<T> {
+		private static final long serialVersionUID = 1L;
+
+		private final transient University[] campuses;
+		private final int from;
+		private final int to;
+		private final transient CampusFunction<T> map;
+		private final transient BinaryOperator<T> reduce;
+
+		Partial(University[] campuses, int from, int to, CampusFunction<T> map, BinaryOperator<T> reduce) {
+			this.campuses = campuses;
+			this.from = from;
+			this.to = to;
+			this.map = map;
+			this.reduce = reduce;
+		}
+
+		@Override
+		protected T compute() {
+			if (to - from == 1) {
+				return map.apply(campuses[from], from);
+			}
+			int mid = (from + to) >>> 1;
+			Partial<T> left = new Partial<>(campuses, from, mid, map, reduce);
+			left.fork();
+			T right = new Partial<>(campuses, mid, to, map, reduce).compute();
+			return reduce.apply(left.join(), right);
+		}
+	}
+
+	/**
+	 * A student of a campus, with the row describing it in a ranking
+	 */
+	static final class Ranked implements Comparable<Ranked> {
+		final double score;
+		final int campus;
+		final int studentId;
+		final String row;
+
+		Ranked(double score, int campus, int studentId, String row) {
+			this.score = score;
+			this.campus = campus;
+			this.studentId = studentId;
+			this.row = row;
+		}
+
+		@Override
+		public int compareTo(Ranked other) {
+			int c = Double.compare(other.score, score);
+			if (c == 0) c = Integer.compare(campus, other.campus);
+			return c != 0 ? c : Integer.compare(studentId, other.studentId);
+		}
+	}
+}
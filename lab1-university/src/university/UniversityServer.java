@@ -0,0 +1,219 @@
+package university;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+
+/**
+ * Socket server exposing a {@link ConcurrentUniversity} through a line protocol.
+ *
+ * Each request is a line made of a command and its arguments separated by spaces:
+ * <ul>
+ * <li>{@code enroll FIRST LAST}</li>
+ * <li>{@code activate TITLE;TEACHER} (title and teacher may contain spaces)</li>
+ * <li>{@code register STUDENT COURSE}</li>
+ * <li>{@code exam STUDENT COURSE GRADE}</li>
+ * <li>{@code avg student STUDENT} or {@code avg course COURSE}</li>
+ * <li>{@code top K}</li>
+ * </ul>
+ * Each response starts with a line {@code OK N}, followed by the N lines of the result,
+ * or is a single line {@code ERR MESSAGE}.
+ *
+ * Every connection is served by its own virtual thread, so the number of clients
+ * is not limited by the number of platform threads. Registrations and exams of
+ * different students and courses, and the queries about them, are served in parallel
+ * by the {@link ConcurrentUniversity}.
+ * Clients can pipeline requests: responses are buffered and written to the
+ * socket only when no more requests are waiting to be read.
+ */
+public final class UniversityServer implements Closeable {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private final ConcurrentUniversity university;
+	private final ServerSocket server;
+	private final ExecutorService connections = Executors.newVirtualThreadPerTaskExecutor();
+	private final Set<Socket> open = ConcurrentHashMap.newKeySet();
+	private final Thread acceptor;
+
+	/**
+	 * Starts a server listening on the loopback interface only.
+	 * The protocol has no authentication: to accept connections from other hosts,
+	 * the address to listen on must be given explicitly.
+	 *
+	 * @param university the university to expose
+	 * @param port the port, or 0 to choose a free one
+	 * @throws IOException if the port cannot be opened
+	 */
+	public UniversityServer(ConcurrentUniversity university, int port) throws IOException {
+		this(university, new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+	}
+
+	/**
+	 * Starts a server listening on the given address,
+	 * e.g. a wildcard address to accept connections on all the interfaces
+	 *
+	 * @param university the university to expose
+	 * @param address the address to listen on
+	 * @throws IOException if the address cannot be bound
+	 */
+	public UniversityServer(ConcurrentUniversity university, SocketAddress address) throws IOException {
+		this.university = university;
+		server = new ServerSocket();
+		server.bind(address, 1024);
+		acceptor = Thread.ofVirtual().name("University-server-" + getPort()).start(this::accept);
+	}
+
+	/**
+	 * @return the port the server listens on
+	 */
+	public int getPort() {
+		return server.getLocalPort();
+	}
+
+	private void accept() {
+		while (!server.isClosed()) {
+			try {
+				Socket socket = server.accept();
+				socket.setTcpNoDelay(true);
+				open.add(socket);
+				connections.execute(() -> serve(socket));
+			} catch (IOException e) {
+				if (!server.isClosed()) {
+					University.logger.log(Level.WARNING, "Cannot accept connection", e);
+				}
+			}
+		}
+	}
+
+	private void serve(Socket socket) {
+		try (socket;
+				BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8), BUFFER_SIZE);
+				Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), BUFFER_SIZE)) {
+			String line;
+			while ((line = in.readLine()) != null) {
+				respond(line, out);
+				if (!in.ready()) {
+					out.flush();
+				}
+			}
+		} catch (IOException e) {
+			// the client closed the connection or the server is shutting down
+		} finally {
+			open.remove(socket);
+		}
+	}
+
+	/**
+	 * Executes a request and writes its response
+	 *
+	 * @param request the request line
+	 * @param out destination of the response
+	 */
+	void respond(String request, Writer out) throws IOException {
+		String[] args = request.trim().split(" +");
+		try {
+			switch (args[0]) {
+			case "enroll":
+				check(args, 3);
+				reply(out, Integer.toString(university.enroll(args[1], args[2])));
+				break;
+			case "activate": {
+				int separator = request.indexOf(';');
+				int start = request.indexOf("activate") + "activate".length();
+				if (separator < 0) {
+					throw new IllegalArgumentException("usage: activate TITLE;TEACHER");
+				}
+				reply(out, Integer.toString(university.activate(request.substring(start, separator).trim(),
+						request.substring(separator + 1).trim())));
+				break;
+			}
+			case "register":
+				check(args, 3);
+				university.register(Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+				reply(out, null);
+				break;
+			case "exam":
+				check(args, 4);
+				university.exam(Integer.parseInt(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+				reply(out, null);
+				break;
+			case "avg":
+				check(args, 3);
+				if (args[1].equals("student")) {
+					reply(out, university.studentAvg(Integer.parseInt(args[2])));
+				} else if (args[1].equals("course")) {
+					reply(out, university.courseAvg(Integer.parseInt(args[2])));
+				} else {
+					throw new IllegalArgumentException("usage: avg student|course ID");
+				}
+				break;
+			case "top":
+				check(args, 2);
+				reply(out, university.topStudents(Integer.parseInt(args[1])));
+				break;
+			default:
+				throw new IllegalArgumentException("unknown command " + args[0]);
+			}
+		} catch (RuntimeException e) {
+			// includes NumberFormatException for malformed ids
+			out.write("ERR ");
+			out.write(String.valueOf(e.getMessage()).replace('\n', ' '));
+			out.write('\n');
+		}
+	}
+
+	private static void check(String[] args, int count) {
+		if (args.length != count) {
+			throw new IllegalArgumentException(args[0] + " requires " + (count - 1) + " arguments");
+		}
+	}
+
+	private static void reply(Writer out, String result) throws IOException {
+		if (result == null || result.isEmpty()) {
+			out.write("OK 0\n");
+			return;
+		}
+		int lines = 1;
+		for (int i = result.indexOf('\n'); i >= 0; i = result.indexOf('\n', i + 1)) {
+			lines++;
+		}
+		out.write("OK ");
+		out.write(Integer.toString(lines));
+		out.write('\n');
+		out.write(result);
+		out.write('\n');
+	}
+
+	/**
+	 * Stops accepting connections and closes the open ones
+	 */
+	@Override
+	public void close() throws IOException {
+		server.close();
+		for (Socket socket : open) {
+			socket.close();
+		}
+		connections.shutdown();
+		try {
+			acceptor.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,255 @@
+package university;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.stream.IntStream;
+
+/**
+ * White-box tests for the incrementally maintained aggregates
+ */
+class TestAggregates {
+	private static final int STUDENTS = 200;
+	private static final int COURSES = 30;
+
+	private University poli;
+
+	@BeforeEach
+	void setUp() {
+		University.logger.setLevel(Level.OFF);
+		poli = new University("Politecnico di Torino");
+		for (int i = 0; i < STUDENTS; i++) {
+			poli.enroll("First" + i, "Last" + i);
+		}
+		for (int i = 0; i < COURSES; i++) {
+			poli.activate("Course" + i, "Teacher" + i);
+		}
+	}
+
+	@Test
+	void testRegrading() {
+		poli.register(10000, 10);
+		poli.exam(10000, 10, 18);
+		poli.exam(10000, 10, 30);
+
+		assertEquals("Student 10000 : 30.0", poli.studentAvg(10000));
+		assertEquals("The average for the course Course0 is: 30.0", poli.courseAvg(10));
+		poli.checkConsistency();
+	}
+
+	@Test
+	void testSimilarCodes() {
+		// the grades of course 110 must not be mixed with the ones of course 10
+		int other;
+		do {
+			other = poli.activate("Filler", "Nobody");
+		} while (other < 110);
+
+		poli.exam(10000, 10, 18);
+		poli.exam(10001, other, 30);
+		poli.exam(10001, 10, 20);
+
+		assertEquals("The average for the course Course0 is: 19.0", poli.courseAvg(10));
+		assertEquals("The average for the course Filler is: 30.0", poli.courseAvg(other));
+		assertEquals("Student 10001 : 25.0", poli.studentAvg(10001));
+		poli.checkConsistency();
+	}
+
+	@Test
+	void testTopK() {
+		poli.register(10000, 10);
+		poli.register(10001, 10);
+		poli.register(10001, 11);
+		poli.register(10001, 12);
+		poli.register(10003, 10);
+		poli.register(10003, 11);
+		poli.exam(10000, 10, 25);
+		poli.exam(10001, 10, 26);
+		poli.exam(10001, 11, 28);
+		poli.exam(10003, 10, 26);
+		poli.exam(10003, 11, 26);
+
+		String[] rank = poli.topStudents(10).split("\n");
+		assertEquals(3, rank.length, "Expected only the students who took exams");
+		assertEquals(poli.topThreeStudents(), String.join("\n", rank));
+		assertEquals(rank[0] + "\n" + rank[1], poli.topStudents(2));
+		assertEquals("", poli.topStudents(0));
+	}
+
+	@Test
+	void testTopUpdatedOnRegister() {
+		poli.register(10000, 10);
+		poli.register(10002, 11);
+		poli.exam(10000, 10, 25); // 25 + 10
+		poli.exam(10002, 11, 24); // 24 + 10
+		assertEquals("First0 Last0 : 35.0", poli.topStudents(1));
+
+		poli.register(10000, 11); // the bonus drops to 5
+		assertEquals("First2 Last2 : 34.0\nFirst0 Last0 : 30.0", poli.topStudents(2));
+		poli.checkConsistency();
+	}
+
+	@Test
+	void testRandomWorkload() {
+		randomWorkload(poli);
+	}
+
+	@Test
+	void testRandomWorkloadCompact() {
+		University compact = new University("Politecnico di Torino", University.StorageMode.COMPACT);
+		for (int i = 0; i < STUDENTS; i++) {
+			compact.enroll("First" + i, "Last" + i);
+		}
+		for (int i = 0; i < COURSES; i++) {
+			compact.activate("Course" + i, "Teacher" + i);
+		}
+		randomWorkload(compact);
+		randomWorkload(poli);
+		assertEquals(poli.topStudents(STUDENTS), compact.topStudents(STUDENTS));
+		for (int course = 10; course < 10 + COURSES; course++) {
+			assertEquals(poli.courseAvg(course), compact.courseAvg(course));
+			assertEquals(poli.listAttendees(course), compact.listAttendees(course));
+		}
+		for (int student = 10000; student < 10000 + STUDENTS; student++) {
+			assertEquals(poli.studyPlan(student), compact.studyPlan(student));
+		}
+	}
+
+	@Test
+	void testExamBatch() {
+		University batched = new University("Politecnico di Torino", University.StorageMode.COMPACT);
+		for (int i = 0; i < STUDENTS; i++) {
+			batched.enroll("First" + i, "Last" + i);
+		}
+		for (int i = 0; i < COURSES; i++) {
+			batched.activate("Course" + i, "Teacher" + i);
+		}
+		Random rnd = new Random(11);
+		int[] students = new int[3000];
+		int[] courses = new int[students.length];
+		int[] grades = new int[students.length];
+		for (int i = 0; i < students.length; i++) {
+			students[i] = 10000 + rnd.nextInt(STUDENTS);
+			courses[i] = 10 + rnd.nextInt(COURSES);
+			grades[i] = 18 + rnd.nextInt(13);
+			poli.register(students[i], courses[i]);
+			batched.register(students[i], courses[i]);
+		}
+		for (int i = 0; i < students.length; i++) {
+			poli.exam(students[i], courses[i], grades[i]);
+		}
+		batched.examBatch(students, courses, grades);
+
+		batched.checkConsistency();
+		assertEquals(poli.topStudents(STUDENTS), batched.topStudents(STUDENTS));
+		for (int student = 10000; student < 10000 + STUDENTS; student++) {
+			assertEquals(poli.studentAvg(student), batched.studentAvg(student));
+		}
+		for (int course = 10; course < 10 + COURSES; course++) {
+			assertEquals(poli.courseAvg(course), batched.courseAvg(course));
+		}
+	}
+
+	@Test
+	void testExamBatchRejected() {
+		poli.register(10000, 10);
+		poli.exam(10000, 10, 25);
+		assertThrows(IllegalArgumentException.class,
+				() -> poli.examBatch(new int[] { 10000, 10001 }, new int[] { 10, 99 }, new int[] { 30, 30 }));
+		assertThrows(IllegalArgumentException.class,
+				() -> poli.examBatch(new int[] { 10000 }, new int[] { 10, 11 }, new int[] { 30 }));
+		// nothing was recorded
+		assertEquals("Student 10000 : 25.0", poli.studentAvg(10000));
+		poli.checkConsistency();
+	}
+
+	@Test
+	void testHistogram() {
+		poli.register(10000, 10);
+		poli.register(10001, 10);
+		poli.exam(10000, 10, 18);
+		poli.exam(10001, 10, 0);
+		poli.exam(10000, 10, 30);
+
+		int[] expected = new int[31];
+		expected[0] = 1;
+		expected[30] = 1;
+		assertArrayEquals(expected, poli.courseHistogram(10));
+		assertEquals(1, poli.studentHistogram(10000)[30]);
+		assertEquals(0, poli.coursePercentile(10, 50));
+		assertEquals(30, poli.coursePercentile(10, 51));
+		assertEquals(0, poli.coursePercentile(10, 0));
+
+		assertArrayEquals(new int[31], poli.courseHistogram(11));
+		assertArrayEquals(new int[31], poli.courseHistogram(99));
+		assertEquals(-1, poli.coursePercentile(11, 50));
+		assertThrows(IllegalArgumentException.class, () -> poli.coursePercentile(10, 101));
+		poli.exam(10000, 10, 31); // not recorded, as for an unknown student
+		poli.exam(10000, 10, -1);
+		poli.exam(99999, 10, 42);
+		assertThrows(IllegalArgumentException.class,
+				() -> poli.examBatch(new int[] { 10000 }, new int[] { 10 }, new int[] { 42 }));
+		assertArrayEquals(expected, poli.courseHistogram(10));
+		poli.checkConsistency();
+	}
+
+	@Test
+	void testPercentiles() {
+		randomWorkload(poli);
+		Random rnd = new Random(7);
+		for (int i = 0; i < 2000; i++) {
+			// overwrite some grades, including low ones
+			poli.exam(10000 + rnd.nextInt(STUDENTS), 10 + rnd.nextInt(COURSES), rnd.nextInt(31));
+		}
+		poli.checkConsistency();
+		for (int course = 10; course < 10 + COURSES; course++) {
+			int[] histogram = poli.courseHistogram(course);
+			int[] sorted = IntStream.range(0, 31).flatMap(g -> IntStream.generate(() -> g).limit(histogram[g])).toArray();
+			for (double percent : new double[] { 1, 10, 25, 50, 75, 90, 99, 100 }) {
+				int rank = Math.max(1, (int) Math.ceil(sorted.length * percent / 100));
+				assertEquals(sorted[rank - 1], poli.coursePercentile(course, percent));
+			}
+		}
+	}
+
+	private static void randomWorkload(University poli) {
+		Random rnd = new Random(42);
+		Map<Long, Integer> shadow = new HashMap<>(); // student << 32 | course -> grade
+
+		for (int i = 0; i < 5000; i++) {
+			int student = 10000 + rnd.nextInt(STUDENTS);
+			int course = 10 + rnd.nextInt(COURSES);
+			poli.register(student, course);
+			if (rnd.nextBoolean()) {
+				int grade = 18 + rnd.nextInt(13);
+				poli.exam(student, course, grade);
+				shadow.put((long) student << 32 | course, grade);
+			}
+		}
+		poli.checkConsistency();
+
+		for (int student = 10000; student < 10000 + STUDENTS; student++) {
+			assertEquals(expectedStudentAvg(shadow, student), poli.studentAvg(student));
+		}
+	}
+
+	private static String expectedStudentAvg(Map<Long, Integer> shadow, int student) {
+		double sum = 0;
+		int count = 0;
+		for (Map.Entry<Long, Integer> e : shadow.entrySet()) {
+			if ((int) (e.getKey() >> 32) == student) {
+				sum += e.getValue();
+				count++;
+			}
+		}
+		if (count == 0) {
+			return "Student " + student + " hasn't taken any exams";
+		}
+		return "Student " + student + " : " + String.format("%.1f", sum / count);
+	}
+}
@@ -0,0 +1,127 @@
+package university;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Tests for the asynchronous event log
+ */
+class TestAsyncLog {
+
+	private final List<String> messages = new ArrayList<>();
+
+	@BeforeEach
+	void setUp() {
+		University.logger.setFilter(rec -> {
+			synchronized (messages) {
+				messages.add(rec.getMessage());
+			}
+			return false;
+		});
+		University.logger.setLevel(Level.ALL);
+	}
+
+	@AfterEach
+	void tearDown() {
+		University.logger.setFilter(null);
+		University.logger.setLevel(Level.OFF);
+	}
+
+	private static Thread thread(String name) {
+		for (Thread t : Thread.getAllStackTraces().keySet()) {
+			if (t.getName().equals(name)) {
+				return t;
+			}
+		}
+		return null;
+	}
+
+	private static Thread.State awaitState(Thread t, Thread.State expected) throws InterruptedException {
+		for (int i = 0; i < 500 && t.getState() != expected; i++) {
+			Thread.sleep(10);
+		}
+		return t.getState();
+	}
+
+	@Test
+	void testAsyncLogging() {
+		University poli = new University("Politecnico di Torino");
+		poli.setAsyncLogging(true);
+		try {
+			poli.enroll("Mario", "Rossi");
+			poli.activate("Object Oriented Programming", "James Gosling");
+			poli.register(10000, 10);
+			poli.exam(10000, 10, 27);
+			poli.flushLog();
+
+			assertEquals(4, messages.size(), "Missing log records");
+			assertEquals("Student 10000 took an exam in course 10 with grade 27", messages.get(3));
+		} finally {
+			poli.setAsyncLogging(false);
+		}
+	}
+
+	@Test
+	void testFullBuffer() throws InterruptedException {
+		Logger slow = Logger.getLogger("University.slow");
+		slow.setUseParentHandlers(false);
+		slow.setFilter(rec -> {
+			try {
+				Thread.sleep(1);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return University.logger.getFilter().isLoggable(rec);
+		});
+		EventLog log = new EventLog(slow, 4, "University-log-full", this);
+		Thread[] producers = new Thread[4];
+		for (int p = 0; p < producers.length; p++) {
+			int producer = p;
+			producers[p] = new Thread(() -> {
+				for (int i = 0; i < 50; i++) {
+					log.append(EventLog.Kind.REGISTER, producer, i, 0, null, null);
+				}
+			});
+			producers[p].start();
+		}
+		// the producers wait for free slots without spinning
+		assertEquals(Thread.State.WAITING, awaitState(producers[0], Thread.State.WAITING));
+		for (Thread producer : producers) {
+			producer.join();
+		}
+		log.flush();
+		assertEquals(200, messages.size());
+
+		// when there is nothing to log, the background thread waits without a timeout
+		Thread drainer = thread("University-log-full");
+		assertEquals(Thread.State.WAITING, awaitState(drainer, Thread.State.WAITING));
+		log.close();
+		assertFalse(drainer.isAlive());
+		log.close();
+	}
+
+	@Test
+	void testUnreachable() throws InterruptedException {
+		University poli = new University("Unreachable");
+		poli.setAsyncLogging(true);
+		poli.enroll("Mario", "Rossi");
+		poli.flushLog();
+		assertEquals(List.of("New student enrolled: 10000, Mario Rossi"), messages);
+		Thread drainer = thread("University-log-Unreachable");
+		assertNotNull(drainer);
+
+		poli = null;
+		for (int i = 0; i < 100 && drainer.isAlive(); i++) {
+			System.gc();
+			drainer.join(50);
+		}
+		assertFalse(drainer.isAlive(), "The log thread outlived its university");
+	}
+}
@@ -0,0 +1,164 @@
+package university;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Stress tests for {@link ConcurrentUniversity}
+ */
+class TestConcurrency {
+	private static final int THREADS = 8;
+	private static final int PER_THREAD = 2000;
+	private static final int COURSES = 50;
+
+	private ExecutorService pool;
+
+	@BeforeEach
+	void setUp() {
+		University.logger.setLevel(Level.OFF);
+	}
+
+	private void runAll(List<Runnable> tasks) throws Exception {
+		pool = Executors.newFixedThreadPool(THREADS);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (Runnable task : tasks) {
+				futures.add(pool.submit(task));
+			}
+			for (Future<?> f : futures) {
+				f.get(60, TimeUnit.SECONDS);
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	@Test
+	void testNoDuplicateIds() throws Exception {
+		ConcurrentUniversity poli = new ConcurrentUniversity("Politecnico di Torino");
+		Set<Integer> ids = ConcurrentHashMap.newKeySet();
+		List<Runnable> tasks = new ArrayList<>();
+		for (int t = 0; t < THREADS; t++) {
+			tasks.add(() -> {
+				for (int i = 0; i < PER_THREAD; i++) {
+					assertTrue(ids.add(poli.enroll("First", "Last")), "Duplicate student id");
+				}
+			});
+		}
+		runAll(tasks);
+
+		assertEquals(THREADS * PER_THREAD, ids.size());
+		for (int id = 10000; id < 10000 + THREADS * PER_THREAD; id++) {
+			assertTrue(ids.contains(id), "Missing student id " + id);
+		}
+	}
+
+	@Test
+	void testNoLostRegistrations() throws Exception {
+		for (University.StorageMode mode : University.StorageMode.values()) {
+			ConcurrentUniversity poli = new ConcurrentUniversity("Politecnico di Torino", mode);
+			for (int i = 0; i < COURSES; i++) {
+				poli.activate("Course" + i, "Teacher" + i);
+			}
+			Set<Long> expected = ConcurrentHashMap.newKeySet();
+			List<Runnable> tasks = new ArrayList<>();
+			for (int t = 0; t < THREADS; t++) {
+				final int seed = t;
+				tasks.add(() -> {
+					Random rnd = new Random(seed);
+					List<Integer> mine = new ArrayList<>();
+					for (int i = 0; i < PER_THREAD; i++) {
+						if (mine.isEmpty() || rnd.nextInt(4) == 0) {
+							mine.add(poli.enroll("First" + seed, "Last" + i));
+						}
+						int student = mine.get(rnd.nextInt(mine.size()));
+						int course = 10 + rnd.nextInt(COURSES);
+						poli.register(student, course);
+						poli.exam(student, course, 18 + rnd.nextInt(13));
+						expected.add((long) student << 32 | course);
+						// concurrent readers
+						assertNotNull(poli.studentAvg(student));
+						assertNotNull(poli.listAttendees(course));
+						assertNotNull(poli.studyPlan(student));
+						assertNotNull(poli.topThreeStudents());
+						assertNotNull(poli.courseAvg(course));
+						assertTrue(poli.coursePercentile(course, 50) >= 18);
+						assertFalse(poli.examHistory(student, course).isEmpty());
+					}
+				});
+			}
+			runAll(tasks);
+
+			poli.checkConsistency();
+			Set<Long> actual = new HashSet<>();
+			for (int course = 10; course < 10 + COURSES; course++) {
+				String attendees = poli.listAttendees(course);
+				if (attendees.isEmpty()) continue;
+				for (String row : attendees.split("\n")) {
+					int student = Integer.parseInt(row.substring(0, row.indexOf(' ')));
+					actual.add((long) student << 32 | course);
+				}
+			}
+			assertEquals(expected, actual, "Lost registrations with " + mode + " storage");
+		}
+	}
+
+	@Test
+	void testIndependentWriters() throws Exception {
+		CountDownLatch blocked = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		ConcurrentUniversity poli = new ConcurrentUniversity("Politecnico di Torino") {
+			@Override
+			long lockShared() {
+				if (Thread.currentThread().getName().equals("slow")) {
+					blocked.countDown();
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				return super.lockShared();
+			}
+		};
+		int first = poli.enroll("Mario", "Rossi");
+		int second = poli.enroll("Francesca", "Verdi");
+		int oop = poli.activate("Object Oriented Programming", "James Gosling");
+		int db = poli.activate("Databases", "Edgar Codd");
+		poli.register(second, db);
+
+		// the slow writer holds the locks of its student and course
+		Thread slow = new Thread(() -> poli.register(first, oop), "slow");
+		slow.start();
+		blocked.await();
+		try {
+			pool = Executors.newSingleThreadExecutor();
+			Future<String> other = pool.submit(() -> {
+				poli.exam(second, db, 28);
+				return poli.studentAvg(second) + "\n" + poli.courseAvg(db);
+			});
+			assertEquals("Student " + second + " : 28.0\nThe average for the course Databases is: 28.0",
+					other.get(10, TimeUnit.SECONDS), "Independent updates are serialized");
+		} finally {
+			release.countDown();
+			slow.join();
+			pool.shutdownNow();
+		}
+		assertEquals(first + " Mario Rossi", poli.listAttendees(oop));
+		poli.checkConsistency();
+	}
+}
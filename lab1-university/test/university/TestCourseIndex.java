@@ -0,0 +1,90 @@
+package university;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.stream.IntStream;
+
+/**
+ * Tests for the course lookup by teacher and title
+ */
+class TestCourseIndex {
+
+	@TempDir
+	Path dir;
+
+	private University poli;
+
+	@BeforeEach
+	void setUp() {
+		University.logger.setLevel(Level.OFF);
+		poli = new University("Politecnico di Torino");
+		poli.activate("Macro Economics", "Paul Krugman");
+		poli.activate("Object Oriented Programming", "James Gosling");
+		poli.activate("Micro Economics", "Paul Krugman");
+		poli.activate("Programmazione a oggetti", "Marco Torchiano");
+		poli.activate("Ab", "Nobody");
+	}
+
+	@Test
+	void testByTeacher() {
+		assertArrayEquals(new int[] { 10, 12 }, poli.coursesByTeacher("Paul Krugman"));
+		assertArrayEquals(new int[] { 11 }, poli.coursesByTeacher("James Gosling"));
+		assertArrayEquals(new int[0], poli.coursesByTeacher("Linus Torvalds"));
+	}
+
+	@Test
+	void testByTitle() {
+		assertArrayEquals(new int[] { 10, 12 }, poli.coursesByTitle("economics"));
+		assertArrayEquals(new int[] { 11, 13 }, poli.coursesByTitle("PROGRAMM"));
+		assertArrayEquals(new int[] { 11 }, poli.coursesByTitle("Oriented Prog"));
+		assertArrayEquals(new int[0], poli.coursesByTitle("Physics"));
+		// all the trigrams are present, but not in sequence
+		assertArrayEquals(new int[0], poli.coursesByTitle("Economics Macro"));
+		// shorter than a trigram
+		assertArrayEquals(new int[] { 10, 12 }, poli.coursesByTitle("cr"));
+		assertArrayEquals(new int[] { 14 }, poli.coursesByTitle("ab"));
+		assertEquals(5, poli.coursesByTitle("").length);
+	}
+
+	@Test
+	void testAfterImport() throws IOException {
+		Path file = dir.resolve("poli.csv");
+		poli.exportTo(file);
+		University copy = new University("Copy", University.StorageMode.COMPACT);
+		copy.importFrom(file);
+		assertArrayEquals(poli.coursesByTeacher("Paul Krugman"), copy.coursesByTeacher("Paul Krugman"));
+		assertArrayEquals(poli.coursesByTitle("programm"), copy.coursesByTitle("programm"));
+
+		Path snapshot = dir.resolve("poli.snapshot");
+		poli.saveSnapshot(snapshot);
+		copy = University.loadSnapshot(snapshot);
+		assertArrayEquals(poli.coursesByTitle("economics"), copy.coursesByTitle("economics"));
+	}
+
+	@Test
+	void testMatchesScan() {
+		String[] words = { "Analysis", "Physics", "Chemistry", "Programming", "Networks", "Databases", "Advanced", "Applied" };
+		Random rnd = new Random(5);
+		University large = new University("Large", University.StorageMode.COMPACT);
+		String[] titles = new String[100_000];
+		for (int i = 0; i < titles.length; i++) {
+			titles[i] = words[rnd.nextInt(words.length)] + " " + words[rnd.nextInt(words.length)] + " " + i;
+			large.activate(titles[i], "Teacher " + (i % 1000));
+		}
+		for (String text : new String[] { "applied phys", "Networks 99", "base", "ced Ana", "12345" }) {
+			int[] found = large.coursesByTitle(text);
+			int[] expected = IntStream.range(0, titles.length)
+					.filter(i -> titles[i].toLowerCase().contains(text.toLowerCase()))
+					.map(i -> 10 + i).toArray();
+			assertArrayEquals(expected, found, text);
+		}
+		assertEquals(100, large.coursesByTeacher("Teacher 7").length);
+	}
+}
@@ -0,0 +1,117 @@
+package university;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.logging.Level;
+
+/**
+ * Tests for the bulk import and export of university data
+ */
+class TestImportExport {
+
+	@TempDir
+	Path dir;
+
+	private University poli;
+
+	@BeforeEach
+	void setUp() {
+		University.logger.setLevel(Level.OFF);
+		poli = new University("Politecnico di Torino");
+		poli.enroll("Mario", "Rossi");
+		poli.enroll("Giuseppe", "Verdi");
+		poli.enroll("Anna; \"Nina\"", "Multi\nLine");
+		poli.activate("Macro Economics", "Paul Krugman");
+		poli.activate("Object Oriented Programming", "James Gosling");
+		poli.register(10000, 10);
+		poli.register(10001, 10);
+		poli.register(10001, 11);
+		poli.register(10002, 11);
+		poli.exam(10000, 10, 27);
+		poli.exam(10001, 10, 30);
+		poli.exam(10001, 11, 28);
+	}
+
+	@Test
+	void testRoundTrip() throws IOException {
+		for (University.StorageMode mode : University.StorageMode.values()) {
+			Path file = dir.resolve("export-" + mode + ".csv");
+			poli.exportTo(file);
+
+			University copy = new University("Copy", mode);
+			copy.importFrom(file);
+			copy.checkConsistency();
+
+			for (int id = 10000; id <= 10002; id++) {
+				assertEquals(poli.student(id), copy.student(id));
+				assertEquals(poli.studentAvg(id), copy.studentAvg(id));
+				assertEquals(sortedLines(poli.studyPlan(id)), sortedLines(copy.studyPlan(id)));
+			}
+			for (int code = 10; code <= 11; code++) {
+				assertEquals(poli.course(code), copy.course(code));
+				assertEquals(poli.courseAvg(code), copy.courseAvg(code));
+				assertEquals(sortedLines(poli.listAttendees(code)), sortedLines(copy.listAttendees(code)));
+			}
+			assertEquals(poli.topThreeStudents(), copy.topThreeStudents());
+			assertEquals(10003, copy.enroll("Next", "Student"));
+		}
+	}
+
+	@Test
+	void testImportAppends() throws IOException {
+		Path file = dir.resolve("more.csv");
+		Files.writeString(file, "S;10003;Laura;Bianchi\nC;12;Virology;Roberto Burioni\nR;10003;12\nE;10003;12;30\n");
+
+		poli.importFrom(file);
+
+		assertEquals("10003 Laura Bianchi", poli.student(10003));
+		assertEquals("12,Virology,Roberto Burioni", poli.course(12));
+		assertTrue(poli.topThreeStudents().startsWith("Laura Bianchi : 40.0"));
+		poli.checkConsistency();
+	}
+
+	@Test
+	void testMalformed() throws IOException {
+		Path file = dir.resolve("bad.csv");
+		Files.writeString(file, "S;10003;Laura;Bianchi\nR;10003;99\n");
+
+		IOException e = assertThrows(IOException.class, () -> poli.importFrom(file));
+		assertTrue(e.getMessage().contains("Line 2"), "Missing line number in " + e.getMessage());
+		assertEquals("10003 Laura Bianchi", poli.student(10003));
+
+		Files.writeString(file, "S;10010;Wrong;Id\n");
+		assertThrows(IOException.class, () -> poli.importFrom(file));
+
+		// the lines inside quoted fields are counted, whatever their line break
+		Files.writeString(file, "S;10004;\"Two\r\nLines\";\"Three\rOld\nLines\"\r\n\r\nR;10004;99\r\n");
+		e = assertThrows(IOException.class, () -> poli.importFrom(file));
+		assertTrue(e.getMessage().contains("Line 6"), "Wrong line number in " + e.getMessage());
+		assertEquals("10004 Two\r\nLines Three\rOld\nLines", poli.student(10004));
+	}
+
+	@Test
+	void testLineBreaks() throws IOException {
+		University breaks = new University("Breaks");
+		breaks.enroll("Carriage\rReturn", "Windows\r\nLine;\"Break\"");
+		breaks.activate("Trailing\r", "\n\rLeading");
+		breaks.register(10000, 10);
+		Path file = dir.resolve("breaks.csv");
+		breaks.exportTo(file);
+
+		University copy = new University("Copy");
+		copy.importFrom(file);
+		assertEquals(breaks.student(10000), copy.student(10000));
+		assertEquals(breaks.course(10), copy.course(10));
+		assertEquals(breaks.listAttendees(10), copy.listAttendees(10));
+	}
+
+	private static String sortedLines(String s) {
+		return s.lines().sorted().toList().toString();
+	}
+}
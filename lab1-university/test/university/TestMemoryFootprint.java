@@ -0,0 +1,92 @@
+package university;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.logging.Level;
+
+import org.openjdk.jol.info.GraphLayout;
+
+/**
+ * Compares the retained heap of the two storage layouts.
+ * The measures are printed only with {@code -Duniversity.footprint.details=true}.
+ */
+class TestMemoryFootprint {
+	private static final int STUDENTS = 2_000;
+	private static final int COURSES = 100;
+	private static final int PLAN = 8;
+	private static final boolean DETAILS = Boolean.getBoolean("university.footprint.details");
+
+	@Test
+	void testCompactIsSmaller() {
+		University.logger.setLevel(Level.OFF);
+		long hashed = footprint(University.StorageMode.HASHED);
+		long compact = footprint(University.StorageMode.COMPACT);
+
+		if (DETAILS) {
+			System.out.printf("Footprint for %d students, %d courses, %d registrations%n",
+					STUDENTS, COURSES, STUDENTS * PLAN);
+			System.out.printf("  HASHED : %,12d bytes%n", hashed);
+			System.out.printf("  COMPACT: %,12d bytes (%.0f%%)%n", compact, 100.0 * compact / hashed);
+		}
+
+		assertTrue(compact < hashed, "Compact storage should take less memory");
+	}
+
+	@Test
+	void testRegistrationCost() {
+		University.logger.setLevel(Level.OFF);
+		for (University.StorageMode mode : University.StorageMode.values()) {
+			// each registration is stored both for the student and for the course
+			double perRegistration = (footprint(mode, PLAN) - footprint(mode, 0)) / (2.0 * STUDENTS * PLAN);
+			if (DETAILS) {
+				System.out.printf("  %-7s: %5.1f bytes per registration and direction%n", mode, perRegistration);
+			}
+			assertTrue(perRegistration < 12, mode + " registrations should be stored as primitive ints");
+		}
+	}
+
+	@Test
+	void testHistoryCost() {
+		GradeIndex plain = new GradeIndex(10000);
+		GradeIndex studentGrades = new GradeIndex(10000);
+		GradeIndex courseGrades = new GradeIndex(10);
+		TermHistory history = new TermHistory(10000, 10);
+		for (int i = 0; i < STUDENTS; i++) {
+			for (int j = 0; j < PLAN; j++) {
+				int course = 10 + (i * 7 + j * 13) % COURSES;
+				int grade = 18 + (i + j) % 13;
+				plain.put(10000 + i, course, grade);
+				studentGrades.put(10000 + i, course, grade);
+				courseGrades.put(course, 10000 + i, grade);
+				history.exam(10000 + i, course, grade, studentGrades.row(10000 + i), courseGrades.row(course));
+			}
+		}
+		// the history links its entries to the grades of the students
+		long links = GraphLayout.parseInstance(studentGrades).totalSize() - GraphLayout.parseInstance(plain).totalSize();
+		double perExam = (GraphLayout.parseInstance(history).totalSize() + links) / (double) (STUDENTS * PLAN);
+		assertTrue(perExam < 40, "History takes " + perExam + " bytes per exam");
+	}
+
+	private static long footprint(University.StorageMode mode) {
+		return footprint(mode, PLAN);
+	}
+
+	private static long footprint(University.StorageMode mode, int plan) {
+		University poli = new University("Politecnico di Torino", mode);
+		for (int i = 0; i < COURSES; i++) {
+			poli.activate("Course" + i, "Teacher" + i);
+		}
+		for (int i = 0; i < STUDENTS; i++) {
+			int id = poli.enroll("First" + i, "Last" + i);
+			for (int j = 0; j < plan; j++) {
+				poli.register(id, 10 + (i * 7 + j * 13) % COURSES);
+			}
+		}
+		GraphLayout layout = GraphLayout.parseInstance(poli);
+		if (DETAILS) {
+			System.out.println(layout.toFootprint());
+		}
+		return layout.totalSize();
+	}
+}
@@ -0,0 +1,136 @@
+package university;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.logging.Level;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Tests for the operation metrics
+ */
+class TestMetrics {
+
+	private University poli;
+
+	@BeforeEach
+	void setUp() {
+		University.logger.setLevel(Level.OFF);
+		poli = new University("Politecnico di Torino");
+	}
+
+	@AfterEach
+	void tearDown() {
+		poli.setMetrics(false);
+	}
+
+	private void workload() {
+		int s = poli.enroll("Mario", "Rossi");
+		int c = poli.activate("Macro Economics", "Paul Krugman");
+		poli.register(s, c);
+		poli.exam(s, c, 27);
+		poli.exam(s, c, 28);
+		poli.studentAvg(s);
+		poli.courseAvg(c);
+		poli.courseAvg(99);
+		poli.topThreeStudents();
+	}
+
+	@Test
+	void testDisabled() {
+		workload();
+		assertEquals("", poli.metricsReport());
+	}
+
+	@Test
+	void testCounts() {
+		poli.setMetrics(true);
+		workload();
+		String[] rows = poli.metricsReport().split("\n");
+		assertEquals(9, rows.length);
+		assertTrue(rows[0].startsWith("operation"));
+		assertCount(rows, "enroll", 1);
+		assertCount(rows, "register", 1);
+		assertCount(rows, "exam", 2);
+		assertCount(rows, "studentAvg", 1);
+		assertCount(rows, "courseAvg", 2);
+		assertCount(rows, "topStudents", 1);
+
+		poli.setMetrics(false);
+		poli.setMetrics(true);
+		assertCount(poli.metricsReport().split("\n"), "exam", 0);
+	}
+
+	private static void assertCount(String[] rows, String operation, long count) {
+		for (String row : rows) {
+			String[] fields = row.trim().split("\\s+");
+			if (fields[0].equals(operation)) {
+				assertEquals(count, Long.parseLong(fields[1]), operation);
+				return;
+			}
+		}
+		fail("No row for " + operation);
+	}
+
+	@Test
+	void testJmx() throws Exception {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName exam = new ObjectName("university:type=Metrics,university=\"Politecnico di Torino\",operation=exam");
+		poli.setMetrics(true);
+		workload();
+		assertEquals(2L, server.getAttribute(exam, "Count"));
+		double p99 = (Double) server.getAttribute(exam, "P99Micros");
+		double max = (Double) server.getAttribute(exam, "MaxMicros");
+		assertTrue(p99 > 0 && p99 <= max, "p99 " + p99 + " max " + max);
+
+		poli.setMetrics(false);
+		assertFalse(server.isRegistered(exam));
+	}
+
+	@Test
+	void testJmxConflict() throws Exception {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName enroll = new ObjectName("university:type=Metrics,university=\"Twin\",operation=enroll");
+		ObjectName exam = new ObjectName("university:type=Metrics,university=\"Twin\",operation=exam");
+		// another bean already uses the name of one of the operations
+		server.registerMBean(new javax.management.timer.Timer(), exam);
+		try {
+			University twin = new University("Twin");
+			twin.setMetrics(true);
+			assertFalse(server.isRegistered(enroll), "Partial registration left behind");
+			twin.exam(10000, 10, 30);
+			assertNotEquals("", twin.metricsReport(), "Metrics still collected without JMX");
+			twin.setMetrics(false);
+		} finally {
+			server.unregisterMBean(exam);
+		}
+
+		University first = new University("Twin");
+		University second = new University("Twin");
+		first.setMetrics(true);
+		second.setMetrics(true);
+		second.setMetrics(false);
+		assertTrue(server.isRegistered(enroll), "The beans of the first university were removed");
+		first.setMetrics(false);
+		assertFalse(server.isRegistered(enroll));
+	}
+
+	@Test
+	void testBuckets() {
+		long previous = -1;
+		for (long nanos : new long[] { 0, 1, 7, 8, 9, 15, 16, 17, 1000, 123_456, 1L << 36, Long.MAX_VALUE }) {
+			int bucket = Metrics.bucket(nanos);
+			assertTrue(bucket >= previous, "buckets must grow with the latency");
+			previous = bucket;
+			if (nanos < 1L << 36) {
+				long upper = Metrics.upperBound(bucket);
+				assertTrue(nanos <= upper && upper - nanos <= nanos / 8, nanos + " in bucket up to " + upper);
+			}
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package university;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.logging.Level;
+
+/**
+ * Checks that registrations are listed in id order with both storage layouts
+ */
+class TestRegistrationOrder {
+
+	@Test
+	void testIntSetMatchesTreeSet() {
+		Random rnd = new Random(7);
+		IntSet set = new IntSet();
+		TreeSet<Integer> expected = new TreeSet<>();
+		for (int i = 0; i < 20_000; i++) {
+			// mostly increasing values, as ids are, with some going back
+			int value = rnd.nextInt(4) == 0 ? rnd.nextInt(i + 1) : i + rnd.nextInt(3);
+			assertEquals(expected.add(value), set.add(value), "add " + value);
+		}
+		assertEquals(expected.size(), set.size());
+		PrimitiveIterator.OfInt values = set.iterator();
+		for (int value : expected) {
+			assertTrue(set.contains(value));
+			assertEquals(value, values.nextInt());
+		}
+		assertFalse(values.hasNext());
+		assertFalse(set.contains(-1));
+	}
+
+	@Test
+	void testOrderedListingsHashed() {
+		checkOrderedListings(University.StorageMode.HASHED);
+	}
+
+	@Test
+	void testOrderedListingsCompact() {
+		checkOrderedListings(University.StorageMode.COMPACT);
+	}
+
+	private static void checkOrderedListings(University.StorageMode mode) {
+		University.logger.setLevel(Level.OFF);
+		University poli = new University("Politecnico di Torino", mode);
+		for (int i = 0; i < 40; i++) {
+			poli.enroll("First" + i, "Last" + i);
+			poli.activate("Course" + i, "Teacher" + i);
+		}
+		for (int i = 39; i >= 0; i -= 3) {
+			poli.register(10000 + i, 10);
+			poli.register(10000, 10 + i);
+		}
+
+		String[] attendees = poli.listAttendees(10).split("\n");
+		String[] plan = poli.studyPlan(10000).split("\n");
+		assertEquals(14, attendees.length);
+		assertEquals(14, plan.length);
+		for (int i = 0; i < attendees.length; i++) {
+			int expected = 39 - 3 * (attendees.length - 1 - i);
+			assertEquals(poli.student(10000 + expected), attendees[i]);
+			assertEquals(poli.course(10 + expected), plan[i]);
+		}
+	}
+}
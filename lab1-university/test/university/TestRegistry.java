@@ -0,0 +1,102 @@
+package university;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.Level;
+
+/**
+ * Compares the cross-campus aggregates with a single university holding all the data
+ */
+class TestRegistry {
+	private static final int CAMPUSES = 12;
+	private static final String[] TITLES = { "Analisi I", "Fisica I", "Informatica", "Chimica" };
+
+	private UniversityRegistry registry;
+	private University merged;
+
+	@BeforeEach
+	void setUp() {
+		University.logger.setLevel(Level.OFF);
+		registry = new UniversityRegistry(new ForkJoinPool(4));
+		merged = new University("Merged");
+		Random rnd = new Random(3);
+		for (int c = 0; c < CAMPUSES; c++) {
+			University campus = c % 2 == 0 ? new University("Campus" + c) : new ConcurrentUniversity("Campus" + c);
+			registry.add(campus);
+			populate(campus, merged, new Random(rnd.nextLong()), c);
+		}
+	}
+
+	// same operations on the campus and on the merged university, with ids shifted
+	private static void populate(University campus, University merged, Random rnd, int c) {
+		int students = 20 + rnd.nextInt(30);
+		int studentShift = merged.enrolled();
+		int courseShift = -1;
+		for (int i = 0; i < TITLES.length; i++) {
+			int code = campus.activate(TITLES[i], "Teacher" + c + i);
+			int mergedCode = merged.activate(TITLES[i], "Teacher" + c + i);
+			courseShift = mergedCode - code;
+		}
+		for (int i = 0; i < students; i++) {
+			campus.enroll("First" + c + "_" + i, "Last" + i);
+			merged.enroll("First" + c + "_" + i, "Last" + i);
+		}
+		for (int i = 0; i < students * 3; i++) {
+			int student = 10000 + rnd.nextInt(students);
+			int course = 10 + rnd.nextInt(TITLES.length);
+			campus.register(student, course);
+			merged.register(student + studentShift, course + courseShift);
+			if (rnd.nextInt(3) > 0) {
+				// few distinct grades, so that ties across campuses are frequent
+				int grade = 18 + 4 * rnd.nextInt(4);
+				campus.exam(student, course, grade);
+				merged.exam(student + studentShift, course + courseShift, grade);
+			}
+		}
+	}
+
+	@Test
+	void testTotalEnrolment() {
+		assertEquals(merged.enrolled(), registry.totalEnrolment());
+		assertEquals(CAMPUSES, registry.size());
+	}
+
+	@Test
+	void testCourseAvgByTitle() {
+		for (String title : TITLES) {
+			String expected = merged.gradeTotals(title)[1] == 0
+					? "No student has taken the exam in " + title
+					: String.format("The average for the course %s is: %.1f", title,
+							(double) merged.gradeTotals(title)[0] / merged.gradeTotals(title)[1]);
+			assertEquals(expected, registry.courseAvg(title));
+		}
+		assertEquals("No student has taken the exam in Latino", registry.courseAvg("Latino"));
+		assertEquals("No student has taken the exam in Fisica", registry.courseAvg("Fisica"));
+	}
+
+	@Test
+	void testTopStudents() {
+		for (int k : new int[] { -1, 0, 1, 3, 10, 100, 10_000 }) {
+			assertEquals(merged.topStudents(k), registry.topStudents(k), "top " + k);
+		}
+	}
+
+	@Test
+	void testLookup() {
+		assertEquals("Campus3", registry.get("Campus3").getName());
+		assertNull(registry.get("Campus99"));
+		assertThrows(IllegalArgumentException.class, () -> registry.add(new University("Campus3")));
+	}
+
+	@Test
+	void testEmpty() {
+		UniversityRegistry empty = new UniversityRegistry();
+		assertEquals(0, empty.totalEnrolment());
+		assertEquals("", empty.topStudents(3));
+		assertEquals("No student has taken the exam in Fisica I", empty.courseAvg("Fisica I"));
+	}
+}
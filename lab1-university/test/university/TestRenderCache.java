@@ -0,0 +1,104 @@
+package university;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.logging.Level;
+
+/**
+ * Tests for the cache of rendered lists
+ */
+class TestRenderCache {
+
+	private University poli;
+
+	@BeforeEach
+	void setUp() {
+		University.logger.setLevel(Level.OFF);
+		poli = new University("Politecnico di Torino");
+		poli.enroll("Mario", "Rossi");
+		poli.enroll("Giuseppe", "Verdi");
+		poli.activate("Macro Economics", "Paul Krugman");
+		poli.activate("Object Oriented Programming", "James Gosling");
+		poli.register(10000, 10);
+		poli.register(10001, 10);
+	}
+
+	@Test
+	void testHitsAndMisses() {
+		String first = poli.listAttendees(10);
+		String second = poli.listAttendees(10);
+
+		assertSame(first, second, "Expected the cached list");
+		assertEquals(1, poli.getRenderCacheMisses());
+		assertEquals(1, poli.getRenderCacheHits());
+	}
+
+	@Test
+	void testInvalidatedByRegister() {
+		String plan = poli.studyPlan(10001);
+		String attendees = poli.listAttendees(11);
+		String other = poli.listAttendees(10);
+
+		poli.register(10001, 11);
+
+		assertNotEquals(plan, poli.studyPlan(10001), "Study plan not updated");
+		assertNotEquals(attendees, poli.listAttendees(11), "Attendees not updated");
+		assertSame(other, poli.listAttendees(10), "Unrelated list should stay cached");
+		assertTrue(poli.studyPlan(10001).contains("Object Oriented Programming"), "Missing new course");
+	}
+
+	@Test
+	void testBudget() {
+		poli.setRenderCacheBudget(300);
+		poli.listAttendees(10);
+		poli.studyPlan(10000);
+		poli.studyPlan(10001); // evicts the least recently used list
+
+		poli.listAttendees(10);
+		assertEquals(4, poli.getRenderCacheMisses());
+		assertTrue(poli.renderCacheStats().contains("evictions=3"), poli.renderCacheStats());
+
+		poli.setRenderCacheBudget(0);
+		poli.studyPlan(10000);
+		poli.studyPlan(10000);
+		assertEquals(0, poli.getRenderCacheHits());
+	}
+
+	@Test
+	void testGenerationPerKey() {
+		RenderCache cache = new RenderCache(1 << 20);
+		long course = RenderCache.key(RenderCache.ATTENDEES, 10);
+		long other = RenderCache.key(RenderCache.ATTENDEES, 11);
+
+		// a change to another course does not discard the list being rendered
+		long generation = cache.generation(course);
+		cache.invalidate(other);
+		cache.put(course, "list", generation);
+		assertEquals("list", cache.get(course));
+
+		// a change to the same course does
+		generation = cache.generation(course);
+		cache.invalidate(course);
+		assertNull(cache.get(course), "Outdated list returned");
+		cache.put(course, "stale", generation);
+		assertNull(cache.get(course), "List rendered before the change was stored");
+		assertTrue(cache.stats().contains("bytes=0"), cache.stats());
+	}
+
+	@Test
+	void testStreamingNotCounted() throws Exception {
+		StringBuilder out = new StringBuilder();
+		poli.listAttendees(10, out);
+		poli.studyPlan(10000, out);
+		assertEquals(0, poli.getRenderCacheMisses());
+
+		String cached = poli.listAttendees(10);
+		out.setLength(0);
+		poli.listAttendees(10, out);
+		assertEquals(cached, out.toString());
+		assertEquals(0, poli.getRenderCacheHits());
+		assertEquals(1, poli.getRenderCacheMisses());
+	}
+}
@@ -0,0 +1,98 @@
+package university;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Level;
+
+/**
+ * Tests for the socket server, over the loopback interface
+ */
+class TestServer {
+
+	private ConcurrentUniversity poli;
+	private UniversityServer server;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		University.logger.setLevel(Level.OFF);
+		poli = new ConcurrentUniversity("Politecnico di Torino");
+		server = new UniversityServer(poli, 0); // loopback only
+	}
+
+	@AfterEach
+	void tearDown() throws IOException {
+		server.close();
+	}
+
+	@Test
+	void testPipelinedCommands() throws IOException {
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+			OutputStream out = socket.getOutputStream();
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+			// all the requests are sent before reading any response
+			out.write(("enroll Mario Rossi\n"
+					+ "enroll Francesca Verdi\n"
+					+ "activate Object Oriented Programming;James Gosling\n"
+					+ "register 10000 10\n"
+					+ "register 10001 10\n"
+					+ "exam 10000 10 27\n"
+					+ "exam 10001 10 30\n"
+					+ "avg student 10000\n"
+					+ "avg course 10\n"
+					+ "top 3\n"
+					+ "avg teacher 1\n"
+					+ "exam 10000 ten 30\n"
+					+ "drop 10000\n").getBytes(StandardCharsets.UTF_8));
+			out.flush();
+
+			assertEquals("OK 1", in.readLine());
+			assertEquals("10000", in.readLine());
+			assertEquals("OK 1", in.readLine());
+			assertEquals("10001", in.readLine());
+			assertEquals("OK 1", in.readLine());
+			assertEquals("10", in.readLine());
+			for (int i = 0; i < 4; i++) {
+				assertEquals("OK 0", in.readLine());
+			}
+			assertEquals("OK 1", in.readLine());
+			assertEquals("Student 10000 : 27.0", in.readLine());
+			assertEquals("OK 1", in.readLine());
+			assertEquals("The average for the course Object Oriented Programming is: 28.5", in.readLine());
+			assertEquals("OK 2", in.readLine());
+			assertEquals("Francesca Verdi : 40.0", in.readLine());
+			assertEquals("Mario Rossi : 37.0", in.readLine());
+			assertTrue(in.readLine().startsWith("ERR "));
+			assertTrue(in.readLine().startsWith("ERR "));
+			assertEquals("ERR unknown command drop", in.readLine());
+		}
+		assertEquals("10,Object Oriented Programming,James Gosling", poli.course(10));
+	}
+
+	@Test
+	void testLoopbackLoad() throws IOException {
+		LoadGenerator load = new LoadGenerator(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort()), 500, 20);
+		load.populate();
+		String summary = load.run(200, 20, 8);
+		assertTrue(summary.contains(" 0 errors"), summary);
+		poli.checkConsistency();
+	}
+
+	@Test
+	void testNoLoad() {
+		LoadGenerator load = new LoadGenerator(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort()), 500, 20);
+		assertThrows(IllegalArgumentException.class, () -> load.run(0, 20, 8));
+		assertThrows(IllegalArgumentException.class, () -> load.run(10, 0, 8));
+		assertThrows(IllegalArgumentException.class, () -> load.run(10, 20, 0));
+	}
+}
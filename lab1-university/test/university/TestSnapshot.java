@@ -0,0 +1,238 @@
+package university;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Level;
+
+/**
+ * Tests for snapshots and journal replay
+ */
+class TestSnapshot {
+
+	@TempDir
+	Path dir;
+
+	private University poli;
+
+	@BeforeEach
+	void setUp() {
+		University.logger.setLevel(Level.OFF);
+		poli = new University("Politecnico di Torino");
+		poli.setRector("Guido", "Saracco");
+		poli.enroll("Mario", "Rossi");
+		poli.enroll("Francesca", "Verdi");
+		poli.enroll("Filippo", "Neri");
+		poli.enroll("Laura", "Bianchi");
+		poli.activate("Macro Economics", "Paul Krugman");
+		poli.activate("Object Oriented Programming", "James Gosling");
+		poli.activate("Virology", "Roberto Burioni");
+		poli.register(10000, 10);
+		poli.register(10001, 10);
+		poli.register(10001, 11);
+		poli.register(10001, 12);
+		poli.register(10002, 11);
+		poli.register(10003, 10);
+		poli.register(10003, 11);
+		poli.exam(10000, 10, 25);
+		poli.exam(10001, 10, 26);
+		poli.exam(10001, 11, 28);
+		poli.exam(10003, 10, 26);
+		poli.exam(10003, 11, 26);
+	}
+
+	@Test
+	void testRoundTrip() throws IOException {
+		Path file = dir.resolve("poli.snapshot");
+		poli.saveSnapshot(file);
+
+		for (University.StorageMode mode : University.StorageMode.values()) {
+			University copy = University.loadSnapshot(file, mode);
+			copy.checkConsistency();
+			assertSameQueries(poli, copy);
+		}
+	}
+
+	@Test
+	void testJournalReplay() throws IOException {
+		Path file = dir.resolve("poli.snapshot");
+		Path journal = dir.resolve("poli.journal");
+		poli.openJournal(journal);
+		poli.saveSnapshot(file);
+
+		poli.setRector("Stefano", "Corgnati");
+		int s = poli.enroll("Giulia", "Gialli");
+		int c = poli.activate("Databases", "Edgar Codd");
+		poli.register(s, c);
+		poli.register(10002, c);
+		poli.exam(s, c, 30);
+		poli.exam(10000, 10, 18); // re-grading
+
+		// the process is not shut down cleanly: the journal is not closed
+		University copy = University.loadSnapshot(file);
+		assertEquals(7, copy.replayJournal(journal));
+		copy.checkConsistency();
+		assertSameQueries(poli, copy);
+		poli.closeJournal();
+	}
+
+	@Test
+	void testJournalBatch() throws IOException {
+		Path file = dir.resolve("poli.snapshot");
+		Path journal = dir.resolve("poli.journal");
+		poli.saveSnapshot(file);
+		poli.openJournal(journal);
+		poli.examBatch(new int[] { 10001, 10002, 10001 }, new int[] { 12, 11, 10 }, new int[] { 30, 22, 18 });
+		poli.closeJournal();
+
+		University copy = University.loadSnapshot(file);
+		assertEquals(3, copy.replayJournal(journal));
+		copy.checkConsistency();
+		assertSameQueries(poli, copy);
+	}
+
+	@Test
+	void testTruncatedJournal() throws IOException {
+		Path file = dir.resolve("poli.snapshot");
+		Path journal = dir.resolve("poli.journal");
+		poli.saveSnapshot(file);
+		poli.openJournal(journal);
+		poli.exam(10002, 11, 30);
+		poli.closeJournal();
+		long complete = Files.size(journal);
+		poli.openJournal(journal);
+		poli.enroll("Giulia", "Gialli");
+		poli.closeJournal();
+		// simulate a crash in the middle of the last record
+		try (var channel = Files.newByteChannel(journal, StandardOpenOption.WRITE)) {
+			channel.truncate(complete + 10);
+		}
+
+		University copy = University.loadSnapshot(file);
+		assertEquals(1, copy.replayJournal(journal));
+		assertEquals(poli.studentAvg(10002), copy.studentAvg(10002));
+		assertNull(copy.student(10004));
+	}
+
+	@Test
+	void testCorruptJournal() throws IOException {
+		Path file = dir.resolve("poli.snapshot");
+		Path journal = dir.resolve("poli.journal");
+		poli.saveSnapshot(file);
+		poli.openJournal(journal);
+		poli.exam(10002, 11, 30);
+		poli.closeJournal();
+		long complete = Files.size(journal);
+
+		// a torn tail announcing a huge record is an incomplete last record
+		try (var channel = Files.newByteChannel(journal, StandardOpenOption.WRITE)) {
+			channel.position(complete);
+			channel.write(ByteBuffer.allocate(6).putInt(0, Integer.MAX_VALUE));
+		}
+		assertEquals(1, University.loadSnapshot(file).replayJournal(journal));
+
+		// a negative length cannot be a record
+		try (var channel = Files.newByteChannel(journal, StandardOpenOption.WRITE)) {
+			channel.position(complete);
+			channel.write(ByteBuffer.allocate(4).putInt(0, -5));
+		}
+		assertThrows(IOException.class, () -> University.loadSnapshot(file).replayJournal(journal));
+
+		// a string longer than its record
+		try (var channel = Files.newByteChannel(journal, StandardOpenOption.WRITE)) {
+			channel.truncate(complete);
+			channel.position(complete - 8);
+			channel.write(ByteBuffer.allocate(4).putInt(0, 1000));
+		}
+		assertThrows(IOException.class, () -> University.loadSnapshot(file).replayJournal(journal));
+	}
+
+	@Test
+	void testJournalImport() throws IOException {
+		Path file = dir.resolve("poli.snapshot");
+		Path journal = dir.resolve("poli.journal");
+		Path csv = dir.resolve("more.csv");
+		Files.writeString(csv, "S;10004;Laura;Bianchi\nC;13;Virology;Roberto Burioni\nR;10004;13\nE;10004;13;30\n");
+		poli.saveSnapshot(file);
+		poli.openJournal(journal);
+		poli.importFrom(csv);
+		poli.enroll("Giulia", "Gialli");
+		poli.closeJournal();
+
+		University copy = University.loadSnapshot(file);
+		assertEquals(5, copy.replayJournal(journal));
+		copy.checkConsistency();
+		assertSameQueries(poli, copy);
+	}
+
+	@Test
+	void testSnapshotBeforeTruncation() throws IOException {
+		Path file = dir.resolve("poli.snapshot");
+		Path journal = dir.resolve("poli.journal");
+		Path stale = dir.resolve("stale.journal");
+		poli.saveSnapshot(file);
+		poli.openJournal(journal);
+		poli.enroll("Giulia", "Gialli");
+		poli.exam(10002, 11, 30);
+		Files.copy(journal, stale);
+		poli.saveSnapshot(file);
+		poli.exam(10001, 12, 24);
+		poli.closeJournal();
+
+		// the process stopped after replacing the snapshot but before emptying the journal
+		University copy = University.loadSnapshot(file);
+		assertEquals(0, copy.replayJournal(stale));
+		assertEquals(1, copy.replayJournal(journal));
+		copy.checkConsistency();
+		assertSameQueries(poli, copy);
+
+		// a journal not following the snapshot is rejected
+		University older = new University("Politecnico di Torino");
+		assertThrows(IOException.class, () -> older.replayJournal(journal));
+	}
+
+	@Test
+	void testNotASnapshot() throws IOException {
+		Path file = dir.resolve("poli.csv");
+		poli.exportTo(file);
+		assertThrows(IOException.class, () -> University.loadSnapshot(file));
+	}
+
+	@Test
+	void testOtherVersion() throws IOException {
+		Path file = dir.resolve("poli.snapshot");
+		poli.saveSnapshot(file);
+		try (var channel = Files.newByteChannel(file, StandardOpenOption.WRITE)) {
+			channel.position(4);
+			channel.write(ByteBuffer.allocate(4).putInt(0, 2));
+		}
+		assertThrows(IOException.class, () -> University.loadSnapshot(file));
+	}
+
+	private static void assertSameQueries(University expected, University actual) {
+		assertEquals(expected.getName(), actual.getName());
+		assertEquals(expected.getRector(), actual.getRector());
+		for (int id = 10000; id < 10010; id++) {
+			assertEquals(expected.student(id), actual.student(id));
+			assertEquals(expected.studentAvg(id), actual.studentAvg(id));
+			assertEquals(sortedLines(expected.studyPlan(id)), sortedLines(actual.studyPlan(id)));
+		}
+		for (int code = 10; code < 20; code++) {
+			assertEquals(expected.course(code), actual.course(code));
+			assertEquals(expected.courseAvg(code), actual.courseAvg(code));
+			assertEquals(sortedLines(expected.listAttendees(code)), sortedLines(actual.listAttendees(code)));
+		}
+		assertEquals(expected.topThreeStudents(), actual.topThreeStudents());
+	}
+
+	private static String sortedLines(String s) {
+		return s.lines().sorted().toList().toString();
+	}
+}
@@ -0,0 +1,170 @@
+package university;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Level;
+
+/**
+ * Tests for the reports written to an {@link Appendable} or a channel
+ */
+class TestStreaming {
+
+	private static final int STUDENTS = 20_000;
+
+	private University poli;
+	private int course;
+
+	@BeforeEach
+	void setUp() {
+		University.logger.setLevel(Level.OFF);
+		poli = new University("Politecnico di Torino");
+		course = poli.activate("Programmazione a oggetti", "Marco Torchiano");
+		int other = poli.activate("Analisi matematica", "Jürgen Größ");
+		for (int i = 0; i < STUDENTS; i++) {
+			// names of different lengths, with characters encoded in 2, 3 and 4 bytes
+			int id = poli.enroll("Zoë" + "é".repeat(i % 7), "Łukasz€" + (i % 3 == 0 ? "😀" : "") + i);
+			poli.register(id, course);
+			if (i % 2 == 0) {
+				poli.register(id, other);
+				poli.exam(id, other, 18 + i % 13);
+			}
+		}
+	}
+
+	private static byte[] bytes(String text) {
+		return text.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private interface ChannelReport {
+		void write(WritableByteChannel out) throws IOException;
+	}
+
+	private static byte[] written(ChannelReport report) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (WritableByteChannel out = Channels.newChannel(bytes)) {
+			report.write(out);
+		}
+		return bytes.toByteArray();
+	}
+
+	@Test
+	void testAttendees() throws IOException {
+		StringWriter text = new StringWriter();
+		poli.listAttendees(course, text);
+		byte[] channel = written(out -> poli.listAttendees(course, out));
+
+		String expected = poli.listAttendees(course);
+		assertEquals(STUDENTS, expected.split("\n").length);
+		assertEquals(expected, text.toString());
+		assertArrayEquals(bytes(expected), channel);
+
+		// the cached list gives the same result
+		assertArrayEquals(bytes(expected), written(out -> poli.listAttendees(course, out)));
+	}
+
+	@Test
+	void testStudyPlanAndTop() throws IOException {
+		int first = poli.enroll("Mario", "Rossi") - STUDENTS;
+		for (int id = first; id < first + 10; id++) {
+			int student = id;
+			assertArrayEquals(bytes(poli.studyPlan(student)), written(out -> poli.studyPlan(student, out)));
+		}
+		StringBuilder top = new StringBuilder();
+		poli.topThreeStudents(top);
+		assertEquals(poli.topThreeStudents(), top.toString());
+		assertArrayEquals(bytes(poli.topThreeStudents()), written(poli::topThreeStudents));
+	}
+
+	@Test
+	void testUnknown() throws IOException {
+		StringBuilder text = new StringBuilder();
+		poli.listAttendees(1, text);
+		poli.studyPlan(1, text);
+		assertEquals("", text.toString());
+		assertEquals(0, written(out -> poli.listAttendees(1, out)).length);
+		assertEquals(0, written(out -> poli.studyPlan(1, out)).length);
+
+		University empty = new University("Empty");
+		assertEquals(0, written(empty::topThreeStudents).length);
+	}
+
+	@Test
+	void testChannelFailures() throws IOException {
+		Pipe pipe = Pipe.open();
+		Pipe.SinkChannel sink = pipe.sink();
+		try {
+			sink.configureBlocking(false);
+			assertThrows(IllegalArgumentException.class, () -> poli.listAttendees(course, sink));
+		} finally {
+			sink.close();
+			pipe.source().close();
+		}
+
+		// a channel that never accepts bytes fails instead of being retried forever
+		WritableByteChannel stuck = new FailingChannel(null);
+		assertThrows(IOException.class, () -> poli.listAttendees(course, stuck));
+
+		// the failure of the report is not replaced by the one of the final flush
+		FailingChannel failing = new FailingChannel("first");
+		IOException e = assertThrows(IOException.class, () -> poli.listAttendees(course, failing));
+		assertEquals("first", e.getMessage());
+		assertArrayEquals(bytes(poli.listAttendees(course)), written(out -> poli.listAttendees(course, out)));
+	}
+
+	/**
+	 * Channel failing every write with a different message, or accepting no bytes
+	 */
+	private static class FailingChannel implements WritableByteChannel {
+		private String message;
+
+		FailingChannel(String message) {
+			this.message = message;
+		}
+
+		@Override
+		public int write(ByteBuffer src) throws IOException {
+			if (message == null) {
+				return 0;
+			}
+			String current = message;
+			message = "again";
+			throw new IOException(current);
+		}
+
+		@Override
+		public boolean isOpen() {
+			return true;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	@Test
+	void testConcurrent() throws IOException {
+		ConcurrentUniversity concurrent = new ConcurrentUniversity("Concurrent");
+		int code = concurrent.activate("Reti di calcolatori", "Ñandú");
+		int first = concurrent.enroll("Chloé", "Dupré");
+		concurrent.register(first, code);
+		for (int i = 0; i < 1000; i++) {
+			int id = concurrent.enroll("Chloé", "Dupré" + i);
+			concurrent.register(id, code);
+			concurrent.exam(id, code, 18 + i % 13);
+		}
+		assertArrayEquals(bytes(concurrent.listAttendees(code)), written(out -> concurrent.listAttendees(code, out)));
+		assertArrayEquals(bytes(concurrent.studyPlan(first)),
+				written(out -> concurrent.studyPlan(first, out)));
+		assertArrayEquals(bytes(concurrent.topThreeStudents()), written(concurrent::topThreeStudents));
+	}
+}
@@ -0,0 +1,109 @@
+package university;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.logging.Level;
+
+/**
+ * Tests for the term history and the queries on past terms
+ */
+class TestTerms {
+
+	@TempDir
+	Path dir;
+
+	private University poli;
+
+	@BeforeEach
+	void setUp() {
+		University.logger.setLevel(Level.OFF);
+		poli = new University("Politecnico di Torino");
+		poli.enroll("Mario", "Rossi");
+		poli.enroll("Francesca", "Verdi");
+		poli.enroll("Filippo", "Neri");
+		poli.activate("Macro Economics", "Paul Krugman");
+		poli.activate("Object Oriented Programming", "James Gosling");
+		poli.register(10000, 10);
+		poli.register(10001, 10);
+		poli.register(10001, 11);
+		poli.register(10002, 11);
+
+		// term 0
+		poli.exam(10000, 10, 20);
+		poli.exam(10001, 10, 24);
+		assertEquals(0, poli.closeTerm());
+		// term 1
+		poli.exam(10000, 10, 28); // re-grading
+		poli.exam(10001, 11, 30);
+		assertEquals(1, poli.closeTerm());
+		// term 2, in progress
+		poli.exam(10002, 11, 18);
+	}
+
+	@Test
+	void testAsOf() {
+		assertEquals(2, poli.currentTerm());
+
+		assertEquals("Student 10000 hasn't taken any exams", poli.studentAvgAsOf(10000, -1));
+		assertEquals("Student 10000 : 20.0", poli.studentAvgAsOf(10000, 0));
+		assertEquals("Student 10000 : 28.0", poli.studentAvgAsOf(10000, 1));
+		assertEquals("Student 10001 : 24.0", poli.studentAvgAsOf(10001, 0));
+		assertEquals("Student 10001 : 27.0", poli.studentAvgAsOf(10001, 1));
+		assertEquals("Student 10002 hasn't taken any exams", poli.studentAvgAsOf(10002, 1));
+		assertEquals(poli.studentAvg(10002), poli.studentAvgAsOf(10002, 2));
+		assertEquals(poli.studentAvg(10002), poli.studentAvgAsOf(10002, 99));
+
+		assertEquals("The average for the course Macro Economics is: 22.0", poli.courseAvgAsOf(10, 0));
+		assertEquals("The average for the course Macro Economics is: 26.0", poli.courseAvgAsOf(10, 1));
+		assertEquals("No student has taken the exam in Object Oriented Programming", poli.courseAvgAsOf(11, 0));
+		assertEquals("The average for the course Object Oriented Programming is: 30.0", poli.courseAvgAsOf(11, 1));
+		assertEquals(poli.courseAvg(11), poli.courseAvgAsOf(11, 2));
+		assertEquals("No student has taken the exam in Unknown Course", poli.courseAvgAsOf(99, 0));
+	}
+
+	@Test
+	void testTopThreeAsOf() {
+		assertEquals("Mario Rossi : 30.0\nFrancesca Verdi : 29.0", poli.topThreeStudentsAsOf(0));
+		assertEquals("Mario Rossi : 38.0\nFrancesca Verdi : 37.0", poli.topThreeStudentsAsOf(1));
+		assertEquals(poli.topThreeStudents(), poli.topThreeStudentsAsOf(2));
+		assertEquals("", poli.topThreeStudentsAsOf(-1));
+	}
+
+	@Test
+	void testExamHistory() {
+		assertEquals("0: 20\n1: 28", poli.examHistory(10000, 10));
+		assertEquals("2: 18", poli.examHistory(10002, 11));
+		assertEquals("", poli.examHistory(10002, 10));
+	}
+
+	@Test
+	void testSnapshotAndJournal() throws IOException {
+		Path file = dir.resolve("poli.snapshot");
+		Path journal = dir.resolve("poli.journal");
+		poli.openJournal(journal);
+		poli.saveSnapshot(file);
+		poli.exam(10001, 11, 20);
+		assertEquals(2, poli.closeTerm());
+		poli.exam(10000, 10, 30);
+
+		University copy = University.loadSnapshot(file, University.StorageMode.COMPACT);
+		assertEquals(3, copy.replayJournal(journal));
+		copy.checkConsistency();
+		assertEquals(poli.currentTerm(), copy.currentTerm());
+		for (int term = 0; term <= 3; term++) {
+			for (int s = 10000; s <= 10002; s++) {
+				assertEquals(poli.studentAvgAsOf(s, term), copy.studentAvgAsOf(s, term));
+			}
+			assertEquals(poli.courseAvgAsOf(10, term), copy.courseAvgAsOf(10, term));
+			assertEquals(poli.courseAvgAsOf(11, term), copy.courseAvgAsOf(11, term));
+			assertEquals(poli.topThreeStudentsAsOf(term), copy.topThreeStudentsAsOf(term));
+		}
+		assertEquals(poli.examHistory(10000, 10), copy.examHistory(10000, 10));
+		assertEquals("0: 20\n1: 28\n3: 30", copy.examHistory(10000, 10));
+	}
+}
@@ -1,5 +1,9 @@
 package hydraulic;
 
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
 
 /**
  * Represents the generic abstract element of an hydraulics system.
@@ -13,9 +17,14 @@ package hydraulic;
  */
 public abstract class Element {
 	
+	private static final Element[] NO_ELEMENTS = new Element[0];
+
 	protected String name;
 	protected Element output;
+	private Element[] upstream = NO_ELEMENTS; // the elements whose outputs are connected to this one, in connection order
+	private int upstreamCount;
 	protected double maxFlow = Double.POSITIVE_INFINITY; // Default to unlimited
+	private HSystem owner; // system whose compiled plan depends on this element, notified of its changes
 	
 	/**
 	 * Constructor for Element
@@ -44,6 +53,7 @@ public abstract class Element {
 	 * @param elem the element that will be placed downstream
 	 */
 	public void connect(Element elem) {
+		linked(this.output, elem);
 		this.output = elem;
 	}
 	
@@ -58,6 +68,90 @@ public abstract class Element {
 		// does nothing by default
 	}
 	
+	/**
+	 * Updates the upstream links when an output of this element is connected to a new element
+	 * 
+	 * @param previous the element connected to the output before, or {@code null}
+	 * @param elem the element connected now, or {@code null}
+	 */
+	void linked(Element previous, Element elem) {
+		if (previous != null) {
+			previous.removeUpstream(this);
+		}
+		if (elem != null) {
+			elem.addUpstream(this);
+		}
+		modified();
+	}
+
+	private void addUpstream(Element parent) {
+		if (upstreamCount == upstream.length) {
+			upstream = Arrays.copyOf(upstream, Math.max(1, 2 * upstreamCount));
+		}
+		upstream[upstreamCount++] = parent;
+	}
+
+	/**
+	 * Removes one link from an upstream element, which may feed this element through more outputs
+	 * @param parent the upstream element
+	 */
+	void removeUpstream(Element parent) {
+		for (int i = upstreamCount - 1; i >= 0; i--) {
+			if (upstream[i] == parent) {
+				System.arraycopy(upstream, i + 1, upstream, i, upstreamCount - i - 1);
+				upstream[--upstreamCount] = null;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Records that the connections or the parameters of this element changed,
+	 * so that the system owning it compiles its plan again
+	 */
+	void modified() {
+		if (owner != null) {
+			owner.invalidatePlan();
+		}
+	}
+
+	/**
+	 * Makes a system depend on this element, replacing the previous owner
+	 * @param system the system to be notified of the changes
+	 */
+	void setOwner(HSystem system) {
+		owner = system;
+	}
+
+	/**
+	 * Makes a system depend on this element, unless it was added to another system
+	 * @param system the system whose plan includes this element
+	 */
+	void adopt(HSystem system) {
+		if (owner == null) {
+			owner = system;
+		}
+	}
+
+	/**
+	 * Retrieves the element whose output was connected last to this element
+	 * 
+	 * @return upstream element, or {@code null} if none is connected
+	 */
+	Element getUpstream() {
+		return upstreamCount == 0 ? null : upstream[upstreamCount - 1];
+	}
+
+	/**
+	 * Retrieves all the elements connected upstream of this element,
+	 * once for each of their outputs connected to it
+	 * 
+	 * @return upstream elements, in connection order
+	 */
+	Element[] getUpstreams() {
+		return Arrays.copyOf(upstream, upstreamCount);
+	}
+
 	/**
 	 * Retrieves the single element connected downstream of this element
 	 * 
@@ -83,6 +177,7 @@ public abstract class Element {
 	 */
 	public void setMaxFlow(double maxFlow) {
 		this.maxFlow = maxFlow;
+		modified();
 	}
 
 	protected static String pad(String current, String down){
@@ -91,20 +186,71 @@ public abstract class Element {
 		return current + down.replace("\n", fmt.formatted("") );
 	}
 
+	/**
+	 * Describes this element and the ones downstream as a tree, e.g.
+	 * <pre>
+	 * [T] +-> [Sink 1] 
+	 *     +-> *
+	 * </pre>
+	 * where {@code *} marks an output that is not connected.
+	 * 
+	 * The lines of each element are indented to the column where the element starts.
+	 * The tree is visited with an explicit stack of the outputs still to describe,
+	 * so a long series of elements does not overflow the call stack.
+	 */
 	@Override
 	public String toString(){
-		String res = "[%s] ".formatted(getName());
-		Element[] out = getOutputs();
-		if( out != null){
-			StringBuilder buffer = new StringBuilder();
-			for(int i=0; i<out.length; ++i) {
-				if(i>0) buffer.append("\n");
-				if (out[i] == null) buffer.append("+-> *");
-				else buffer.append(pad("+-> ", out[i].toString()));
+		StringBuilder res = new StringBuilder();
+		Deque<Pending> pending = new ArrayDeque<>();
+		describe(this, 0, res, pending);
+		while (!pending.isEmpty()) {
+			Pending next = pending.pop();
+			if (next.separator >= 0) {
+				res.append('\n').append(" ".repeat(next.separator));
 			}
-			res = pad(res,buffer.toString());
+			res.append("+-> ");
+			if (next.element == null) {
+				res.append('*');
+			} else {
+				describe(next.element, next.column, res, pending);
+			}
+		}
+		return res.toString();
+	}
+
+	/**
+	 * Appends the label of an element and schedules its outputs
+	 * 
+	 * @param element the element
+	 * @param column the column where the element starts
+	 * @param res the description built so far
+	 * @param pending the outputs still to describe, the first one on top
+	 */
+	private static void describe(Element element, int column, StringBuilder res, Deque<Pending> pending) {
+		String label = "[%s] ".formatted(element.getName());
+		res.append(label.indexOf('\n') < 0 ? label : label.replace("\n", "\n" + " ".repeat(column)));
+		Element[] out = element.getOutputs();
+		if (out != null) {
+			int start = column + label.length();
+			for (int i = out.length - 1; i >= 0; i--) {
+				pending.push(new Pending(out[i], start + "+-> ".length(), i > 0 ? start : -1));
+			}
+		}
+	}
+
+	/**
+	 * Output still to describe in {@link #toString()}
+	 */
+	private static final class Pending {
+		final Element element;  // the element connected to the output, or null
+		final int column;       // the column where the element starts
+		final int separator;    // indentation of the new line before the output, or -1 to continue the current line
+
+		Pending(Element element, int column, int separator) {
+			this.element = element;
+			this.column = column;
+			this.separator = separator;
 		}
-		return res;
 	}
 
 
@@ -1,17 +1,35 @@
 package hydraulic;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
 /**
  * Main class that acts as a container of the elements for
  * the simulation of a hydraulics system
  * 
+ * The elements are kept in an array that grows as needed, in order of insertion,
+ * together with an index from names to positions, so that an element is found
+ * by name without scanning the whole system.
+ * Deleted elements leave an empty slot, the array is compacted when more than
+ * half of the slots are empty.
  */
 public class HSystem {
 	
+	private static final int INITIAL_CAPACITY = 16;
+
 	private Element[] elements;
-	private int count;
+	private int count; // used slots, including the ones of deleted elements
+	private int size;  // elements currently in the system
+	private final Map<String, Integer> slots = new HashMap<>(); // name -> slot of the first element with that name
+	private boolean duplicateNames;
+	private Source source; // the first source added, used as the root of the simulation
+	private SimulationPlan plan; // compiled for the parallel simulation, null when outdated
+	private SimulationPlan.Flows planFlows;
 
 	public HSystem() {
-		elements = new Element[100]; // Maximum 100 elements as per hint
+		elements = new Element[INITIAL_CAPACITY];
 		count = 0;
 	}
 
@@ -22,10 +40,23 @@ public class HSystem {
 	 * @param elem the new element to be added to the system
 	 */
 	public void addElement(Element elem){
-		if (elem != null && count < 100) {
-			elements[count] = elem;
-			count++;
+		if (elem == null) {
+			return;
+		}
+		if (count == elements.length) {
+			elements = Arrays.copyOf(elements, count * 2);
+		}
+		if (slots.putIfAbsent(elem.getName(), count) != null) {
+			duplicateNames = true;
 		}
+		if (source == null && elem instanceof Source) {
+			source = (Source) elem;
+		}
+		elements[count] = elem;
+		count++;
+		size++;
+		elem.setOwner(this);
+		plan = null;
 	}
 
 	/**
@@ -34,7 +65,7 @@ public class HSystem {
 	 * @return count of elements
 	 */
 	public int size() {
-        return count;
+        return size;
     }
 
 	/**
@@ -44,13 +75,30 @@ public class HSystem {
 	 * 							the number of added elements
 	 */
 	public Element[] getElements(){
-		Element[] result = new Element[count];
+		if (size == count) {
+			return Arrays.copyOf(elements, count);
+		}
+		Element[] result = new Element[size];
+		int n = 0;
 		for (int i = 0; i < count; i++) {
-			result[i] = elements[i];
+			if (elements[i] != null) {
+				result[n++] = elements[i];
+			}
 		}
 		return result;
 	}
 
+	/**
+	 * Finds an element by name
+	 * 
+	 * @param name the name of the element
+	 * @return the first element added with that name, or {@code null} if none is in the system
+	 */
+	Element getElement(String name) {
+		Integer slot = slots.get(name);
+		return slot == null ? null : elements[slot];
+	}
+
 // R4
 	/**
 	 * Starts the simulation of the system.
@@ -73,20 +121,11 @@ public class HSystem {
 	 */
 	public boolean deleteElement(String name) {
 		// Find the element to delete
-		Element elementToDelete = null;
-		int indexToDelete = -1;
-		
-		for (int i = 0; i < count; i++) {
-			if (elements[i] != null && elements[i].getName().equals(name)) {
-				elementToDelete = elements[i];
-				indexToDelete = i;
-				break;
-			}
-		}
-		
-		if (elementToDelete == null) {
+		Integer indexToDelete = slots.get(name);
+		if (indexToDelete == null) {
 			return false; // Element not found
 		}
+		Element elementToDelete = elements[indexToDelete];
 		
 		// Check if it's a Split or Multisplit with more than one output connected
 		if (elementToDelete instanceof Split) {
@@ -106,6 +145,9 @@ public class HSystem {
 		// Find upstream and downstream elements
 		Element upstreamElement = findUpstreamElement(elementToDelete);
 		Element downstreamElement = getSingleDownstreamElement(elementToDelete);
+		if (downstreamElement != null) {
+			downstreamElement.removeUpstream(elementToDelete); // the deleted element no longer feeds it
+		}
 		
 		// Fix upstream connection: either bypass to downstream or clear the link
 		if (upstreamElement != null) {
@@ -133,29 +175,101 @@ public class HSystem {
 			}
 		}
 		
-		// Remove the element from the array
-		for (int i = indexToDelete; i < count - 1; i++) {
-			elements[i] = elements[i + 1];
-		}
-		elements[count - 1] = null;
-		count--;
-		
+		remove(indexToDelete);
 		return true;
 	}
+
+	/**
+	 * Removes the element in a slot, updating the name index and the source
+	 * @param slot the position of the element
+	 */
+	private void remove(int slot) {
+		Element removed = elements[slot];
+		elements[slot] = null;
+		size--;
+		plan = null;
+		slots.remove(removed.getName());
+		if (duplicateNames) {
+			// another element with the same name takes its place in the index
+			for (int i = slot + 1; i < count; i++) {
+				if (elements[i] != null && elements[i].getName().equals(removed.getName())) {
+					slots.put(removed.getName(), i);
+					break;
+				}
+			}
+		}
+		if (removed == source) {
+			source = null;
+			for (int i = 0; i < count && source == null; i++) {
+				if (elements[i] instanceof Source) {
+					source = (Source) elements[i];
+				}
+			}
+		}
+		if (count > INITIAL_CAPACITY && size < count / 2) {
+			compact();
+		}
+	}
+
+	/**
+	 * Moves the elements to the first slots, preserving their order, and rebuilds the name index
+	 */
+	private void compact() {
+		int n = 0;
+		for (int i = 0; i < count; i++) {
+			if (elements[i] != null) {
+				elements[n++] = elements[i];
+			}
+		}
+		Arrays.fill(elements, n, count, null);
+		count = n;
+		slots.clear();
+		for (int i = 0; i < count; i++) {
+			slots.putIfAbsent(elements[i].getName(), i);
+		}
+	}
 	
 	/**
-	 * Find the upstream element that connects to the given element
+	 * Find the upstream element that connects to the given element,
+	 * using the links recorded when the elements were connected.
+	 * When more elements of the system feed it, the first one added to the system is returned.
 	 * @param element the element to find upstream for
 	 * @return the upstream element or null if not found
 	 */
 	private Element findUpstreamElement(Element element) {
-		for (int i = 0; i < count; i++) {
-			Element candidate = elements[i];
-			if (candidate != null && isConnectedTo(candidate, element)) {
-				return candidate;
+		Element first = null;
+		int firstSlot = count;
+		for (Element candidate : element.getUpstreams()) {
+			int slot = slotOf(candidate);
+			if (slot >= 0 && slot < firstSlot) {
+				first = candidate;
+				firstSlot = slot;
 			}
 		}
-		return null;
+		return first;
+	}
+
+	/**
+	 * Finds the slot of an element
+	 * @param element the element to look for
+	 * @return the position of the element, or -1 if it is not in the system
+	 */
+	private int slotOf(Element element) {
+		Integer slot = slots.get(element.getName());
+		if (slot == null) {
+			return -1;
+		}
+		if (elements[slot] == element) {
+			return slot;
+		}
+		if (duplicateNames) {
+			for (int i = slot + 1; i < count; i++) {
+				if (elements[i] == element) {
+					return i;
+				}
+			}
+		}
+		return -1;
 	}
 	
 	/**
@@ -195,8 +309,8 @@ public class HSystem {
 			return; // No source found, cannot simulate
 		}
 		
-		// Start simulation from the source
-		simulateElement(source, observer, enableMaxFlowCheck);
+		// Start simulation from the source, which has no input
+		simulateElement(source, SimulationObserver.NO_FLOW, observer, enableMaxFlowCheck);
 	}
 	
 	/**
@@ -204,229 +318,99 @@ public class HSystem {
 	 * @return the source element or null if not found
 	 */
 	private Source findSource() {
-		for (int i = 0; i < count; i++) {
-			if (elements[i] instanceof Source) {
-				return (Source) elements[i];
-			}
-		}
-		return null;
+		return source;
 	}
 	
 	/**
-	 * Recursively simulate an element and its downstream elements
-	 * @param element the element to simulate
+	 * Simulates an element and all its downstream elements.
+	 * 
+	 * The flows are propagated top-down in a single traversal: each element
+	 * receives its input flow from its parent and passes each computed output
+	 * flow to the element connected to that output.
+	 * The traversal uses an explicit stack of the elements still to simulate
+	 * instead of recursion, so a long series of elements takes constant space.
+	 * 
+	 * @param root the element to simulate
+	 * @param rootFlow the input flow of the element, {@link SimulationObserver#NO_FLOW} for the source
 	 * @param observer the observer to notify
 	 * @param enableMaxFlowCheck whether to check max flow
 	 */
-	private void simulateElement(Element element, SimulationObserver observer, boolean enableMaxFlowCheck) {
-		if (element == null) {
-			return;
-		}
-		
-		double inputFlow = SimulationObserver.NO_FLOW;
-		double[] outputFlows = null;
-		
-		// Calculate input and output flows based on element type
-		if (element instanceof Source) {
-			Source source = (Source) element;
-			inputFlow = SimulationObserver.NO_FLOW; // Source has no input
-			outputFlows = new double[]{source.getFlow()};
-		} else if (element instanceof Tap) {
-			Tap tap = (Tap) element;
-			// For tap, we need to get input flow from upstream
-			inputFlow = getInputFlow(element);
-			if (enableMaxFlowCheck && inputFlow > element.maxFlow) {
-				observer.notifyFlowError(element.getClass().getSimpleName(), element.getName(), inputFlow, element.maxFlow);
-				// Continue simulation even after error
-			}
-			outputFlows = new double[]{tap.isOpen() ? inputFlow : 0.0};
-		} else if (element instanceof Split) {
-			Split split = (Split) element;
-			inputFlow = getInputFlow(element);
-			if (enableMaxFlowCheck && inputFlow > element.maxFlow) {
-				observer.notifyFlowError(element.getClass().getSimpleName(), element.getName(), inputFlow, element.maxFlow);
-				// Continue simulation even after error
-			}
-			Element[] outputs = split.getOutputs();
-			outputFlows = new double[outputs.length];
+	private void simulateElement(Element root, double rootFlow, SimulationObserver observer, boolean enableMaxFlowCheck) {
+		Element[] pending = new Element[16];
+		double[] pendingFlows = new double[16];
+		int top = 0;
+		pending[top] = root;
+		pendingFlows[top++] = rootFlow;
+		while (top > 0) {
+			Element element = pending[--top];
+			double inputFlow = pendingFlows[top];
+			pending[top] = null;
 			
-			if (split instanceof Multisplit) {
-				Multisplit multisplit = (Multisplit) split;
-				double[] proportions = multisplit.getProportions();
-				for (int i = 0; i < outputs.length; i++) {
-					outputFlows[i] = outputs[i] != null ? inputFlow * proportions[i] : 0.0;
-				}
-			} else {
-				// Regular split - divide equally
-				for (int i = 0; i < outputs.length; i++) {
-					outputFlows[i] = outputs[i] != null ? inputFlow / 2.0 : 0.0;
-				}
-			}
-		} else if (element instanceof Sink) {
-			Sink sink = (Sink) element;
-			inputFlow = getInputFlow(element);
-			if (enableMaxFlowCheck && inputFlow > element.maxFlow) {
+			double[] outputFlows = outputFlows(element, inputFlow);
+			if (outputFlows == null) {
+				// Element of an unknown kind: no flow is computed for it nor sent downstream
+				inputFlow = SimulationObserver.NO_FLOW;
+			} else if (enableMaxFlowCheck && !(element instanceof Source) && inputFlow > element.maxFlow) {
 				observer.notifyFlowError(element.getClass().getSimpleName(), element.getName(), inputFlow, element.maxFlow);
 				// Continue simulation even after error
 			}
-			outputFlows = new double[]{SimulationObserver.NO_FLOW}; // Sink has no output
-		}
-		
-		// Notify observer about this element
-		observer.notifyFlow(element.getClass().getSimpleName(), element.getName(), inputFlow, outputFlows);
-		
-		// Recursively simulate downstream elements
-		if (element instanceof Split) {
-			Split split = (Split) element;
-			Element[] outputs = split.getOutputs();
-			for (int i = 0; i < outputs.length; i++) {
-				if (outputs[i] != null) {
-					simulateElement(outputs[i], observer, enableMaxFlowCheck);
-				}
-			}
-		} else if (element.getOutput() != null) {
-			simulateElement(element.getOutput(), observer, enableMaxFlowCheck);
-		}
-	}
-	
-	
-	/**
-	 * Get the input flow for an element by finding its upstream element
-	 * @param element the element to get input flow for
-	 * @return the input flow
-	 */
-	private double getInputFlow(Element element) {
-		java.util.Map<Element, Double> flowMap = new java.util.HashMap<>();
-		return getInputFlow(element, flowMap);
-	}
-	
-	/**
-	 * Get the input flow for an element by finding its upstream element
-	 * This version uses a map to avoid infinite recursion
-	 * @param element the element to get input flow for
-	 * @param flowMap the map storing calculated flows
-	 * @return the input flow
-	 */
-	private double getInputFlow(Element element, java.util.Map<Element, Double> flowMap) {
-		if (element instanceof Source) {
-			return SimulationObserver.NO_FLOW; // Source has no input
-		}
-		
-		// Check if we already calculated this element's input flow
-		if (flowMap.containsKey(element)) {
-			return flowMap.get(element);
-		}
-		
-		// Find the upstream element that connects to this element
-		for (int i = 0; i < count; i++) {
-			Element upstream = elements[i];
-			if (upstream != null && isConnectedTo(upstream, element)) {
-				double outputFlow = getOutputFlowForConnection(upstream, element, flowMap);
-				flowMap.put(element, outputFlow);
-				return outputFlow;
-			}
-		}
-		
-		flowMap.put(element, 0.0);
-		return 0.0; // Default if no upstream found
-	}
-	
-	/**
-	 * Get the output flow from upstream element that connects to downstream element
-	 * @param upstream the upstream element
-	 * @param downstream the downstream element
-	 * @param flowMap the map storing calculated flows
-	 * @return the output flow
-	 */
-	private double getOutputFlowForConnection(Element upstream, Element downstream, java.util.Map<Element, Double> flowMap) {
-		if (upstream instanceof Split) {
-			Split split = (Split) upstream;
-			Element[] outputs = split.getOutputs();
-			double inputFlow = getInputFlow(upstream, flowMap);
 			
-			// Find which output connects to the downstream element
-			for (int i = 0; i < outputs.length; i++) {
-				if (outputs[i] == downstream) {
-					if (split instanceof Multisplit) {
-						Multisplit multisplit = (Multisplit) split;
-						double[] proportions = multisplit.getProportions();
-						return inputFlow * proportions[i];
-					} else {
-						// Regular split - divide equally
-						return inputFlow / 2.0;
-					}
-				}
+			// Notify observer about this element
+			observer.notifyFlow(element.getClass().getSimpleName(), element.getName(), inputFlow, outputFlows);
+			
+			// Hand each output flow to the element downstream,
+			// pushed in reverse order so that the first output is simulated first
+			Element[] outputs = element instanceof Split ? ((Split) element).outputs : null;
+			int count = outputs != null ? outputs.length : 1;
+			if (top + count > pending.length) {
+				pending = Arrays.copyOf(pending, Math.max(pending.length * 2, top + count));
+				pendingFlows = Arrays.copyOf(pendingFlows, pending.length);
 			}
-		} else {
-			// Single output element
-			return getOutputFlow(upstream, flowMap);
-		}
-		return 0.0;
-	}
-	
-	/**
-	 * Check if upstream element is connected to downstream element
-	 * @param upstream the upstream element
-	 * @param downstream the downstream element
-	 * @return true if connected
-	 */
-	private boolean isConnectedTo(Element upstream, Element downstream) {
-		if (upstream instanceof Split) {
-			Split split = (Split) upstream;
-			Element[] outputs = split.getOutputs();
-			for (Element output : outputs) {
-				if (output == downstream) {
-					return true;
+			if (outputs != null) {
+				for (int i = outputs.length - 1; i >= 0; i--) {
+					if (outputs[i] != null) {
+						pending[top] = outputs[i];
+						pendingFlows[top++] = outputFlows[i];
+					}
 				}
+			} else if (element.getOutput() != null) {
+				pending[top] = element.getOutput();
+				pendingFlows[top++] = outputFlows != null ? outputFlows[0] : 0.0;
 			}
-		} else if (upstream.getOutput() == downstream) {
-			return true;
 		}
-		return false;
 	}
 	
 	/**
-	 * Get the output flow from an element (used for calculating input flow of downstream elements)
-	 * @param element the element to get output flow from
-	 * @return the output flow
+	 * Computes the output flows of an element
+	 * @param element the element
+	 * @param inputFlow the input flow of the element
+	 * @return one flow for each output, {@link SimulationObserver#NO_FLOW} for a sink,
+	 * 			or {@code null} for an element of an unknown kind
 	 */
-	private double getOutputFlow(Element element) {
-		java.util.Map<Element, Double> flowMap = new java.util.HashMap<>();
-		return getOutputFlow(element, flowMap);
-	}
-	
-	/**
-	 * Get the output flow from an element (used for calculating input flow of downstream elements)
-	 * This version uses a map to avoid infinite recursion
-	 * @param element the element to get output flow from
-	 * @param flowMap the map storing calculated flows
-	 * @return the output flow
-	 */
-	private double getOutputFlow(Element element, java.util.Map<Element, Double> flowMap) {
+	private static double[] outputFlows(Element element, double inputFlow) {
 		if (element instanceof Source) {
-			return ((Source) element).getFlow();
+			return new double[]{((Source) element).getFlow()};
 		} else if (element instanceof Tap) {
-			Tap tap = (Tap) element;
-			double inputFlow = getInputFlow(element, flowMap);
-			return tap.isOpen() ? inputFlow : 0.0;
+			return new double[]{((Tap) element).isOpen() ? inputFlow : 0.0};
+		} else if (element instanceof Multisplit) {
+			Multisplit multisplit = (Multisplit) element;
+			double[] outputFlows = new double[multisplit.outputs.length];
+			for (int i = 0; i < outputFlows.length; i++) {
+				outputFlows[i] = multisplit.outputs[i] != null ? inputFlow * multisplit.proportion(i) : 0.0;
+			}
+			return outputFlows;
 		} else if (element instanceof Split) {
-			Split split = (Split) element;
-			double inputFlow = getInputFlow(element, flowMap);
-			if (split instanceof Multisplit) {
-				Multisplit multisplit = (Multisplit) split;
-				double[] proportions = multisplit.getProportions();
-				// Return the total output flow (sum of all outputs)
-				double total = 0.0;
-				for (double prop : proportions) {
-					total += inputFlow * prop;
-				}
-				return total;
-			} else {
-				// Regular split - total output equals input
-				return inputFlow;
+			// Regular split - divide equally
+			Element[] outputs = ((Split) element).outputs;
+			double[] outputFlows = new double[outputs.length];
+			for (int i = 0; i < outputs.length; i++) {
+				outputFlows[i] = outputs[i] != null ? inputFlow / 2.0 : 0.0;
 			}
+			return outputFlows;
+		} else if (element instanceof Sink) {
+			return new double[]{SimulationObserver.NO_FLOW}; // Sink has no output
 		}
-		return 0.0;
+		return null;
 	}
 
 // R8
@@ -439,4 +423,48 @@ public class HSystem {
     public static HBuilder build() {
 		return new HBuilder();
     }
+
+// Compiled simulation
+	/**
+	 * Compiles the current topology of the system into a plan that can be
+	 * simulated repeatedly, e.g. with different source flows and tap states,
+	 * without visiting the elements again.
+	 * Later changes to the elements or their connections do not affect the plan.
+	 * 
+	 * @return the compiled plan
+	 */
+	public SimulationPlan compile() {
+		return new SimulationPlan(findSource(), null);
+	}
+
+	/**
+	 * Discards the plan compiled for the parallel simulation,
+	 * called when an element of the system or one reachable from its source changes
+	 */
+	void invalidatePlan() {
+		plan = null;
+	}
+
+	/**
+	 * Performs the same simulation as {@link #simulate(SimulationObserver, boolean)},
+	 * computing the flows of large independent branches in parallel.
+	 * The flows are computed on a compiled plan, then the notifications are sent
+	 * to the observer from the calling thread, in the same order as {@code simulate()}.
+	 * The plan is compiled by the first call and reused by the next ones
+	 * until an element is added, deleted, connected or given new parameters.
+	 * Since the notifications are sent sequentially, the speed-up is limited
+	 * by the observer: to compute flows only, use
+	 * {@link SimulationPlan#simulateParallel} on a plan obtained by {@link #compile()}.
+	 * 
+	 * @param observer the observer receiving notifications
+	 * @param enableMaxFlowCheck whether to check max flow
+	 */
+	public void simulateParallel(SimulationObserver observer, boolean enableMaxFlowCheck) {
+		if (plan == null) {
+			plan = new SimulationPlan(findSource(), this);
+			planFlows = plan.newFlows();
+		}
+		plan.simulateParallel(planFlows, ForkJoinPool.commonPool());
+		plan.replay(planFlows, observer, enableMaxFlowCheck);
+	}
 }
@@ -29,6 +29,7 @@ public class Multisplit extends Split {
 	@Override
 	public void connect(Element elem, int index) {
 		if (index >= 0 && index < outputs.length) {
+			linked(outputs[index], elem);
 			outputs[index] = elem;
 		}
 	}
@@ -50,6 +51,7 @@ public class Multisplit extends Split {
 	public void setProportions(double... proportions) {
 		if (proportions.length == this.outputs.length) {
 			this.proportions = proportions.clone();
+			modified();
 		}
 	}
 	
@@ -60,5 +62,14 @@ public class Multisplit extends Split {
 	public double[] getProportions() {
 		return proportions.clone();
 	}
+
+	/**
+	 * Get the proportion of a single output, without copying the array
+	 * @param index the output index
+	 * @return the proportion of the input flow sent to the output
+	 */
+	double proportion(int index) {
+		return proportions[index];
+	}
 	
 }
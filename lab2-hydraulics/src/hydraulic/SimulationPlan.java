@@ -0,0 +1,412 @@
+package hydraulic;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Immutable representation of the topology of a hydraulic system,
+ * produced by {@link HSystem#compile()}, that can be simulated many times
+ * with different source flows and tap states.
+ *
+ * The elements are stored in flat arrays, in the same order in which
+ * {@link HSystem#simulate(SimulationObserver)} visits them, so that every
+ * element comes after the one feeding it.
+ * The outputs of all the elements are numbered consecutively: the outputs
+ * of element {@code e} go from {@code outputStart[e]} (inclusive) to
+ * {@code outputStart[e+1]} (exclusive), and for each output the plan stores
+ * the element connected to it and the proportion of the input flow it receives.
+ *
+ * A simulation is a single loop over these arrays writing into the
+ * buffers of a {@link Flows} object, without allocating memory.
+ *
+ * Since the subtree of each element is a contiguous range of positions,
+ * the branches of a split can also be simulated in parallel, each one
+ * writing its own range of the buffers.
+ */
+public final class SimulationPlan {
+
+	static final int SOURCE = 0;
+	static final int TAP = 1;
+	static final int SPLIT = 2;
+	static final int SINK = 3;
+	static final int OTHER = 4; // element of an unknown kind, no flow is computed
+
+	/**
+	 * Minimum number of elements of a branch simulated by a separate task
+	 */
+	static final int PARALLEL_THRESHOLD = 4096;
+
+	private final int size;
+	private final int[] kinds;
+	private final int[] inputs;      // element -> output feeding it, -1 for the root
+	private final int[] outputStart; // element -> first output, size + 1 entries
+	private final int[] targets;     // output -> element connected, -1 if none
+	private final double[] proportions; // output -> fraction of the input flow
+	private final int[] subtreeSizes; // element -> number of elements in its subtree, itself included
+	private final boolean[] forkable; // whether the subtree can be simulated by a separate task
+	private final double[] maxFlows;
+	private final double[] flows;    // default flows of the sources
+	private final boolean[] open;    // default states of the taps
+	private final String[] names;
+	private final String[] types;
+	private final Map<String, Integer> index = new HashMap<>();
+
+	/**
+	 * Compiles the elements reachable from a source
+	 *
+	 * @param source the root of the system, or {@code null} for an empty plan
+	 * @param owner the system to be notified when the elements change, or {@code null}
+	 */
+	SimulationPlan(Source source, HSystem owner) {
+		// pre-order visit, the same order as the simulation
+		Deque<Element> pending = new ArrayDeque<>();
+		Deque<int[]> feeding = new ArrayDeque<>(); // parent position and output number
+		Element[] order = new Element[16];
+		int[][] parents = new int[16][];
+		int n = 0;
+		if (source != null) {
+			pending.push(source);
+			feeding.push(new int[] { -1, 0 });
+		}
+		while (!pending.isEmpty()) {
+			if (n == order.length) {
+				order = Arrays.copyOf(order, n * 2);
+				parents = Arrays.copyOf(parents, n * 2);
+			}
+			order[n] = pending.pop();
+			parents[n] = feeding.pop();
+			if (owner != null) {
+				order[n].adopt(owner);
+			}
+			Element[] outputs = outputsOf(order[n]);
+			for (int i = outputs.length - 1; i >= 0; i--) {
+				if (outputs[i] != null) {
+					pending.push(outputs[i]);
+					feeding.push(new int[] { n, i });
+				}
+			}
+			n++;
+		}
+
+		size = n;
+		kinds = new int[n];
+		inputs = new int[n];
+		outputStart = new int[n + 1];
+		maxFlows = new double[n];
+		flows = new double[n];
+		open = new boolean[n];
+		names = new String[n];
+		types = new String[n];
+		for (int e = 0; e < n; e++) {
+			Element element = order[e];
+			kinds[e] = kindOf(element);
+			outputStart[e + 1] = outputStart[e] + outputsOf(element).length;
+			maxFlows[e] = element.maxFlow;
+			names[e] = element.getName();
+			types[e] = element.getClass().getSimpleName();
+			index.putIfAbsent(names[e], e);
+			if (element instanceof Source) {
+				flows[e] = ((Source) element).getFlow();
+			} else if (element instanceof Tap) {
+				open[e] = ((Tap) element).isOpen();
+			}
+		}
+
+		// the subtree of an element ends before the next sibling of the element
+		subtreeSizes = new int[n];
+		int[] heaviest = new int[n]; // element -> its largest child, simulated by the same task
+		Arrays.fill(heaviest, -1);
+		for (int e = n - 1; e >= 0; e--) {
+			subtreeSizes[e]++;
+			int parent = parents[e][0];
+			if (parent >= 0) {
+				subtreeSizes[parent] += subtreeSizes[e];
+				if (heaviest[parent] < 0 || subtreeSizes[e] > subtreeSizes[heaviest[parent]]) {
+					heaviest[parent] = e;
+				}
+			}
+		}
+		forkable = new boolean[n];
+		for (int e = 0; e < n; e++) {
+			int parent = parents[e][0];
+			forkable[e] = parent >= 0 && heaviest[parent] != e && subtreeSizes[e] >= PARALLEL_THRESHOLD;
+		}
+
+		targets = new int[outputStart[n]];
+		proportions = new double[outputStart[n]];
+		Arrays.fill(targets, -1);
+		for (int e = 0; e < n; e++) {
+			int parent = parents[e][0];
+			inputs[e] = parent < 0 ? -1 : outputStart[parent] + parents[e][1];
+			if (parent >= 0) {
+				targets[inputs[e]] = e;
+			}
+			Element element = order[e];
+			if (element instanceof Multisplit) {
+				for (int i = 0; i < outputs(e); i++) {
+					proportions[outputStart[e] + i] = ((Multisplit) element).proportion(i);
+				}
+			} else if (element instanceof Split) {
+				// Regular split - divide equally
+				proportions[outputStart[e]] = 0.5;
+				proportions[outputStart[e] + 1] = 0.5;
+			} else {
+				proportions[outputStart[e]] = 1.0;
+			}
+		}
+	}
+
+	private static Element[] outputsOf(Element element) {
+		if (element instanceof Split) {
+			return ((Split) element).outputs;
+		}
+		return new Element[] { element.getOutput() };
+	}
+
+	private static int kindOf(Element element) {
+		if (element instanceof Source) return SOURCE;
+		if (element instanceof Tap) return TAP;
+		if (element instanceof Split) return SPLIT;
+		if (element instanceof Sink) return SINK;
+		return OTHER;
+	}
+
+	/**
+	 * @return number of elements in the plan
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Finds the position of an element in the plan
+	 *
+	 * @param name the name of the element
+	 * @return the position of the first element with the given name, or -1 if none
+	 */
+	public int indexOf(String name) {
+		Integer e = index.get(name);
+		return e == null ? -1 : e;
+	}
+
+	/**
+	 * @param element position of the element in the plan
+	 * @return the name of the element
+	 */
+	public String name(int element) {
+		return names[element];
+	}
+
+	/**
+	 * @param element position of the element in the plan
+	 * @return the number of outputs of the element
+	 */
+	public int outputs(int element) {
+		return outputStart[element + 1] - outputStart[element];
+	}
+
+	/**
+	 * Creates the buffers for simulating this plan.
+	 * The source flows and tap states are initially those of the
+	 * elements when the plan was compiled.
+	 *
+	 * @return the new buffers
+	 */
+	public Flows newFlows() {
+		return new Flows(this);
+	}
+
+	/**
+	 * Computes the flows of all the elements, overwriting the previous ones
+	 *
+	 * @param flows the buffers, created by {@link #newFlows()} of this plan
+	 */
+	public void simulate(Flows flows) {
+		if (flows.plan != this) {
+			throw new IllegalArgumentException("Flows created for a different plan");
+		}
+		for (int e = 0; e < size; e++) {
+			step(flows, e);
+		}
+	}
+
+	/**
+	 * Computes the flows of an element from the output feeding it
+	 */
+	private void step(Flows flows, int e) {
+		double[] out = flows.out;
+		int input = inputs[e];
+		double inFlow = input < 0 ? SimulationObserver.NO_FLOW : out[input];
+		int first = outputStart[e];
+		switch (kinds[e]) {
+		case SOURCE:
+			inFlow = SimulationObserver.NO_FLOW;
+			out[first] = flows.flows[e];
+			break;
+		case TAP:
+			out[first] = flows.open[e] ? inFlow : 0.0;
+			break;
+		case SPLIT:
+			for (int o = first; o < outputStart[e + 1]; o++) {
+				out[o] = targets[o] >= 0 ? inFlow * proportions[o] : 0.0;
+			}
+			break;
+		case SINK:
+			out[first] = SimulationObserver.NO_FLOW;
+			break;
+		default:
+			inFlow = SimulationObserver.NO_FLOW;
+			out[first] = 0.0;
+		}
+		flows.in[e] = inFlow;
+	}
+
+	/**
+	 * Computes the flows of all the elements as {@link #simulate(Flows)},
+	 * simulating the branches with at least {@value #PARALLEL_THRESHOLD} elements
+	 * as separate tasks of a pool.
+	 * The largest branch of each element is always simulated by the task of the element,
+	 * so a long chain is simulated by a single task.
+	 *
+	 * @param flows the buffers, created by {@link #newFlows()} of this plan
+	 * @param pool the pool executing the tasks
+	 */
+	public void simulateParallel(Flows flows, ForkJoinPool pool) {
+		if (flows.plan != this) {
+			throw new IllegalArgumentException("Flows created for a different plan");
+		}
+		if (size > 0) {
+			pool.invoke(new Branch(flows, 0));
+		}
+	}
+
+	/**
+	 * Simulation of the subtree of an element.
+	 * The flows of the elements are written to their own positions of the buffers,
+	 * so the tasks of different branches never write the same values.
+	 */
+	private final class Branch extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final transient Flows flows;
+		private final int root;
+
+		Branch(Flows flows, int root) {
+			this.flows = flows;
+			this.root = root;
+		}
+
+		@Override
+		protected void compute() {
+			List<Branch> forked = new ArrayList<>();
+			int end = root + subtreeSizes[root];
+			int e = root;
+			while (e < end) {
+				if (e != root && forkable[e]) {
+					// the element feeding the branch has already been simulated
+					Branch branch = new Branch(flows, e);
+					branch.fork();
+					forked.add(branch);
+					e += subtreeSizes[e];
+				} else {
+					step(flows, e);
+					e++;
+				}
+			}
+			for (Branch branch : forked) {
+				branch.join();
+			}
+		}
+	}
+
+	/**
+	 * Sends the flows computed by {@link #simulate(Flows)} to an observer,
+	 * with the same notifications as {@link HSystem#simulate(SimulationObserver, boolean)}
+	 *
+	 * @param flows the simulated flows
+	 * @param observer the observer receiving notifications
+	 * @param enableMaxFlowCheck whether to notify the elements whose input flow exceeds their maximum
+	 */
+	public void replay(Flows flows, SimulationObserver observer, boolean enableMaxFlowCheck) {
+		for (int e = 0; e < size; e++) {
+			if (enableMaxFlowCheck && flows.exceedsMaxFlow(e)) {
+				observer.notifyFlowError(types[e], names[e], flows.in[e], maxFlows[e]);
+			}
+			double[] outFlows = kinds[e] == OTHER ? null
+					: Arrays.copyOfRange(flows.out, outputStart[e], outputStart[e + 1]);
+			observer.notifyFlow(types[e], names[e], flows.in[e], outFlows);
+		}
+	}
+
+	/**
+	 * Reusable buffers holding the parameters and the results of the simulations of a plan
+	 */
+	public static final class Flows {
+		private final SimulationPlan plan;
+		private final double[] in;
+		private final double[] out;
+		private final double[] flows;
+		private final boolean[] open;
+
+		private Flows(SimulationPlan plan) {
+			this.plan = plan;
+			in = new double[plan.size];
+			out = new double[plan.outputStart[plan.size]];
+			flows = plan.flows.clone();
+			open = plan.open.clone();
+		}
+
+		/**
+		 * Defines the flow of a source for the next simulations
+		 *
+		 * @param element position of the source in the plan
+		 * @param flow flow of the source
+		 */
+		public void setFlow(int element, double flow) {
+			flows[element] = flow;
+		}
+
+		/**
+		 * Defines the state of a tap for the next simulations
+		 *
+		 * @param element position of the tap in the plan
+		 * @param open opening status of the tap
+		 */
+		public void setOpen(int element, boolean open) {
+			this.open[element] = open;
+		}
+
+		/**
+		 * @param element position of the element in the plan
+		 * @return the input flow of the element computed by the last simulation
+		 */
+		public double inFlow(int element) {
+			return in[element];
+		}
+
+		/**
+		 * @param element position of the element in the plan
+		 * @param output index of the output
+		 * @return the flow of the output computed by the last simulation
+		 */
+		public double outFlow(int element, int output) {
+			return out[plan.outputStart[element] + output];
+		}
+
+		/**
+		 * @param element position of the element in the plan
+		 * @return whether the input flow of the last simulation exceeds the maximum flow of the element
+		 */
+		public boolean exceedsMaxFlow(int element) {
+			int kind = plan.kinds[element];
+			return kind != SOURCE && kind != OTHER && in[element] > plan.maxFlows[element];
+		}
+	}
+}
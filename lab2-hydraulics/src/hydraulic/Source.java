@@ -26,6 +26,7 @@ public class Source extends Element {
 	 */
 	public void setFlow(double flow){
 		this.flow = flow;
+		modified();
 	}
 	
 	/**
@@ -29,6 +29,7 @@ public class Split extends Element {
 	@Override
 	public void connect(Element elem, int index) {
 		if (index >= 0 && index < 2) {
+			linked(outputs[index], elem);
 			outputs[index] = elem;
 		}
 	}
@@ -27,6 +27,7 @@ public class Tap extends Element {
 	 */
 	public void setOpen(boolean open){
 		this.open = open;
+		modified();
 	}
 	
 	/**
@@ -0,0 +1,161 @@
+package hydraulic;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+/**
+ * White-box tests for the traversal of systems too deep for recursion
+ */
+class TestDeepPipelines {
+
+	private static final int LENGTH = 1_000_000;
+
+	/**
+	 * Counts the notifications and keeps the last one
+	 */
+	private static class Counter implements SimulationObserver {
+		int statuses;
+		int errors;
+		String lastName;
+		double lastFlow;
+
+		@Override
+		public void notify(Level level, String type, String name, double inFlow, double... flows) {
+			if (level == Level.ERROR) {
+				errors++;
+			} else {
+				statuses++;
+				lastName = name;
+				lastFlow = inFlow;
+			}
+		}
+	}
+
+	private static HSystem chain(int length) {
+		HSystem s = new HSystem();
+		Source src = new Source("Src");
+		src.setFlow(8);
+		s.addElement(src);
+		Element previous = src;
+		for (int i = 0; i < length; i++) {
+			Tap tap = new Tap("Tap" + i);
+			tap.setOpen(true);
+			tap.setMaxFlow(i % 2 == 0 ? 10 : 5);
+			s.addElement(tap);
+			previous.connect(tap);
+			previous = tap;
+		}
+		Sink sink = new Sink("Sink");
+		s.addElement(sink);
+		previous.connect(sink);
+		return s;
+	}
+
+	@Test
+	void testMillionTaps() {
+		HSystem s = chain(LENGTH);
+
+		Counter plain = new Counter();
+		s.simulate(plain);
+		assertEquals(LENGTH + 2, plain.statuses);
+		assertEquals("Sink", plain.lastName);
+		assertEquals(8.0, plain.lastFlow, 0.0);
+
+		Counter checked = new Counter();
+		s.simulate(checked, true);
+		assertEquals(LENGTH / 2, checked.errors);
+
+		Counter parallel = new Counter();
+		s.simulateParallel(parallel, true);
+		assertEquals(LENGTH + 2, parallel.statuses);
+		assertEquals(LENGTH / 2, parallel.errors);
+
+		assertTrue(s.deleteElement("Tap" + (LENGTH / 2)));
+		assertEquals("Tap" + (LENGTH / 2 + 1), s.getElement("Tap" + (LENGTH / 2 - 1)).getOutput().getName());
+	}
+
+	@Test
+	void testMillionSplits() {
+		// multisplits with a single output print on a single line
+		Multisplit first = new Multisplit("M0", 1);
+		Multisplit previous = first;
+		int length = 0;
+		for (int i = 1; i < LENGTH; i++) {
+			Multisplit next = new Multisplit("M" + i, 1);
+			previous.connect(next, 0);
+			previous = next;
+		}
+		previous.connect(new Sink("Sink"), 0);
+		for (int i = 0; i < LENGTH; i++) {
+			length += ("[M" + i + "] +-> ").length();
+		}
+
+		String description = first.toString();
+		assertEquals(length + "[Sink] ".length(), description.length());
+		assertTrue(description.startsWith("[M0] +-> [M1] +-> [M2] +-> "));
+		assertTrue(description.endsWith("+-> [Sink] "));
+		assertEquals(-1, description.indexOf('\n'));
+	}
+
+	@Test
+	void testSameDescription() {
+		Random rnd = new Random(3);
+		for (int n = 0; n < 50; n++) {
+			Split root = new Split("Root");
+			root.connect(tree(rnd, "R0", 5), 0);
+			root.connect(tree(rnd, "R1", 5), 1);
+			assertEquals(recursive(root), root.toString());
+		}
+		Split named = new Split("multi\nline");
+		named.connect(new Sink("two\nlines"), 1);
+		Split outer = new Split("outer");
+		outer.connect(named, 0);
+		assertEquals(recursive(outer), outer.toString());
+	}
+
+	private static Element tree(Random rnd, String name, int depth) {
+		int kind = depth == 0 ? 0 : rnd.nextInt(4);
+		switch (kind) {
+		case 0:
+			return rnd.nextBoolean() ? new Sink("S" + name) : null;
+		case 1: {
+			Tap tap = new Tap("Tap" + name);
+			tap.connect(tree(rnd, name + "t", depth - 1));
+			return tap;
+		}
+		case 2: {
+			Split split = new Split("T" + name);
+			split.connect(tree(rnd, name + "0", depth - 1), 0);
+			split.connect(tree(rnd, name + "1", depth - 1), 1);
+			return split;
+		}
+		default: {
+			Multisplit multi = new Multisplit("M" + name, 1 + rnd.nextInt(4));
+			for (int i = 0; i < multi.getOutputs().length; i++) {
+				multi.connect(tree(rnd, name + i, depth - 1), i);
+			}
+			return multi;
+		}
+		}
+	}
+
+	/**
+	 * The description as originally defined by recursion
+	 */
+	private static String recursive(Element element) {
+		String res = "[%s] ".formatted(element.getName());
+		Element[] out = element.getOutputs();
+		if (out != null) {
+			StringBuilder buffer = new StringBuilder();
+			for (int i = 0; i < out.length; ++i) {
+				if (i > 0) buffer.append("\n");
+				if (out[i] == null) buffer.append("+-> *");
+				else buffer.append(Element.pad("+-> ", recursive(out[i])));
+			}
+			res = Element.pad(res, buffer.toString());
+		}
+		return res;
+	}
+}
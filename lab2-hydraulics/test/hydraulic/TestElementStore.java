@@ -0,0 +1,115 @@
+package hydraulic;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * White-box tests for the element store of {@link HSystem}
+ */
+class TestElementStore {
+
+	private static final int ELEMENTS = 10_000;
+
+	private static HSystem chain(int length) {
+		HSystem s = new HSystem();
+		Source src = new Source("Src");
+		src.setFlow(10);
+		s.addElement(src);
+		Element previous = src;
+		for (int i = 0; i < length; i++) {
+			Tap tap = new Tap("Tap" + i);
+			tap.setOpen(true);
+			s.addElement(tap);
+			previous.connect(tap);
+			previous = tap;
+		}
+		Sink sink = new Sink("Sink");
+		s.addElement(sink);
+		previous.connect(sink);
+		return s;
+	}
+
+	@Test
+	void testNoLimit() {
+		HSystem s = chain(ELEMENTS);
+
+		assertEquals(ELEMENTS + 2, s.size());
+		Element[] elements = s.getElements();
+		assertEquals(ELEMENTS + 2, elements.length);
+		assertEquals("Src", elements[0].getName());
+		assertEquals("Tap" + (ELEMENTS - 1), elements[ELEMENTS].getName());
+		assertSame(elements[ELEMENTS / 2], s.getElement("Tap" + (ELEMENTS / 2 - 1)));
+		assertNull(s.getElement("Missing"));
+	}
+
+	@Test
+	void testSimulateBeyondHundred() {
+		HSystem s = chain(200);
+
+		Map<String, Double> flows = new HashMap<>();
+		s.simulate((level, type, name, inFlow, outFlow) -> flows.put(name, inFlow));
+		assertEquals(202, flows.size());
+		assertEquals(10.0, flows.get("Sink"), 0.0);
+	}
+
+	@Test
+	void testDeleteKeepsOrder() {
+		HSystem s = chain(ELEMENTS);
+		for (int i = 0; i < ELEMENTS; i += 2) {
+			assertTrue(s.deleteElement("Tap" + i));
+		}
+		assertFalse(s.deleteElement("Tap0"));
+
+		assertEquals(ELEMENTS / 2 + 2, s.size());
+		Element[] elements = s.getElements();
+		assertEquals(s.size(), elements.length);
+		for (int i = 1; i < ELEMENTS; i += 2) {
+			assertEquals("Tap" + i, elements[(i + 1) / 2].getName());
+			assertSame(elements[(i + 1) / 2], s.getElement("Tap" + i));
+			assertNull(s.getElement("Tap" + (i - 1)));
+		}
+		assertEquals("Tap1", elements[0].getOutput().getName());
+	}
+
+	@Test
+	void testSourceDeleted() {
+		HSystem s = new HSystem();
+		Source first = new Source("First");
+		Source second = new Source("Second");
+		Sink sink = new Sink("Sink");
+		s.addElement(first);
+		s.addElement(second);
+		s.addElement(sink);
+		second.connect(sink);
+		second.setFlow(5);
+
+		Map<String, Double> flows = new HashMap<>();
+		s.simulate((level, type, name, inFlow, outFlow) -> flows.put(name, inFlow));
+		assertEquals(Map.of("First", SimulationObserver.NO_FLOW), flows);
+
+		assertTrue(s.deleteElement("First"));
+		flows.clear();
+		s.simulate((level, type, name, inFlow, outFlow) -> flows.put(name, inFlow));
+		assertEquals(5.0, flows.get("Sink"), 0.0);
+	}
+
+	@Test
+	void testDuplicateNames() {
+		HSystem s = new HSystem();
+		Tap first = new Tap("Tap");
+		Tap second = new Tap("Tap");
+		s.addElement(first);
+		s.addElement(second);
+
+		assertEquals(2, s.size());
+		assertSame(first, s.getElement("Tap"));
+		assertTrue(s.deleteElement("Tap"));
+		assertSame(second, s.getElement("Tap"));
+		assertTrue(s.deleteElement("Tap"));
+		assertFalse(s.deleteElement("Tap"));
+		assertEquals(0, s.size());
+	}
+}
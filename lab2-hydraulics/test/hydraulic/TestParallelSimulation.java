@@ -0,0 +1,183 @@
+package hydraulic;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * White-box tests for the parallel simulation of the branches
+ */
+class TestParallelSimulation {
+
+	private static final int BRANCHES = 4;
+	private static final int DEPTH = 12;
+
+	private static SimulationObserver recorder(List<String> events) {
+		return (level, type, name, inFlow, flows) ->
+				events.add(level + " " + type + " " + name + " " + inFlow + " " + Arrays.toString(flows));
+	}
+
+	/**
+	 * Builds a source feeding a multisplit whose outputs are random trees of
+	 * splits and taps, each larger than the threshold
+	 */
+	private static HSystem forest(long seed) {
+		Random rnd = new Random(seed);
+		HSystem s = new HSystem();
+		Source src = new Source("Src");
+		src.setFlow(1000);
+		s.addElement(src);
+		Multisplit root = new Multisplit("Root", BRANCHES);
+		root.setProportions(0.4, 0.3, 0.2, 0.1);
+		s.addElement(root);
+		src.connect(root);
+		for (int b = 0; b < BRANCHES; b++) {
+			root.connect(tree(s, rnd, "B" + b, DEPTH), b);
+		}
+		return s;
+	}
+
+	private static Element tree(HSystem s, Random rnd, String path, int depth) {
+		if (depth == 0) {
+			Sink sink = new Sink("S" + path);
+			sink.setMaxFlow(rnd.nextDouble());
+			s.addElement(sink);
+			return sink;
+		}
+		Split split = new Split("T" + path);
+		split.setMaxFlow(10 * rnd.nextDouble());
+		s.addElement(split);
+		Tap tap = new Tap("Tap" + path);
+		tap.setOpen(rnd.nextInt(10) > 0);
+		s.addElement(tap);
+		split.connect(tap, 0);
+		tap.connect(tree(s, rnd, path + "0", depth - 1));
+		split.connect(tree(s, rnd, path + "1", depth - 1), 1);
+		return split;
+	}
+
+	@Test
+	void testSameNotifications() {
+		HSystem s = forest(1);
+		assertTrue(s.size() > BRANCHES * SimulationPlan.PARALLEL_THRESHOLD);
+		for (boolean check : new boolean[] { false, true }) {
+			List<String> expected = new ArrayList<>();
+			s.simulate(recorder(expected), check);
+			List<String> parallel = new ArrayList<>();
+			s.simulateParallel(recorder(parallel), check);
+			assertEquals(expected.size(), parallel.size());
+			assertEquals(expected, parallel);
+		}
+	}
+
+	@Test
+	void testSameFlows() {
+		SimulationPlan plan = forest(2).compile();
+		SimulationPlan.Flows sequential = plan.newFlows();
+		SimulationPlan.Flows parallel = plan.newFlows();
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			for (int flow = 1; flow <= 5; flow++) {
+				sequential.setFlow(0, flow);
+				parallel.setFlow(0, flow);
+				plan.simulate(sequential);
+				plan.simulateParallel(parallel, pool);
+				for (int e = 0; e < plan.size(); e++) {
+					assertEquals(sequential.inFlow(e), parallel.inFlow(e), 0.0, plan.name(e));
+					for (int o = 0; o < plan.outputs(e); o++) {
+						assertEquals(sequential.outFlow(e, o), parallel.outFlow(e, o), 0.0, plan.name(e));
+					}
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	void testChangesAfterCompiling() {
+		HSystem s = forest(3);
+		Element[] elements = s.getElements();
+		Random rnd = new Random(3);
+		for (int n = 0; n < 6; n++) {
+			List<String> expected = new ArrayList<>();
+			s.simulate(recorder(expected), true);
+			List<String> parallel = new ArrayList<>();
+			s.simulateParallel(recorder(parallel), true);
+			assertEquals(expected, parallel);
+
+			// each change must be seen by the next parallel simulation
+			Element element = elements[rnd.nextInt(elements.length)];
+			switch (n) {
+			case 0: ((Source) elements[0]).setFlow(500); break;
+			case 1: element.setMaxFlow(0.1); break;
+			case 2: ((Multisplit) elements[1]).setProportions(0.1, 0.2, 0.3, 0.4); break;
+			case 3: ((Multisplit) elements[1]).connect(new Sink("New"), 3); break;
+			case 4: s.deleteElement("TapB00"); break;
+			default: break;
+			}
+		}
+	}
+
+	@Test
+	void testTwoSystems() {
+		HSystem first = forest(4);
+		HSystem second = forest(5);
+		Element[][] elements = { first.getElements(), second.getElements() };
+		HSystem[] systems = { first, second };
+		for (int n = 0; n < 8; n++) {
+			// the change to one system must be seen by its next parallel simulation,
+			// whatever the other system did in between
+			for (HSystem s : systems) {
+				List<String> expected = new ArrayList<>();
+				s.simulate(recorder(expected), true);
+				List<String> parallel = new ArrayList<>();
+				s.simulateParallel(recorder(parallel), true);
+				assertEquals(expected, parallel);
+			}
+			Element[] edited = elements[n % 2];
+			switch (n / 2) {
+			case 0: ((Source) edited[0]).setFlow(200 + n); break;
+			case 1: edited[2 + n].setMaxFlow(0.01); break;
+			case 2: ((Multisplit) edited[1]).setProportions(0.25, 0.25, 0.25, 0.25); break;
+			default: ((Multisplit) edited[1]).connect(new Sink("New" + n), 0); break;
+			}
+		}
+	}
+
+	@Test
+	void testDeepChain() {
+		HSystem s = new HSystem();
+		Source src = new Source("Src");
+		src.setFlow(3);
+		s.addElement(src);
+		Element previous = src;
+		for (int i = 0; i < 200_000; i++) {
+			Tap tap = new Tap("Tap" + i);
+			tap.setOpen(true);
+			s.addElement(tap);
+			previous.connect(tap);
+			previous = tap;
+		}
+		Sink sink = new Sink("Sink");
+		s.addElement(sink);
+		previous.connect(sink);
+
+		List<String> events = new ArrayList<>();
+		s.simulateParallel(recorder(events), false);
+		assertEquals(s.size(), events.size());
+		assertEquals("STATUS Sink Sink 3.0 [NaN]", events.get(events.size() - 1));
+	}
+
+	@Test
+	void testEmpty() {
+		List<String> events = new ArrayList<>();
+		new HSystem().simulateParallel(recorder(events), true);
+		assertTrue(events.isEmpty());
+	}
+}
@@ -0,0 +1,141 @@
+package hydraulic;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * White-box tests for the compiled simulation plans
+ */
+class TestSimulationPlan {
+
+	private static HSystem system() {
+		return HSystem.build()
+				.addSource("Src").withFlow(20)
+				.linkToTap("Tap").open()
+				.linkToMultisplit("M", 3).withProportions(0.5, 0.3, 0.2)
+				.withOutputs()
+					.linkToSplit("T")
+					.withOutputs()
+						.linkToSink("A")
+					.done()
+				.then()
+					.linkToTap("Closed").closed()
+					.linkToSink("B").maxFlow(1)
+				.then()
+					.linkToSink("C").maxFlow(3)
+				.done()
+				.complete();
+	}
+
+	private static SimulationObserver recorder(List<String> events) {
+		return (level, type, name, inFlow, flows) ->
+				events.add(level + " " + type + " " + name + " " + inFlow + " " + Arrays.toString(flows));
+	}
+
+	@Test
+	void testSameNotifications() {
+		HSystem s = system();
+		SimulationPlan plan = s.compile();
+		SimulationPlan.Flows flows = plan.newFlows();
+		plan.simulate(flows);
+
+		for (boolean check : new boolean[] { false, true }) {
+			List<String> expected = new ArrayList<>();
+			s.simulate(recorder(expected), check);
+			List<String> replayed = new ArrayList<>();
+			plan.replay(flows, recorder(replayed), check);
+			assertEquals(expected, replayed);
+		}
+	}
+
+	@Test
+	void testWhatIf() {
+		HSystem s = system();
+		SimulationPlan plan = s.compile();
+		SimulationPlan.Flows flows = plan.newFlows();
+		int src = plan.indexOf("Src");
+		int tap = plan.indexOf("Closed");
+		int b = plan.indexOf("B");
+		assertEquals(0, src);
+		assertEquals(3, plan.outputs(plan.indexOf("M")));
+
+		plan.simulate(flows);
+		assertEquals(0.0, flows.inFlow(b), 0.0);
+		assertFalse(flows.exceedsMaxFlow(b));
+		assertTrue(flows.exceedsMaxFlow(plan.indexOf("C")));
+
+		flows.setOpen(tap, true);
+		for (int flow = 0; flow <= 100; flow += 10) {
+			flows.setFlow(src, flow);
+			plan.simulate(flows);
+			assertEquals(flow * 0.3, flows.inFlow(b), 1e-9);
+			assertEquals(flow * 0.5, flows.outFlow(plan.indexOf("M"), 0), 1e-9);
+			assertEquals(flow * 0.25, flows.inFlow(plan.indexOf("A")), 1e-9);
+			assertEquals(0.0, flows.outFlow(plan.indexOf("T"), 1), 0.0);
+			assertEquals(flow > 0, flows.exceedsMaxFlow(b));
+		}
+		assertTrue(Double.isNaN(flows.inFlow(src)));
+		assertTrue(Double.isNaN(flows.outFlow(b, 0)));
+
+		// the plan does not follow later changes to the system
+		s.deleteElement("C");
+		assertEquals(8, plan.size());
+		assertEquals(-1, s.compile().indexOf("C"));
+		assertThrows(IllegalArgumentException.class, () -> s.compile().simulate(flows));
+	}
+
+	@Test
+	void testLargeTree() {
+		int depth = 16;
+		HSystem s = HSystem.build().addSource("Src").withFlow(1 << depth).complete();
+		Split root = new Split("T");
+		s.getElements()[0].connect(root);
+		s.addElement(root);
+		List<Split> level = List.of(root);
+		for (int d = 1; d < depth; d++) {
+			List<Split> next = new ArrayList<>();
+			for (Split split : level) {
+				for (int i = 0; i < 2; i++) {
+					Split child = new Split(split.getName() + i);
+					s.addElement(child);
+					split.connect(child, i);
+					next.add(child);
+				}
+			}
+			level = next;
+		}
+		SimulationPlan plan = s.compile();
+		assertEquals(s.size(), plan.size());
+		SimulationPlan.Flows flows = plan.newFlows();
+		plan.simulate(flows);
+		int leaf = plan.indexOf("T" + "1".repeat(depth - 1));
+		assertEquals(2.0, flows.inFlow(leaf), 0.0);
+		assertEquals(0.0, flows.outFlow(leaf, 1), 0.0); // nothing connected
+		assertEquals(2.0, flows.outFlow(plan.indexOf("T" + "1".repeat(depth - 2)), 1), 0.0);
+	}
+
+	@Test
+	void testNoAllocation() {
+		assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().threadId();
+		SimulationPlan plan = system().compile();
+		SimulationPlan.Flows flows = plan.newFlows();
+		for (int i = 0; i < 10_000; i++) {
+			plan.simulate(flows); // warm up
+		}
+		long before = threads.getThreadAllocatedBytes(thread);
+		for (int i = 0; i < 10_000; i++) {
+			flows.setFlow(0, i);
+			plan.simulate(flows);
+		}
+		long allocated = threads.getThreadAllocatedBytes(thread) - before;
+		assertTrue(allocated < 10_000, "Simulations allocated " + allocated + " bytes");
+	}
+}
@@ -0,0 +1,80 @@
+package hydraulic;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * White-box tests for the order and content of the notifications of the simulation
+ */
+class TestTopDownSimulation {
+
+	private static List<String> record(HSystem s, boolean check) {
+		List<String> events = new ArrayList<>();
+		s.simulate((level, type, name, inFlow, flows) ->
+				events.add(level + " " + type + " " + name + " " + inFlow + " " + Arrays.toString(flows)), check);
+		return events;
+	}
+
+	private static HSystem system() {
+		return HSystem.build()
+				.addSource("Src").withFlow(20)
+				.linkToTap("Tap").open()
+				.linkToMultisplit("M", 3).withProportions(0.5, 0.3, 0.2)
+				.withOutputs()
+					.linkToSplit("T")
+					.withOutputs()
+						.linkToSink("A")
+					.done()
+				.then()
+					.linkToTap("Closed").closed()
+					.linkToSink("B").maxFlow(1)
+				.then()
+					.linkToSink("C").maxFlow(3)
+				.done()
+				.complete();
+	}
+
+	@Test
+	void testNotificationOrder() {
+		assertEquals(List.of(
+				"STATUS Source Src NaN [20.0]",
+				"STATUS Tap Tap 20.0 [20.0]",
+				"STATUS Multisplit M 20.0 [10.0, 6.0, 4.0]",
+				"STATUS Split T 10.0 [5.0, 0.0]",
+				"STATUS Sink A 5.0 [NaN]",
+				"STATUS Tap Closed 6.0 [0.0]",
+				"STATUS Sink B 0.0 [NaN]",
+				"STATUS Sink C 4.0 [NaN]"), record(system(), false));
+	}
+
+	@Test
+	void testErrorsBeforeStatus() {
+		List<String> events = record(system(), true);
+		assertEquals(9, events.size());
+		assertEquals("ERROR Sink C 4.0 [3.0]", events.get(7));
+		assertEquals("STATUS Sink C 4.0 [NaN]", events.get(8));
+	}
+
+	@Test
+	void testUnknownElement() {
+		HSystem s = new HSystem();
+		Source src = new Source("Src");
+		Element pipe = new Element("Pipe") { };
+		Sink sink = new Sink("Sink");
+		s.addElement(src);
+		s.addElement(pipe);
+		s.addElement(sink);
+		src.connect(pipe);
+		pipe.connect(sink);
+		src.setFlow(5);
+
+		assertEquals(List.of(
+				"STATUS Source Src NaN [5.0]",
+				"STATUS  Pipe NaN null",
+				"STATUS Sink Sink 0.0 [NaN]"), record(s, true));
+	}
+}
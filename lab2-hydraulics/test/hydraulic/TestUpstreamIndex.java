@@ -0,0 +1,167 @@
+package hydraulic;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * White-box tests for the upstream links maintained by the connections
+ */
+class TestUpstreamIndex {
+
+	private static final int DEPTH = 16;
+
+	@Test
+	void testLinks() {
+		Source src = new Source("Src");
+		Tap tap = new Tap("Tap");
+		Split split = new Split("T");
+		Sink a = new Sink("A");
+		Sink b = new Sink("B");
+
+		src.connect(tap);
+		tap.connect(split);
+		split.connect(a, 0);
+		split.connect(b, 1);
+		assertSame(src, tap.getUpstream());
+		assertSame(split, b.getUpstream());
+		assertNull(src.getUpstream());
+
+		// reconnecting an output detaches the previous element
+		split.connect(a, 1);
+		assertNull(b.getUpstream());
+		assertSame(split, a.getUpstream());
+		tap.connect(null);
+		assertNull(split.getUpstream());
+
+		Multisplit multi = new Multisplit("M", 3);
+		multi.connect(b, 2);
+		assertSame(multi, b.getUpstream());
+		multi.connect(null, 2);
+		assertNull(b.getUpstream());
+	}
+
+	@Test
+	void testDeleteRelinks() {
+		HSystem s = new HSystem();
+		Source src = new Source("Src");
+		Tap first = new Tap("First");
+		Tap second = new Tap("Second");
+		Sink sink = new Sink("Sink");
+		s.addElement(src);
+		s.addElement(first);
+		s.addElement(second);
+		s.addElement(sink);
+		src.connect(first);
+		first.connect(second);
+		second.connect(sink);
+
+		assertTrue(s.deleteElement("First"));
+		assertSame(src, second.getUpstream());
+		assertTrue(s.deleteElement("Src"));
+		assertNull(second.getUpstream());
+		assertTrue(s.deleteElement("Second"));
+		assertNull(sink.getUpstream());
+	}
+
+	@Test
+	void testTwoParents() {
+		Tap left = new Tap("Left");
+		Tap right = new Tap("Right");
+		Sink sink = new Sink("Sink");
+		left.connect(sink);
+		right.connect(sink);
+		assertSame(right, sink.getUpstream());
+
+		// disconnecting either parent leaves the other one
+		right.connect(null);
+		assertSame(left, sink.getUpstream());
+		right.connect(sink);
+		left.connect(null);
+		assertSame(right, sink.getUpstream());
+		right.connect(null);
+		assertNull(sink.getUpstream());
+
+		// a multisplit feeding the same element twice is a parent until both outputs change
+		Multisplit multi = new Multisplit("M", 2);
+		multi.connect(sink, 0);
+		multi.connect(sink, 1);
+		multi.connect(null, 0);
+		assertSame(multi, sink.getUpstream());
+		multi.connect(null, 1);
+		assertNull(sink.getUpstream());
+	}
+
+	@Test
+	void testDeleteWithTwoParents() {
+		HSystem s = new HSystem();
+		Source src = new Source("Src");
+		Split split = new Split("T");
+		Tap left = new Tap("Left");
+		Tap right = new Tap("Right");
+		Tap outside = new Tap("Outside"); // never added to the system
+		Tap middle = new Tap("Middle");
+		Sink sink = new Sink("Sink");
+		s.addElement(src);
+		s.addElement(split);
+		s.addElement(left);
+		s.addElement(right);
+		s.addElement(middle);
+		s.addElement(sink);
+		src.connect(split);
+		split.connect(left, 0);
+		split.connect(right, 1);
+		left.connect(middle);
+		right.connect(middle);
+		outside.connect(middle);
+		middle.connect(sink);
+
+		// the first parent in the system is rewired, the others still feed the deleted element
+		assertTrue(s.deleteElement("Middle"));
+		assertSame(sink, left.getOutput());
+		assertSame(middle, right.getOutput());
+		assertSame(middle, outside.getOutput());
+		assertSame(left, sink.getUpstream());
+		assertArrayEquals(new Element[] { right, outside }, middle.getUpstreams());
+
+		assertTrue(s.deleteElement("Left"));
+		assertSame(sink, split.getOutputs()[0]);
+		assertSame(split, sink.getUpstream());
+	}
+
+	@Test
+	void testLargeTree() {
+		HSystem s = new HSystem();
+		Source src = new Source("Src");
+		src.setFlow(1 << DEPTH);
+		s.addElement(src);
+		Element root = tree(s, "", DEPTH);
+		src.connect(root);
+		assertEquals(2 << DEPTH, s.size());
+
+		Map<String, Double> flows = new HashMap<>();
+		s.simulate((level, type, name, inFlow, outFlow) -> flows.put(name, inFlow));
+		assertEquals(s.size(), flows.size());
+		assertEquals(1 << DEPTH, flows.get("T"), 0.0);
+		assertEquals(1.0, flows.get("S" + "0".repeat(DEPTH)), 0.0);
+		assertEquals(1.0, flows.get("S" + "1".repeat(DEPTH)), 0.0);
+	}
+
+	/**
+	 * Builds a complete binary tree of splits whose leaves are sinks
+	 */
+	private static Element tree(HSystem s, String path, int depth) {
+		if (depth == 0) {
+			Sink sink = new Sink("S" + path);
+			s.addElement(sink);
+			return sink;
+		}
+		Split split = new Split("T" + path);
+		s.addElement(split);
+		split.connect(tree(s, path + "0", depth - 1), 0);
+		split.connect(tree(s, path + "1", depth - 1), 1);
+		return split;
+	}
+}